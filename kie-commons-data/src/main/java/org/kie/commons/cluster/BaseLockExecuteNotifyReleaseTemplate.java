@@ -10,14 +10,24 @@ abstract class BaseLockExecuteNotifyReleaseTemplate<V> {
 
     public V execute( final ClusterService clusterService,
                       final RunnableFuture<V> task ) {
+        final String scope = getScope();
+        Map<String, String> releasedContent = null;
         try {
-            clusterService.lock();
+            if ( scope == null ) {
+                clusterService.lock();
+            } else {
+                clusterService.lock( scope );
+            }
 
             task.run();
 
             final V result = task.get();
 
-            sendMessage( clusterService );
+            if ( notifyAfterRelease() ) {
+                releasedContent = buildContent();
+            } else {
+                sendMessage( clusterService );
+            }
 
             return result;
         } catch ( final ExecutionException e ) {
@@ -25,7 +35,14 @@ abstract class BaseLockExecuteNotifyReleaseTemplate<V> {
         } catch ( final Exception e ) {
             throwException( e );
         } finally {
-            clusterService.unlock();
+            if ( scope == null ) {
+                clusterService.unlock();
+            } else {
+                clusterService.unlock( scope );
+            }
+            if ( releasedContent != null ) {
+                publish( clusterService, releasedContent );
+            }
         }
         return null;
     }
@@ -37,6 +54,26 @@ abstract class BaseLockExecuteNotifyReleaseTemplate<V> {
         throw new RuntimeException( e );
     }
 
+    /**
+     * @return lock scope of the task, or <code>null</code> to take the cluster wide lock
+     */
+    public String getScope() {
+        return null;
+    }
+
+    /**
+     * When <code>true</code> the content is built while the lock is still held, so it describes
+     * the state the task left behind, but it is only published once the lock is released.
+     */
+    boolean notifyAfterRelease() {
+        return false;
+    }
+
+    void publish( final ClusterService clusterService,
+                  final Map<String, String> content ) {
+        clusterService.broadcast( getMessageType(), content );
+    }
+
     abstract void sendMessage( final ClusterService clusterService );
 
     public abstract MessageType getMessageType();
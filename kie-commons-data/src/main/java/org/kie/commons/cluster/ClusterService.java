@@ -1,12 +1,27 @@
 package org.kie.commons.cluster;
 
-import org.kie.commons.lock.LockService;
+import org.kie.commons.lock.ScopedLockService;
 import org.kie.commons.message.MessageService;
 
+/**
+ * Cluster wide messaging and locking. Scoped locks are keyed by file system id, so writers of
+ * different file systems don't have to wait for each other.
+ */
 public interface ClusterService extends MessageService,
-                                        LockService {
+                                        ScopedLockService {
 
     void start();
 
+    /**
+     * Takes the locks of several scopes in an order shared by every node, so two writers
+     * spanning the same scopes can't deadlock whatever order they name them in.
+     */
+    void lock( final String... scopes );
+
+    /**
+     * Releases the locks taken by {@link #lock(String...)} with the same scopes.
+     */
+    void unlock( final String... scopes );
+
     void dispose();
 }
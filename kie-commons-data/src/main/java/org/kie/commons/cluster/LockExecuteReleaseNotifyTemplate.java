@@ -0,0 +1,28 @@
+package org.kie.commons.cluster;
+
+import java.util.Map;
+
+/**
+ * Publishes the message after the lock is released, without waiting for replies, so the lock
+ * is never held across a network round trip. The content is still built under the lock, so
+ * it should carry the versions the task produced (e.g. the new commit of each ref) for
+ * receivers to catch up to.
+ */
+public abstract class LockExecuteReleaseNotifyTemplate<V> extends BaseLockExecuteNotifyReleaseTemplate<V> {
+
+    @Override
+    boolean notifyAfterRelease() {
+        return true;
+    }
+
+    @Override
+    void sendMessage( final ClusterService clusterService ) {
+        publish( clusterService, buildContent() );
+    }
+
+    @Override
+    public void publish( final ClusterService clusterService,
+                         final Map<String, String> content ) {
+        super.publish( clusterService, content );
+    }
+}
@@ -0,0 +1,25 @@
+package org.kie.commons.lock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link LockService} that can also be locked per scope (e.g. per file system id).
+ * <p/>
+ * Holders of different scopes don't block each other; the unscoped lock excludes every scope.
+ * All locks are reentrant for the owning thread.
+ */
+public interface ScopedLockService extends LockService {
+
+    boolean tryLock( final long timeout,
+                     final TimeUnit unit ) throws InterruptedException;
+
+    void lock( final String scope );
+
+    boolean tryLock( final String scope,
+                     final long timeout,
+                     final TimeUnit unit ) throws InterruptedException;
+
+    void unlock( final String scope );
+
+    boolean isLocked( final String scope );
+}
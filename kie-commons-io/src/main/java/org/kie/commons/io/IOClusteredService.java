@@ -1,6 +1,21 @@
 package org.kie.commons.io;
 
+import java.util.concurrent.TimeUnit;
+
+import org.kie.commons.java.nio.file.FileSystem;
+
 public interface IOClusteredService extends IOService {
 
     void start();
+
+    /**
+     * Waits until a commit announced by another node for a ref of the file system is visible
+     * on this node, for readers that need to see at least that commit.
+     * @return <code>false</code> if the timeout elapsed first
+     */
+    boolean awaitCommit( final FileSystem fileSystem,
+                         final String ref,
+                         final String commit,
+                         final long timeout,
+                         final TimeUnit unit ) throws InterruptedException;
 }
@@ -33,6 +33,22 @@ public interface IOSearchService {
                                final int startIndex,
                                final Path... roots );
 
+    /**
+     * @param continuation token of the previous page, or <code>null</code> for the first one
+     */
+    PathPage searchByAttrs( final Map<String, ?> attrs,
+                            final int pageSize,
+                            final String continuation,
+                            final Path... roots );
+
+    /**
+     * @param continuation token of the previous page, or <code>null</code> for the first one
+     */
+    PathPage fullTextSearch( final String term,
+                             final int pageSize,
+                             final String continuation,
+                             final Path... roots );
+
     int searchByAttrsHits( final Map<String, ?> attrs,
                            final Path... roots );
 
@@ -61,6 +61,12 @@ public interface IOService {
 
     void endBatch( final Option... options );
 
+    void startBatch( final FileSystem fs,
+                     final Option... options );
+
+    void endBatch( final FileSystem fs,
+                   final Option... options );
+
     FileAttribute<?>[] convert( Map<String, ?> attrs );
 
     Path get( final String first,
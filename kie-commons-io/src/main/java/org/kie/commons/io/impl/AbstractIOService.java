@@ -39,6 +39,7 @@ import org.kie.commons.io.IOWatchService;
 import org.kie.commons.io.impl.lock.ThreadLockServiceImpl;
 import org.kie.commons.java.nio.IOException;
 import org.kie.commons.java.nio.base.AbstractPath;
+import org.kie.commons.java.nio.base.FileSystemId;
 import org.kie.commons.java.nio.base.FileSystemState;
 import org.kie.commons.java.nio.channels.SeekableByteChannel;
 import org.kie.commons.java.nio.file.CopyOption;
@@ -61,6 +62,7 @@ import org.kie.commons.java.nio.file.StandardOpenOption;
 import org.kie.commons.java.nio.file.attribute.FileAttribute;
 import org.kie.commons.java.nio.file.attribute.FileTime;
 import org.kie.commons.lock.LockService;
+import org.kie.commons.lock.ScopedLockService;
 
 import static org.kie.commons.java.nio.file.StandardOpenOption.*;
 import static org.kie.commons.validation.Preconditions.*;
@@ -106,18 +108,81 @@ public abstract class AbstractIOService implements IOService {
     @Override
     public void startBatch( final Option... options ) {
         lockService.lock();
-        if ( !fileSystems.isEmpty() ) {
-            final Path path = fileSystems.values().iterator().next().get( 0 ).getRootDirectories().iterator().next();
-            setAttribute( path, FileSystemState.FILE_SYSTEM_STATE_ATTR, FileSystemState.BATCH );
-        }
+        setFileSystemsState( FileSystemState.BATCH );
     }
 
     @Override
     public void endBatch( final Option... options ) {
-        lockService.unlock();
-        if ( !fileSystems.isEmpty() ) {
-            final Path path = fileSystems.values().iterator().next().get( 0 ).getRootDirectories().iterator().next();
-            setAttribute( path, FileSystemState.FILE_SYSTEM_STATE_ATTR, FileSystemState.NORMAL );
+        try {
+            setFileSystemsState( FileSystemState.NORMAL );
+        } finally {
+            lockService.unlock();
+        }
+    }
+
+    /**
+     * Batch on a single file system; with a {@link ScopedLockService}, batches on different
+     * file systems run in parallel.
+     */
+    @Override
+    public void startBatch( final FileSystem fs,
+                            final Option... options ) {
+        checkNotNull( "fs", fs );
+        if ( lockService instanceof ScopedLockService ) {
+            ( (ScopedLockService) lockService ).lock( lockScope( fs ) );
+        } else {
+            lockService.lock();
+        }
+        try {
+            setFileSystemState( fs, FileSystemState.BATCH );
+        } catch ( final RuntimeException e ) {
+            unlockBatch( fs );
+            throw e;
+        }
+    }
+
+    @Override
+    public void endBatch( final FileSystem fs,
+                          final Option... options ) {
+        checkNotNull( "fs", fs );
+        try {
+            setFileSystemState( fs, FileSystemState.NORMAL );
+        } finally {
+            unlockBatch( fs );
+        }
+    }
+
+    private void unlockBatch( final FileSystem fs ) {
+        if ( lockService instanceof ScopedLockService ) {
+            ( (ScopedLockService) lockService ).unlock( lockScope( fs ) );
+        } else {
+            lockService.unlock();
+        }
+    }
+
+    protected String lockScope( final FileSystem fs ) {
+        if ( fs instanceof FileSystemId ) {
+            return ( (FileSystemId) fs ).id();
+        }
+        return fs.toString();
+    }
+
+    private void setFileSystemsState( final FileSystemState state ) {
+        for ( final List<FileSystem> fileSystemList : fileSystems.values() ) {
+            for ( final FileSystem fileSystem : fileSystemList ) {
+                setFileSystemState( fileSystem, state );
+            }
+        }
+    }
+
+    private void setFileSystemState( final FileSystem fileSystem,
+                                     final FileSystemState state ) {
+        if ( !fileSystem.isOpen() ) {
+            return;
+        }
+        final Iterator<Path> roots = fileSystem.getRootDirectories().iterator();
+        if ( roots.hasNext() ) {
+            setAttribute( roots.next(), FileSystemState.FILE_SYSTEM_STATE_ATTR, state );
         }
     }
 
@@ -591,6 +656,16 @@ public abstract class AbstractIOService implements IOService {
                                     final byte[] bytes,
                                     final Set<? extends OpenOption> options,
                                     final FileAttribute<?>... attrs ) throws IllegalArgumentException, IOException, UnsupportedOperationException {
+        return internalWrite( path, bytes, options, attrs );
+    }
+
+    /**
+     * Opens, writes and closes the channel; callers are in charge of serializing writes.
+     */
+    protected Path internalWrite( final Path path,
+                                  final byte[] bytes,
+                                  final Set<? extends OpenOption> options,
+                                  final FileAttribute<?>... attrs ) throws IllegalArgumentException, IOException, UnsupportedOperationException {
         SeekableByteChannel byteChannel;
         try {
             byteChannel = newByteChannel( path, buildOptions( options ), attrs );
@@ -24,6 +24,7 @@ import java.util.Set;
 
 import org.kie.commons.io.IOService;
 import org.kie.commons.io.IOWatchService;
+import org.kie.commons.io.impl.lock.PathLocks;
 import org.kie.commons.java.nio.IOException;
 import org.kie.commons.java.nio.base.AbstractBasicFileAttributeView;
 import org.kie.commons.java.nio.base.AttrHolder;
@@ -52,125 +53,185 @@ public class IOServiceDotFileImpl
         extends AbstractIOService
         implements IOService {
 
+    protected final PathLocks pathLocks;
+
     public IOServiceDotFileImpl() {
         super();
+        this.pathLocks = new PathLocks();
     }
 
     public IOServiceDotFileImpl( final IOWatchService watchService ) {
         super( watchService );
+        this.pathLocks = new PathLocks();
     }
 
     public IOServiceDotFileImpl( final LockService lockService,
                                  final IOWatchService watchService ) {
+        this( lockService, watchService, new PathLocks() );
+    }
+
+    public IOServiceDotFileImpl( final LockService lockService,
+                                 final IOWatchService watchService,
+                                 final PathLocks pathLocks ) {
         super( lockService, watchService );
+        this.pathLocks = checkNotNull( "pathLocks", pathLocks );
     }
 
     @Override
-    public synchronized void delete( final Path path,
-                                     final DeleteOption... options )
+    public void delete( final Path path,
+                        final DeleteOption... options )
             throws IllegalArgumentException, NoSuchFileException, DirectoryNotEmptyException,
             IOException, SecurityException {
-        Files.delete( path, options );
+        pathLocks.lockWrite( path );
         try {
-            Files.deleteIfExists( dot( path ), options );
-        } catch ( Exception ex ) {
-        }
-        if ( path instanceof AttrHolder ) {
-            ( (AttrHolder) path ).getAttrStorage().clear();
+            Files.delete( path, options );
+            try {
+                Files.deleteIfExists( dot( path ), options );
+            } catch ( Exception ex ) {
+            }
+            if ( path instanceof AttrHolder ) {
+                ( (AttrHolder) path ).getAttrStorage().clear();
+            }
+        } finally {
+            pathLocks.unlockWrite( path );
         }
     }
 
     @Override
-    public synchronized boolean deleteIfExists( final Path path,
-                                                final DeleteOption... options )
+    public boolean deleteIfExists( final Path path,
+                                   final DeleteOption... options )
             throws IllegalArgumentException, DirectoryNotEmptyException, IOException, SecurityException {
-        final boolean result = Files.deleteIfExists( path, options );
+        pathLocks.lockWrite( path );
         try {
-            Files.deleteIfExists( dot( path ), options );
-        } catch ( Exception ex ) {
-        }
-        if ( path instanceof AttrHolder ) {
-            ( (AttrHolder) path ).getAttrStorage().clear();
+            final boolean result = Files.deleteIfExists( path, options );
+            try {
+                Files.deleteIfExists( dot( path ), options );
+            } catch ( Exception ex ) {
+            }
+            if ( path instanceof AttrHolder ) {
+                ( (AttrHolder) path ).getAttrStorage().clear();
+            }
+            return result;
+        } finally {
+            pathLocks.unlockWrite( path );
         }
-        return result;
     }
 
     @Override
-    public synchronized SeekableByteChannel newByteChannel( final Path path,
-                                                            final Set<? extends OpenOption> options,
-                                                            final FileAttribute<?>... attrs )
+    public SeekableByteChannel newByteChannel( final Path path,
+                                               final Set<? extends OpenOption> options,
+                                               final FileAttribute<?>... attrs )
             throws IllegalArgumentException, UnsupportedOperationException,
             FileAlreadyExistsException, IOException, SecurityException {
         checkNotNull( "path", path );
 
-        final Properties properties = new Properties();
-        if ( exists( dot( path ) ) ) {
-            properties.load( newInputStream( dot( path ) ) );
-        }
-        final FileAttribute<?>[] allAttrs = consolidate( properties, attrs );
+        pathLocks.lockWrite( path );
+        try {
+            final Properties properties = new Properties();
+            if ( exists( dot( path ) ) ) {
+                properties.load( newInputStream( dot( path ) ) );
+            }
+            final FileAttribute<?>[] allAttrs = consolidate( properties, attrs );
 
-        final SeekableByteChannel result = Files.newByteChannel( path, buildOptions( options ), allAttrs );
+            final SeekableByteChannel result = Files.newByteChannel( path, buildOptions( options ), allAttrs );
+
+            if ( isFileScheme( path ) ) {
+                buildDotFile( path, newOutputStream( dot( path ) ), allAttrs );
+            }
 
-        if ( isFileScheme( path ) ) {
-            buildDotFile( path, newOutputStream( dot( path ) ), allAttrs );
+            return result;
+        } finally {
+            pathLocks.unlockWrite( path );
         }
+    }
 
-        return result;
+    /**
+     * Holds the path lock until the channel is closed, which is when file systems like git commit,
+     * so readers never see the content and dot file of different writes. Writes to other paths
+     * are not held back.
+     */
+    @Override
+    public Path write( final Path path,
+                       final byte[] bytes,
+                       final Set<? extends OpenOption> options,
+                       final FileAttribute<?>... attrs ) throws IllegalArgumentException, IOException, UnsupportedOperationException {
+        checkNotNull( "path", path );
+
+        pathLocks.lockWrite( path );
+        try {
+            return internalWrite( path, bytes, options, attrs );
+        } finally {
+            pathLocks.unlockWrite( path );
+        }
     }
 
     @Override
-    public synchronized Path createDirectory( final Path dir,
-                                              final FileAttribute<?>... attrs )
+    public Path createDirectory( final Path dir,
+                                 final FileAttribute<?>... attrs )
             throws IllegalArgumentException, UnsupportedOperationException, FileAlreadyExistsException,
             IOException, SecurityException {
         return internalCreateDirectory( dir, false, attrs );
     }
 
     @Override
-    public synchronized Path createDirectories( final Path dir,
-                                                final FileAttribute<?>... attrs )
+    public Path createDirectories( final Path dir,
+                                   final FileAttribute<?>... attrs )
             throws UnsupportedOperationException, FileAlreadyExistsException,
             IOException, SecurityException {
-        final Path result = Files.createDirectories( dir, attrs );
+        pathLocks.lockWrite( dir );
+        try {
+            final Path result = Files.createDirectories( dir, attrs );
 
-        buildDotFile( dir, newOutputStream( dot( dir ) ), attrs );
+            buildDotFile( dir, newOutputStream( dot( dir ) ), attrs );
 
-        return result;
+            return result;
+        } finally {
+            pathLocks.unlockWrite( dir );
+        }
     }
 
     @Override
-    public synchronized Path copy( final Path source,
-                                   final Path target,
-                                   final CopyOption... options )
+    public Path copy( final Path source,
+                      final Path target,
+                      final CopyOption... options )
             throws UnsupportedOperationException, FileAlreadyExistsException,
             DirectoryNotEmptyException, IOException, SecurityException {
+        pathLocks.lockWrite( source, target );
+        try {
+            if ( Files.exists( dot( source ) ) ) {
+                Files.copy( dot( source ), dot( target ), forceBuildOptions( options ) );
+            } else if ( Files.exists( dot( target ) ) ) {
+                Files.delete( dot( target ) );
+            }
 
-        if ( Files.exists( dot( source ) ) ) {
-            Files.copy( dot( source ), dot( target ), forceBuildOptions( options ) );
-        } else if ( Files.exists( dot( target ) ) ) {
-            Files.delete( dot( target ) );
-        }
-
-        final Path result = Files.copy( source, target, buildOptions( options ) );
+            final Path result = Files.copy( source, target, buildOptions( options ) );
 
-        return result;
+            return result;
+        } finally {
+            pathLocks.unlockWrite( source, target );
+        }
     }
 
     @Override
-    public synchronized Path move( final Path source,
-                                   final Path target,
-                                   final CopyOption... options )
+    public Path move( final Path source,
+                      final Path target,
+                      final CopyOption... options )
             throws UnsupportedOperationException, FileAlreadyExistsException,
             DirectoryNotEmptyException, AtomicMoveNotSupportedException, IOException, SecurityException {
-        if ( Files.exists( dot( source ) ) ) {
-            Files.move( dot( source ), dot( target ), forceBuildOptions( options ) );
-        } else if ( Files.exists( dot( target ) ) ) {
-            Files.delete( dot( target ) );
-        }
+        pathLocks.lockWrite( source, target );
+        try {
+            if ( Files.exists( dot( source ) ) ) {
+                Files.move( dot( source ), dot( target ), forceBuildOptions( options ) );
+            } else if ( Files.exists( dot( target ) ) ) {
+                Files.delete( dot( target ) );
+            }
 
-        final Path result = Files.move( source, target, options );
+            final Path result = Files.move( source, target, options );
 
-        return result;
+            return result;
+        } finally {
+            pathLocks.unlockWrite( source, target );
+        }
     }
 
     @Override
@@ -200,34 +261,45 @@ public class IOServiceDotFileImpl
         checkNotNull( "path", path );
         checkNotEmpty( "attributes", attributes );
 
-        final Properties original = new Properties( Files.readAttributes( path, attributes ) );
-        if ( attributes.equals( "*" ) && exists( dot( path ) ) ) {
-            boolean isAttrHolder = path instanceof AttrHolder;
-            if ( isAttrHolder && ( (AttrHolder) path ).getAttrStorage().getContent().size() > 0 ) {
-                return ( (AttrHolder) path ).getAttrStorage().getAllContent();
-            }
-            final Properties content = new Properties();
-            content.load( newInputStream( dot( path ) ) );
-            content.putAll( original );
+        pathLocks.lockRead( path );
+        try {
+            final Properties original = new Properties( Files.readAttributes( path, attributes ) );
+            if ( attributes.equals( "*" ) && exists( dot( path ) ) ) {
+                boolean isAttrHolder = path instanceof AttrHolder;
+                if ( isAttrHolder && ( (AttrHolder) path ).getAttrStorage().getContent().size() > 0 ) {
+                    return ( (AttrHolder) path ).getAttrStorage().getAllContent();
+                }
+                final Properties content = new Properties();
+                content.load( newInputStream( dot( path ) ) );
+                content.putAll( original );
 
-            if ( isAttrHolder ) {
-                ( (AttrHolder) path ).getAttrStorage().loadContent( content );
+                if ( isAttrHolder ) {
+                    ( (AttrHolder) path ).getAttrStorage().loadContent( content );
+                }
+                return content;
             }
-            return content;
-        }
 
-        return original;
+            return original;
+        } finally {
+            pathLocks.unlockRead( path );
+        }
     }
 
     @Override
-    public synchronized Path setAttributes( final Path path,
-                                            final FileAttribute<?>... attrs )
+    public Path setAttributes( final Path path,
+                               final FileAttribute<?>... attrs )
             throws UnsupportedOperationException, IllegalArgumentException, ClassCastException, IOException, SecurityException {
         checkNotNull( "path", path );
-        if ( Files.isDirectory( path ) ) {
-            return internalCreateDirectory( path, true, attrs );
+
+        pathLocks.lockWrite( path );
+        try {
+            if ( Files.isDirectory( path ) ) {
+                return internalCreateDirectory( path, true, attrs );
+            }
+            return write( path, readAllBytes( path ), Collections.<OpenOption>emptySet(), attrs );
+        } finally {
+            pathLocks.unlockWrite( path );
         }
-        return write( path, readAllBytes( path ), Collections.<OpenOption>emptySet(), attrs );
     }
 
     @Override
@@ -315,30 +387,35 @@ public class IOServiceDotFileImpl
         return null;
     }
 
-    protected synchronized Path internalCreateDirectory( final Path dir,
-                                                         final boolean skipAlreadyExistsException,
-                                                         final FileAttribute<?>... attrs )
+    protected Path internalCreateDirectory( final Path dir,
+                                            final boolean skipAlreadyExistsException,
+                                            final FileAttribute<?>... attrs )
             throws IllegalArgumentException, UnsupportedOperationException, FileAlreadyExistsException,
             IOException, SecurityException {
         checkNotNull( "dir", dir );
 
-        FileAttribute<?>[] allAttrs = attrs;
+        pathLocks.lockWrite( dir );
         try {
-            Files.createDirectory( dir, attrs );
-        } catch ( final FileAlreadyExistsException ex ) {
-            final Properties properties = new Properties();
-            if ( exists( dot( dir ) ) ) {
-                properties.load( newInputStream( dot( dir ) ) );
-            }
-            allAttrs = consolidate( properties, attrs );
-            if ( !skipAlreadyExistsException ) {
-                throw ex;
+            FileAttribute<?>[] allAttrs = attrs;
+            try {
+                Files.createDirectory( dir, attrs );
+            } catch ( final FileAlreadyExistsException ex ) {
+                final Properties properties = new Properties();
+                if ( exists( dot( dir ) ) ) {
+                    properties.load( newInputStream( dot( dir ) ) );
+                }
+                allAttrs = consolidate( properties, attrs );
+                if ( !skipAlreadyExistsException ) {
+                    throw ex;
+                }
             }
-        }
 
-        buildDotFile( dir, newOutputStream( dot( dir ) ), allAttrs );
+            buildDotFile( dir, newOutputStream( dot( dir ) ), allAttrs );
 
-        return dir;
+            return dir;
+        } finally {
+            pathLocks.unlockWrite( dir );
+        }
     }
 
     protected String[] split( final String attribute ) {
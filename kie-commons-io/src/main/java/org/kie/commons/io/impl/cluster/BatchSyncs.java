@@ -0,0 +1,92 @@
+package org.kie.commons.io.impl.cluster;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.kie.commons.java.nio.base.FileSystemId;
+import org.kie.commons.java.nio.file.FileSystem;
+
+import static org.kie.commons.validation.Preconditions.*;
+
+/**
+ * Keeps track of the file systems changed while a batch is running, so a single
+ * SYNC_FS message per file system is sent when the batch ends.
+ * <p/>
+ * A batch of a file system only defers the messages of that file system, and ends
+ * independently of the batches of other file systems; the unscoped batch defers the messages
+ * of every file system without a batch of its own. Batches of the same file system nest.
+ */
+public class BatchSyncs {
+
+    private final Map<String, Batch> batches = new HashMap<String, Batch>();
+    private Batch global = null;
+
+    public synchronized void start() {
+        if ( global == null ) {
+            global = new Batch();
+        }
+        global.depth++;
+    }
+
+    public synchronized void start( final FileSystem fileSystem ) {
+        final String id = idOf( fileSystem );
+        Batch batch = batches.get( id );
+        if ( batch == null ) {
+            batch = new Batch();
+            batches.put( id, batch );
+        }
+        batch.depth++;
+    }
+
+    public synchronized boolean defer( final FileSystem fileSystem ) {
+        Batch batch = batches.get( idOf( fileSystem ) );
+        if ( batch == null ) {
+            batch = global;
+        }
+        if ( batch == null ) {
+            return false;
+        }
+        batch.fileSystems.add( fileSystem );
+        return true;
+    }
+
+    /**
+     * @return file systems changed during the unscoped batch; empty while an outer one is still open
+     */
+    public synchronized Collection<FileSystem> stop() {
+        if ( global == null || --global.depth > 0 ) {
+            return Collections.emptyList();
+        }
+        final Collection<FileSystem> result = new ArrayList<FileSystem>( global.fileSystems );
+        global = null;
+        return result;
+    }
+
+    /**
+     * @return the file system if it changed during its batch; empty while an outer one is still open
+     */
+    public synchronized Collection<FileSystem> stop( final FileSystem fileSystem ) {
+        final String id = idOf( fileSystem );
+        final Batch batch = batches.get( id );
+        if ( batch == null || --batch.depth > 0 ) {
+            return Collections.emptyList();
+        }
+        batches.remove( id );
+        return new ArrayList<FileSystem>( batch.fileSystems );
+    }
+
+    static String idOf( final FileSystem fileSystem ) {
+        return checkInstanceOf( "fileSystem", fileSystem, FileSystemId.class ).id();
+    }
+
+    private static class Batch {
+
+        private final Set<FileSystem> fileSystems = new LinkedHashSet<FileSystem>();
+        private int depth = 0;
+    }
+}
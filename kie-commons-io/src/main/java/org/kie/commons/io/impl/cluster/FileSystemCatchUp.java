@@ -0,0 +1,205 @@
+package org.kie.commons.io.impl.cluster;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.kie.commons.io.IOService;
+import org.kie.commons.java.nio.base.FileSystemId;
+import org.kie.commons.java.nio.base.RevisionedFileSystem;
+import org.kie.commons.java.nio.base.SegmentedPath;
+import org.kie.commons.java.nio.file.FileSystem;
+import org.kie.commons.java.nio.file.Path;
+
+/**
+ * Applies SYNC_FS messages off the messaging thread, so senders never wait for a fetch.
+ * <p/>
+ * Messages for a file system that arrive while its fetch is pending are folded into that
+ * fetch, which only asks for the refs they announced. Commits announced by the messages are
+ * remembered once fetched, so readers can wait until a given commit of a ref is visible on
+ * this node.
+ */
+class FileSystemCatchUp {
+
+    private static final int MAX_APPLIED_PER_REF = 1000;
+
+    private final IOService service;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor( new ThreadFactory() {
+        @Override
+        public Thread newThread( final Runnable r ) {
+            final Thread thread = new Thread( r, "kie-cluster-sync" );
+            thread.setDaemon( true );
+            return thread;
+        }
+    } );
+
+    private final Map<String, PendingSync> pending = new LinkedHashMap<String, PendingSync>();
+    private final Map<String, Set<String>> applied = new HashMap<String, Set<String>>();
+
+    FileSystemCatchUp( final IOService service ) {
+        this.service = service;
+    }
+
+    synchronized void submit( final String scheme,
+                              final String id,
+                              final String origin,
+                              final Map<String, String> refs ) {
+        PendingSync sync = pending.get( id );
+        if ( sync == null ) {
+            sync = new PendingSync( scheme, id );
+            pending.put( id, sync );
+            executor.execute( new Runnable() {
+                @Override
+                public void run() {
+                    apply( id );
+                }
+            } );
+        }
+        sync.origin = origin;
+        if ( refs.isEmpty() ) {
+            sync.full = true;
+        }
+        for ( final Map.Entry<String, String> ref : refs.entrySet() ) {
+            sync.commits.add( ref.getKey() + '@' + ref.getValue() );
+            sync.heads.put( ref.getKey(), ref.getValue() );
+        }
+    }
+
+    private void apply( final String id ) {
+        final PendingSync sync;
+        synchronized ( this ) {
+            sync = pending.remove( id );
+        }
+        if ( sync == null ) {
+            return;
+        }
+        try {
+            service.getFileSystem( URI.create( sync.scheme + "://" + sync.id + "?sync=" + sync.origin + "&force" + refsParam( sync ) ) );
+        } catch ( final Exception ex ) {
+            // commits stay unconfirmed, the next message of this file system fetches again
+            return;
+        }
+        synchronized ( this ) {
+            for ( final String commit : sync.commits ) {
+                final String key = sync.id + '/' + commit.substring( 0, commit.lastIndexOf( '@' ) );
+                Set<String> commits = applied.get( key );
+                if ( commits == null ) {
+                    commits = new LinkedHashSet<String>();
+                    applied.put( key, commits );
+                }
+                commits.add( commit.substring( commit.lastIndexOf( '@' ) + 1 ) );
+                if ( commits.size() > MAX_APPLIED_PER_REF ) {
+                    final Iterator<String> oldest = commits.iterator();
+                    oldest.next();
+                    oldest.remove();
+                }
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * Restricts the fetch to the announced branches, at the last commit announced for each;
+     * a message that announced no refs asks for a full fetch.
+     */
+    private static String refsParam( final PendingSync sync ) {
+        if ( sync.full || sync.heads.isEmpty() ) {
+            return "";
+        }
+        final StringBuilder refs = new StringBuilder();
+        for ( final Map.Entry<String, String> head : sync.heads.entrySet() ) {
+            if ( refs.length() > 0 ) {
+                refs.append( ',' );
+            }
+            refs.append( head.getKey() ).append( ':' ).append( head.getValue() );
+        }
+        try {
+            return "&refs=" + URLEncoder.encode( refs.toString(), "UTF-8" );
+        } catch ( final UnsupportedEncodingException e ) {
+            return "";
+        }
+    }
+
+    /**
+     * @return <code>true</code> once the ref of the file system is at the commit on this node, or
+     * an announcement of that commit was fetched; <code>false</code> if the timeout elapsed first
+     */
+    boolean awaitCommit( final FileSystem fileSystem,
+                         final String ref,
+                         final String commit,
+                         final long timeout,
+                         final TimeUnit unit ) throws InterruptedException {
+        final String key = ( (FileSystemId) fileSystem ).id() + '/' + ref;
+        final long deadline = System.nanoTime() + unit.toNanos( timeout );
+        while ( true ) {
+            // the repository is read without the monitor, so a slow read doesn't hold back submit
+            if ( commit.equals( localRevision( fileSystem, ref ) ) ) {
+                return true;
+            }
+            synchronized ( this ) {
+                if ( isApplied( key, commit ) ) {
+                    return true;
+                }
+                final long remaining = TimeUnit.NANOSECONDS.toMillis( deadline - System.nanoTime() );
+                if ( remaining <= 0 ) {
+                    return false;
+                }
+                wait( remaining );
+                if ( isApplied( key, commit ) ) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    private boolean isApplied( final String key,
+                               final String commit ) {
+        final Set<String> commits = applied.get( key );
+        return commits != null && commits.contains( commit );
+    }
+
+    private String localRevision( final FileSystem fileSystem,
+                                  final String ref ) {
+        if ( !( fileSystem instanceof RevisionedFileSystem ) ) {
+            return null;
+        }
+        for ( final Path root : fileSystem.getRootDirectories() ) {
+            if ( root instanceof SegmentedPath && ref.equals( ( (SegmentedPath) root ).getSegmentId() ) ) {
+                return ( (RevisionedFileSystem) fileSystem ).getRevision( root );
+            }
+        }
+        return null;
+    }
+
+    void dispose() {
+        executor.shutdownNow();
+    }
+
+    private static class PendingSync {
+
+        private final String scheme;
+        private final String id;
+        private String origin;
+        private final List<String> commits = new ArrayList<String>();
+        private final Map<String, String> heads = new LinkedHashMap<String, String>();
+        private boolean full = false;
+
+        PendingSync( final String scheme,
+                     final String id ) {
+            this.scheme = scheme;
+            this.id = id;
+        }
+    }
+}
@@ -2,20 +2,71 @@ package org.kie.commons.io.impl.cluster;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.kie.commons.cluster.LockExecuteNotifyAsyncReleaseTemplate;
-import org.kie.commons.java.nio.base.FileSystemId;
+import org.kie.commons.cluster.ClusterService;
+import org.kie.commons.cluster.LockExecuteReleaseNotifyTemplate;
+import org.kie.commons.java.nio.base.RevisionedFileSystem;
+import org.kie.commons.java.nio.base.SegmentedPath;
 import org.kie.commons.java.nio.file.FileSystem;
+import org.kie.commons.java.nio.file.Path;
 import org.kie.commons.message.MessageType;
 
 import static org.kie.commons.io.impl.cluster.ClusterMessageType.*;
 
-public class FileSystemSyncLock<V> extends LockExecuteNotifyAsyncReleaseTemplate<V> {
+/**
+ * Runs a write under the lock of its file system, then announces "ref X of fs Y is now at
+ * commit C" for every ref of the file system once the lock is released.
+ */
+public class FileSystemSyncLock<V> extends LockExecuteReleaseNotifyTemplate<V> {
+
+    public static final String REF_NAME = "ref_name_";
+    public static final String REF_COMMIT = "ref_commit_";
+    /**
+     * Increasing number of the message on this node, taken under the lock of the file system,
+     * so messages published out of order can still be told apart.
+     */
+    public static final String SEQUENCE = "sync_seq";
+
+    private static final AtomicLong SEQUENCES = new AtomicLong();
 
     private final FileSystem fileSystem;
+    private final BatchSyncs batchSyncs;
+    private final SyncCoalescer syncCoalescer;
 
     public FileSystemSyncLock( final FileSystem fileSystem ) {
+        this( fileSystem, null, null );
+    }
+
+    public FileSystemSyncLock( final FileSystem fileSystem,
+                               final BatchSyncs batchSyncs ) {
+        this( fileSystem, batchSyncs, null );
+    }
+
+    public FileSystemSyncLock( final FileSystem fileSystem,
+                               final BatchSyncs batchSyncs,
+                               final SyncCoalescer syncCoalescer ) {
         this.fileSystem = fileSystem;
+        this.batchSyncs = batchSyncs;
+        this.syncCoalescer = syncCoalescer;
+    }
+
+    @Override
+    public void publish( final ClusterService clusterService,
+                         final Map<String, String> content ) {
+        if ( batchSyncs != null && batchSyncs.defer( fileSystem ) ) {
+            return;
+        }
+        if ( syncCoalescer != null ) {
+            syncCoalescer.offer( content );
+            return;
+        }
+        super.publish( clusterService, content );
+    }
+
+    @Override
+    public String getScope() {
+        return BatchSyncs.idOf( fileSystem );
     }
 
     @Override
@@ -25,10 +76,38 @@ public class FileSystemSyncLock<V> extends LockExecuteNotifyAsyncReleaseTemplate
 
     @Override
     public Map<String, String> buildContent() {
-        return new HashMap<String, String>() {{
-            put( "fs_scheme", fileSystem.getRootDirectories().iterator().next().toUri().getScheme() );
-            put( "fs_id", ( (FileSystemId) fileSystem ).id() );
-            put( "fs_uri", fileSystem.toString() );
-        }};
+        final Map<String, String> content = new HashMap<String, String>();
+        content.put( "fs_scheme", fileSystem.getRootDirectories().iterator().next().toUri().getScheme() );
+        content.put( "fs_id", BatchSyncs.idOf( fileSystem ) );
+        content.put( "fs_uri", fileSystem.toString() );
+        content.put( SEQUENCE, Long.toString( SEQUENCES.incrementAndGet() ) );
+        if ( fileSystem instanceof RevisionedFileSystem ) {
+            int i = 0;
+            for ( final Path root : fileSystem.getRootDirectories() ) {
+                final String revision = ( (RevisionedFileSystem) fileSystem ).getRevision( root );
+                if ( revision != null && root instanceof SegmentedPath ) {
+                    content.put( REF_NAME + i, ( (SegmentedPath) root ).getSegmentId() );
+                    content.put( REF_COMMIT + i, revision );
+                    i++;
+                }
+            }
+        }
+        return content;
+    }
+
+    /**
+     * @return refs announced by a SYNC_FS message, by name; empty for messages without versions
+     */
+    public static Map<String, String> readRefs( final Map<String, String> content ) {
+        final Map<String, String> refs = new HashMap<String, String>();
+        for ( final Map.Entry<String, String> entry : content.entrySet() ) {
+            if ( entry.getKey().startsWith( REF_NAME ) ) {
+                final String commit = content.get( REF_COMMIT + entry.getKey().substring( REF_NAME.length() ) );
+                if ( commit != null ) {
+                    refs.put( entry.getValue(), commit );
+                }
+            }
+        }
+        return refs;
     }
 }
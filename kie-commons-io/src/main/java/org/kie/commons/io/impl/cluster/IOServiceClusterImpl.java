@@ -8,13 +8,17 @@ import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.kie.commons.cluster.ClusterService;
@@ -59,6 +63,9 @@ public class IOServiceClusterImpl implements IOClusteredService {
 
     private final IOService service;
     private final ClusterService clusterService;
+    private final BatchSyncs batchSyncs = new BatchSyncs();
+    private final FileSystemCatchUp catchUp;
+    private final SyncCoalescer syncCoalescer;
     private NewFileSystemListener newFileSystemListener = null;
 
     public IOServiceClusterImpl( final IOService service,
@@ -71,6 +78,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
                                  final boolean autoStart) {
         checkNotNull( "clusterServiceFactory", clusterServiceFactory );
         this.service = checkNotNull( "service", service );
+        this.catchUp = new FileSystemCatchUp( service );
 
         this.clusterService = clusterServiceFactory.build( new MessageHandlerResolver() {
 
@@ -91,6 +99,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
                 return null;
             }
         } );
+        this.syncCoalescer = new SyncCoalescer( clusterService );
         if ( autoStart ) {
             start();
         }
@@ -107,7 +116,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
 
                 // 10 seconds
                 int timeout = 10000;
-                final AtomicBoolean msgAnsweredOrTimedout = new AtomicBoolean( false );
+                final CountDownLatch msgAnsweredOrTimedout = new CountDownLatch( 1 );
                 final AtomicBoolean onSync = new AtomicBoolean( false );
 
                 final Map<Integer, FileSystemInfo> fileSystems = new HashMap<Integer, FileSystemInfo>();
@@ -115,13 +124,13 @@ public class IOServiceClusterImpl implements IOClusteredService {
                 clusterService.broadcastAndWait( QUERY_FOR_FS, Collections.<String, String>emptyMap(), timeout, new AsyncCallback() {
                     @Override
                     public void onTimeOut() {
-                        msgAnsweredOrTimedout.set( true );
+                        msgAnsweredOrTimedout.countDown();
                     }
 
                     @Override
                     public void onReply( final MessageType type,
                             final Map<String, String> content ) {
-                        if ( msgAnsweredOrTimedout.get() || onSync.get() ) {
+                        if ( msgAnsweredOrTimedout.getCount() == 0 || onSync.get() ) {
                             return;
                         }
 
@@ -158,15 +167,15 @@ public class IOServiceClusterImpl implements IOClusteredService {
                                     service.getFileSystem( fs );
                                 }
 
-                                msgAnsweredOrTimedout.set( true );
+                                msgAnsweredOrTimedout.countDown();
                             }
                         }.start();
                     }
                 } );
 
-                while ( !msgAnsweredOrTimedout.get() ) {
+                while ( msgAnsweredOrTimedout.getCount() > 0 ) {
                     try {
-                        Thread.sleep( 100 );
+                        msgAnsweredOrTimedout.await();
                     } catch ( InterruptedException ignored ) {
                     }
                 }
@@ -178,20 +187,88 @@ public class IOServiceClusterImpl implements IOClusteredService {
 
     @Override
     public void dispose() {
+        syncCoalescer.dispose();
         clusterService.dispose();
+        catchUp.dispose();
         service.dispose();
     }
 
+    @Override
+    public boolean awaitCommit( final FileSystem fileSystem,
+                                final String ref,
+                                final String commit,
+                                final long timeout,
+                                final TimeUnit unit ) throws InterruptedException {
+        return catchUp.awaitCommit( fileSystem, ref, commit, timeout, unit );
+    }
+
     @Override
     public void startBatch( final Option... options ) {
         clusterService.lock();
+        batchSyncs.start();
         service.startBatch( options );
     }
 
     @Override
     public void endBatch( final Option... options ) {
-        service.endBatch( options );
-        clusterService.unlock();
+        final List<Map<String, String>> syncs = new ArrayList<Map<String, String>>();
+        try {
+            try {
+                service.endBatch( options );
+            } finally {
+                try {
+                    collectBatchSyncs( batchSyncs.stop(), syncs );
+                } finally {
+                    clusterService.unlock();
+                }
+            }
+        } finally {
+            publishSyncs( syncs );
+        }
+    }
+
+    @Override
+    public void startBatch( final FileSystem fs,
+                            final Option... options ) {
+        clusterService.lock( BatchSyncs.idOf( fs ) );
+        batchSyncs.start( fs );
+        service.startBatch( fs, options );
+    }
+
+    @Override
+    public void endBatch( final FileSystem fs,
+                          final Option... options ) {
+        final List<Map<String, String>> syncs = new ArrayList<Map<String, String>>();
+        try {
+            try {
+                service.endBatch( fs, options );
+            } finally {
+                try {
+                    collectBatchSyncs( batchSyncs.stop( fs ), syncs );
+                } finally {
+                    clusterService.unlock( BatchSyncs.idOf( fs ) );
+                }
+            }
+        } finally {
+            publishSyncs( syncs );
+        }
+    }
+
+    /**
+     * Versions are read while the batch still holds the lock, and only published after it.
+     */
+    private void collectBatchSyncs( final Collection<FileSystem> fileSystems,
+                                    final List<Map<String, String>> syncs ) {
+        for ( final FileSystem fileSystem : fileSystems ) {
+            syncs.add( new FileSystemSyncLock<Void>( fileSystem ).buildContent() );
+        }
+    }
+
+    private void publishSyncs( final List<Map<String, String>> syncs ) {
+        for ( final Map<String, String> content : syncs ) {
+            syncCoalescer.offer( content );
+        }
+        syncCoalescer.flush();
     }
 
     @Override
@@ -322,7 +399,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
     @Override
     public Path createFile( final Path path,
                             final FileAttribute<?>... attrs ) throws IllegalArgumentException, UnsupportedOperationException, FileAlreadyExistsException, IOException, SecurityException {
-        return new FileSystemSyncLock<Path>( path.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( path.getFileSystem(), batchSyncs, syncCoalescer ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.createFile( path, attrs );
@@ -333,7 +410,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
     @Override
     public Path createDirectory( final Path dir,
                                  final FileAttribute<?>... attrs ) throws IllegalArgumentException, UnsupportedOperationException, FileAlreadyExistsException, IOException, SecurityException {
-        return new FileSystemSyncLock<Path>( dir.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( dir.getFileSystem(), batchSyncs, syncCoalescer ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.createDirectory( dir, attrs );
@@ -344,7 +421,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
     @Override
     public Path createDirectories( final Path dir,
                                    final FileAttribute<?>... attrs ) throws UnsupportedOperationException, FileAlreadyExistsException, IOException, SecurityException {
-        return new FileSystemSyncLock<Path>( dir.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( dir.getFileSystem(), batchSyncs, syncCoalescer ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.createDirectories( dir, attrs );
@@ -355,7 +432,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
     @Override
     public Path createDirectory( final Path dir,
                                  final Map<String, ?> attrs ) throws IllegalArgumentException, UnsupportedOperationException, FileAlreadyExistsException, IOException, SecurityException {
-        return new FileSystemSyncLock<Path>( dir.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( dir.getFileSystem(), batchSyncs, syncCoalescer ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.createDirectory( dir, attrs );
@@ -366,7 +443,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
     @Override
     public Path createDirectories( final Path dir,
                                    final Map<String, ?> attrs ) throws UnsupportedOperationException, FileAlreadyExistsException, IOException, SecurityException {
-        return new FileSystemSyncLock<Path>( dir.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( dir.getFileSystem(), batchSyncs, syncCoalescer ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.createDirectories( dir, attrs );
@@ -377,7 +454,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
     @Override
     public void delete( final Path path,
                         final DeleteOption... options ) throws IllegalArgumentException, NoSuchFileException, DirectoryNotEmptyException, IOException, SecurityException {
-        new FileSystemSyncLock<Void>( path.getFileSystem() ).execute( clusterService, new FutureTask<Void>( new Callable<Void>() {
+        new FileSystemSyncLock<Void>( path.getFileSystem(), batchSyncs, syncCoalescer ).execute( clusterService, new FutureTask<Void>( new Callable<Void>() {
             @Override
             public Void call() throws Exception {
                 service.delete( path, options );
@@ -389,7 +466,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
     @Override
     public boolean deleteIfExists( final Path path,
                                    final DeleteOption... options ) throws IllegalArgumentException, DirectoryNotEmptyException, IOException, SecurityException {
-        return new FileSystemSyncLock<Boolean>( path.getFileSystem() ).execute( clusterService, new FutureTask<Boolean>( new Callable<Boolean>() {
+        return new FileSystemSyncLock<Boolean>( path.getFileSystem(), batchSyncs, syncCoalescer ).execute( clusterService, new FutureTask<Boolean>( new Callable<Boolean>() {
             @Override
             public Boolean call() throws Exception {
                 return service.deleteIfExists( path, options );
@@ -429,7 +506,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
     public Path copy( final Path source,
                       final Path target,
                       final CopyOption... options ) throws UnsupportedOperationException, FileAlreadyExistsException, DirectoryNotEmptyException, IOException, SecurityException {
-        return new FileSystemSyncLock<Path>( target.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( target.getFileSystem(), batchSyncs, syncCoalescer ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.copy( source, target, options );
@@ -441,7 +518,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
     public long copy( final InputStream in,
                       final Path target,
                       final CopyOption... options ) throws IOException, FileAlreadyExistsException, DirectoryNotEmptyException, UnsupportedOperationException, SecurityException {
-        return new FileSystemSyncLock<Long>( target.getFileSystem() ).execute( clusterService, new FutureTask<Long>( new Callable<Long>() {
+        return new FileSystemSyncLock<Long>( target.getFileSystem(), batchSyncs, syncCoalescer ).execute( clusterService, new FutureTask<Long>( new Callable<Long>() {
             @Override
             public Long call() throws Exception {
                 return service.copy( in, target, options );
@@ -459,17 +536,25 @@ public class IOServiceClusterImpl implements IOClusteredService {
     public Path move( final Path source,
                       final Path target,
                       final CopyOption... options ) throws UnsupportedOperationException, FileAlreadyExistsException, DirectoryNotEmptyException, AtomicMoveNotSupportedException, IOException, SecurityException {
-        return new FileSystemSyncLock<Path>( source.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
-            @Override
-            public Path call() throws Exception {
-                return new FileSystemSyncLock<Path>( target.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
-                    @Override
-                    public Path call() throws Exception {
-                        return service.move( source, target, options );
-                    }
-                } ) );
-            }
-        } ) );
+        // both scopes are taken at once, in the cluster wide partition order, so two opposite
+        // moves can't deadlock; the nested locks below are then reentrant
+        final String[] scopes = { BatchSyncs.idOf( source.getFileSystem() ), BatchSyncs.idOf( target.getFileSystem() ) };
+        clusterService.lock( scopes );
+        try {
+            return new FileSystemSyncLock<Path>( source.getFileSystem(), batchSyncs, syncCoalescer ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+                @Override
+                public Path call() throws Exception {
+                    return new FileSystemSyncLock<Path>( target.getFileSystem(), batchSyncs, syncCoalescer ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+                        @Override
+                        public Path call() throws Exception {
+                            return service.move( source, target, options );
+                        }
+                    } ) );
+                }
+            } ) );
+        } finally {
+            clusterService.unlock( scopes );
+        }
     }
 
     @Override
@@ -492,7 +577,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
     @Override
     public Path setAttributes( final Path path,
                                final FileAttribute<?>... attrs ) throws UnsupportedOperationException, IllegalArgumentException, ClassCastException, IOException, SecurityException {
-        return new FileSystemSyncLock<Path>( path.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( path.getFileSystem(), batchSyncs, syncCoalescer ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.setAttributes( path, attrs );
@@ -503,7 +588,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
     @Override
     public Path setAttributes( final Path path,
                                final Map<String, Object> attrs ) throws UnsupportedOperationException, IllegalArgumentException, ClassCastException, IOException, SecurityException {
-        return new FileSystemSyncLock<Path>( path.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( path.getFileSystem(), batchSyncs, syncCoalescer ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.setAttributes( path, attrs );
@@ -515,7 +600,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
     public Path setAttribute( final Path path,
                               final String attribute,
                               final Object value ) throws UnsupportedOperationException, IllegalArgumentException, ClassCastException, IOException, SecurityException {
-        return new FileSystemSyncLock<Path>( path.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( path.getFileSystem(), batchSyncs, syncCoalescer ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.setAttribute( path, attribute, value );
@@ -592,7 +677,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
     public Path write( final Path path,
                        final byte[] bytes,
                        final OpenOption... options ) throws IOException, UnsupportedOperationException, SecurityException {
-        return new FileSystemSyncLock<Path>( path.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( path.getFileSystem(), batchSyncs, syncCoalescer ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.write( path, bytes, options );
@@ -605,7 +690,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
                        final byte[] bytes,
                        final Map<String, ?> attrs,
                        final OpenOption... options ) throws IOException, UnsupportedOperationException, SecurityException {
-        return new FileSystemSyncLock<Path>( path.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( path.getFileSystem(), batchSyncs, syncCoalescer ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.write( path, bytes, attrs, options );
@@ -618,7 +703,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
                        final byte[] bytes,
                        final Set<? extends OpenOption> options,
                        final FileAttribute<?>... attrs ) throws IllegalArgumentException, IOException, UnsupportedOperationException {
-        return new FileSystemSyncLock<Path>( path.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( path.getFileSystem(), batchSyncs, syncCoalescer ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.write( path, bytes, options, attrs );
@@ -631,7 +716,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
                        final Iterable<? extends CharSequence> lines,
                        final Charset cs,
                        final OpenOption... options ) throws IllegalArgumentException, IOException, UnsupportedOperationException, SecurityException {
-        return new FileSystemSyncLock<Path>( path.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( path.getFileSystem(), batchSyncs, syncCoalescer ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.write( path, lines, cs, options );
@@ -643,7 +728,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
     public Path write( final Path path,
                        final String content,
                        final OpenOption... options ) throws IllegalArgumentException, IOException, UnsupportedOperationException {
-        return new FileSystemSyncLock<Path>( path.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( path.getFileSystem(), batchSyncs, syncCoalescer ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.write( path, content, options );
@@ -656,7 +741,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
                        final String content,
                        final Charset cs,
                        final OpenOption... options ) throws IllegalArgumentException, IOException, UnsupportedOperationException {
-        return new FileSystemSyncLock<Path>( path.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( path.getFileSystem(), batchSyncs, syncCoalescer ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.write( path, content, cs, options );
@@ -669,7 +754,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
                        final String content,
                        final Set<? extends OpenOption> options,
                        final FileAttribute<?>... attrs ) throws IllegalArgumentException, IOException, UnsupportedOperationException {
-        return new FileSystemSyncLock<Path>( path.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( path.getFileSystem(), batchSyncs, syncCoalescer ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.write( path, content, options, attrs );
@@ -683,7 +768,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
                        final Charset cs,
                        final Set<? extends OpenOption> options,
                        final FileAttribute<?>... attrs ) throws IllegalArgumentException, IOException, UnsupportedOperationException {
-        return new FileSystemSyncLock<Path>( path.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( path.getFileSystem(), batchSyncs, syncCoalescer ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.write( path, content, cs, options, attrs );
@@ -696,7 +781,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
                        final String content,
                        final Map<String, ?> attrs,
                        final OpenOption... options ) throws IllegalArgumentException, IOException, UnsupportedOperationException {
-        return new FileSystemSyncLock<Path>( path.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( path.getFileSystem(), batchSyncs, syncCoalescer ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.write( path, content, attrs, options );
@@ -710,7 +795,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
                        final Charset cs,
                        final Map<String, ?> attrs,
                        final OpenOption... options ) throws IllegalArgumentException, IOException, UnsupportedOperationException {
-        return new FileSystemSyncLock<Path>( path.getFileSystem() ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
+        return new FileSystemSyncLock<Path>( path.getFileSystem(), batchSyncs, syncCoalescer ).execute( clusterService, new FutureTask<Path>( new Callable<Path>() {
             @Override
             public Path call() throws Exception {
                 return service.write( path, content, cs, attrs, options );
@@ -730,7 +815,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
 
             @Override
             public void close() throws java.io.IOException {
-                new FileSystemSyncLock<Void>( path.getFileSystem() ).execute( clusterService, new FutureTask<Void>( new Callable<Void>() {
+                new FileSystemSyncLock<Void>( path.getFileSystem(), batchSyncs, syncCoalescer ).execute( clusterService, new FutureTask<Void>( new Callable<Void>() {
                     @Override
                     public Void call() throws Exception {
                         out.close();
@@ -749,7 +834,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
         return new SeekableByteChannelWrapperImpl( sbc ) {
             @Override
             public void close() throws java.io.IOException {
-                new FileSystemSyncLock<Void>( path.getFileSystem() ).execute( clusterService, new FutureTask<Void>( new Callable<Void>() {
+                new FileSystemSyncLock<Void>( path.getFileSystem(), batchSyncs, syncCoalescer ).execute( clusterService, new FutureTask<Void>( new Callable<Void>() {
                     @Override
                     public Void call() throws Exception {
                         sbc.close();
@@ -769,7 +854,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
         return new SeekableByteChannelWrapperImpl( sbc ) {
             @Override
             public void close() throws java.io.IOException {
-                new FileSystemSyncLock<Void>( path.getFileSystem() ).execute( clusterService, new FutureTask<Void>( new Callable<Void>() {
+                new FileSystemSyncLock<Void>( path.getFileSystem(), batchSyncs, syncCoalescer ).execute( clusterService, new FutureTask<Void>( new Callable<Void>() {
                     @Override
                     public Void call() throws Exception {
                         sbc.close();
@@ -787,7 +872,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
         return new BufferedWriter( service.newBufferedWriter( path, cs, options ) ) {
             @Override
             public void close() throws java.io.IOException {
-                new FileSystemSyncLock<Void>( path.getFileSystem() ).execute( clusterService, new FutureTask<Void>( new Callable<Void>() {
+                new FileSystemSyncLock<Void>( path.getFileSystem(), batchSyncs, syncCoalescer ).execute( clusterService, new FutureTask<Void>( new Callable<Void>() {
                     @Override
                     public Void call() throws Exception {
                         superClose();
@@ -861,9 +946,7 @@ public class IOServiceClusterImpl implements IOClusteredService {
                 }
 
                 if ( origin != null ) {
-                    final URI fs = URI.create( scheme + "://" + id + "?sync=" + origin + "&force" );
-
-                    service.getFileSystem( fs );
+                    catchUp.submit( scheme, id, origin, FileSystemSyncLock.readRefs( content ) );
                 }
             }
 
@@ -0,0 +1,178 @@
+package org.kie.commons.io.impl.cluster;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.kie.commons.cluster.ClusterService;
+
+import static org.kie.commons.io.impl.cluster.ClusterMessageType.*;
+
+/**
+ * Holds outbound SYNC_FS messages for a short window, so a burst of writes on a file system
+ * reaches the cluster as a single message.
+ * <p/>
+ * A SYNC_FS message carries the commit of every ref of its file system, so a later message
+ * supersedes any pending one of the same file system. Pending messages are published once
+ * the window of the oldest one elapses, or on {@link #flush()}. A window lower or equal to
+ * zero publishes every message right away, as does a disposed coalescer.
+ * <p/>
+ * Writers offer their message after releasing the lock, so a message can be offered after a
+ * newer one of the same file system; messages carrying a {@link FileSystemSyncLock#SEQUENCE}
+ * lower than one already accepted for their file system are dropped.
+ * <p/>
+ * Messages are published one at a time, in the order they were taken from the pending ones:
+ * receivers move refs to the announced commits, so an older message of a file system
+ * published after a newer one would take them back.
+ */
+public class SyncCoalescer {
+
+    public static final long DEFAULT_WINDOW = 50;
+
+    private static final String WINDOW = "org.kie.cluster.sync.window";
+
+    private final ClusterService clusterService;
+    private final long window;
+    private final ScheduledExecutorService scheduler;
+    private final Object publishing = new Object();
+
+    private final Map<String, Map<String, String>> pending = new LinkedHashMap<String, Map<String, String>>();
+    private final Map<String, Long> accepted = new HashMap<String, Long>();
+    private boolean scheduled = false;
+    private boolean disposed = false;
+    private long mergedCount = 0;
+    private long publishedCount = 0;
+
+    public SyncCoalescer( final ClusterService clusterService ) {
+        this( clusterService, windowProperty() );
+    }
+
+    /**
+     * @param window milliseconds a message waits for later ones of its file system
+     */
+    public SyncCoalescer( final ClusterService clusterService,
+                          final long window ) {
+        this.clusterService = clusterService;
+        this.window = window;
+        if ( window > 0 ) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+                @Override
+                public Thread newThread( final Runnable r ) {
+                    final Thread thread = new Thread( r, "kie-cluster-sync-coalescer" );
+                    thread.setDaemon( true );
+                    return thread;
+                }
+            } );
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    public void offer( final Map<String, String> content ) {
+        synchronized ( this ) {
+            if ( isStale( content ) ) {
+                mergedCount++;
+                return;
+            }
+            if ( pending.put( content.get( "fs_id" ), content ) != null ) {
+                mergedCount++;
+            }
+            if ( scheduler != null && !disposed ) {
+                if ( !scheduled ) {
+                    scheduled = true;
+                    scheduler.schedule( new Runnable() {
+                        @Override
+                        public void run() {
+                            flush();
+                        }
+                    }, window, TimeUnit.MILLISECONDS );
+                }
+                return;
+            }
+        }
+        // no window, or disposed: publish along with anything still pending, in order
+        flush();
+    }
+
+    private boolean isStale( final Map<String, String> content ) {
+        final String value = content.get( FileSystemSyncLock.SEQUENCE );
+        if ( value == null ) {
+            return false;
+        }
+        final long sequence = Long.parseLong( value );
+        final Long last = accepted.get( content.get( "fs_id" ) );
+        if ( last != null && sequence <= last ) {
+            return true;
+        }
+        accepted.put( content.get( "fs_id" ), sequence );
+        return false;
+    }
+
+    /**
+     * Publishes every pending message now.
+     */
+    public void flush() {
+        synchronized ( publishing ) {
+            final List<Map<String, String>> contents;
+            synchronized ( this ) {
+                contents = new ArrayList<Map<String, String>>( pending.values() );
+                pending.clear();
+                scheduled = false;
+            }
+            for ( final Map<String, String> content : contents ) {
+                publish( content );
+            }
+        }
+    }
+
+    private void publish( final Map<String, String> content ) {
+        synchronized ( this ) {
+            publishedCount++;
+        }
+        clusterService.broadcast( SYNC_FS, content );
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * @return messages superseded by a later one of the same file system before being published,
+     * or dropped for being older than one already accepted
+     */
+    public synchronized long getMergedCount() {
+        return mergedCount;
+    }
+
+    public synchronized long getPublishedCount() {
+        return publishedCount;
+    }
+
+    public void dispose() {
+        synchronized ( this ) {
+            disposed = true;
+        }
+        flush();
+        if ( scheduler != null ) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private static long windowProperty() {
+        final String value = System.getProperty( WINDOW );
+        if ( value == null || value.trim().isEmpty() ) {
+            return DEFAULT_WINDOW;
+        }
+        try {
+            return Long.parseLong( value.trim() );
+        } catch ( final NumberFormatException e ) {
+            return DEFAULT_WINDOW;
+        }
+    }
+}
@@ -1,8 +1,17 @@
 package org.kie.commons.io.impl.cluster.helix;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.helix.Criteria;
 import org.apache.helix.HelixManager;
@@ -11,6 +20,7 @@ import org.apache.helix.NotificationContext;
 import org.apache.helix.messaging.handling.HelixTaskResult;
 import org.apache.helix.messaging.handling.MessageHandler;
 import org.apache.helix.messaging.handling.MessageHandlerFactory;
+import org.apache.helix.model.IdealState;
 import org.apache.helix.model.Message;
 import org.kie.commons.cluster.ClusterService;
 import org.kie.commons.data.Pair;
@@ -19,20 +29,34 @@ import org.kie.commons.message.AsyncCallback;
 import org.kie.commons.message.MessageHandlerResolver;
 import org.kie.commons.message.MessageType;
 
-import static java.util.Arrays.*;
 import static java.util.UUID.*;
+import static org.kie.commons.io.impl.cluster.helix.LockTransitionalFactory.*;
 import static org.apache.helix.HelixManagerFactory.*;
 
+/**
+ * Locks are partitions of the LeaderStandby resource: a node holds a lock while it leads the
+ * partition. Scoped locks are striped over the partitions of the resource by scope, so file
+ * systems falling on different partitions are written concurrently across the cluster; the
+ * unscoped lock takes every partition, in order. With a single partition everything shares
+ * one lock, as before. Locks are held per node, not per thread.
+ * <p/>
+ * Waiting threads are woken by the state transitions of the partition, so the acquire
+ * latency reported by {@link #getMeanAcquireLatency()} is the one of the coordination.
+ */
 public class ClusterServiceHelix implements ClusterService {
 
     private final String clusterName;
     private final String instanceName;
     private final HelixManager participantManager;
-    private final SimpleLock lock = new SimpleLock();
+    private final ConcurrentMap<String, SimpleLock> locks = new ConcurrentHashMap<String, SimpleLock>();
     private final String resourceName;
-    private int stackSize = 0;
+    private volatile List<String> partitions;
     private final MessageHandlerResolver messageHandlerResolver;
     private AtomicBoolean started = new AtomicBoolean(false);
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong failedAcquireCount = new AtomicLong();
+    private final AtomicLong acquireNanos = new AtomicLong();
+    private final AtomicLong maxAcquireNanos = new AtomicLong();
 
     public ClusterServiceHelix( final String clusterName,
                                 final String zkAddress,
@@ -45,6 +69,7 @@ public class ClusterServiceHelix implements ClusterService {
         this.messageHandlerResolver = messageHandlerResolver;
 
         this.participantManager = getZKHelixManager( clusterName, instanceName, InstanceType.PARTICIPANT, zkAddress );
+        this.partitions = buildPartitions( 1 );
     }
     @Override
     public void start() {
@@ -53,8 +78,9 @@ public class ClusterServiceHelix implements ClusterService {
         }
         try {
             this.participantManager.connect();
-            disablePartition();
-            this.participantManager.getStateMachineEngine().registerStateModelFactory( "LeaderStandby", new LockTransitionalFactory( lock ) );
+            this.partitions = buildPartitions( numPartitions() );
+            participantManager.getClusterManagmentTool().enablePartition( false, clusterName, instanceName, resourceName, partitions );
+            this.participantManager.getStateMachineEngine().registerStateModelFactory( "LeaderStandby", new LockTransitionalFactory( locks ) );
             this.participantManager.getMessagingService().registerMessageHandlerFactory( Message.MessageType.USER_DEFINE_MSG.toString(), new MessageHandlerResolverWrapper( messageHandlerResolver ).convert() );
             started.set(true);
         } catch ( final Exception ex ) {
@@ -73,18 +99,168 @@ public class ClusterServiceHelix implements ClusterService {
         }
     }
 
-    private void enablePartition() {
+    private int numPartitions() {
+        final IdealState idealState = participantManager.getClusterManagmentTool().getResourceIdealState( clusterName, resourceName );
+        if ( idealState == null || idealState.getNumPartitions() < 1 ) {
+            return 1;
+        }
+        return idealState.getNumPartitions();
+    }
+
+    private List<String> buildPartitions( final int size ) {
+        final List<String> result = new ArrayList<String>( size );
+        for ( int i = 0; i < size; i++ ) {
+            result.add( resourceName + "_" + i );
+        }
+        return result;
+    }
+
+    private String partitionOf( final String scope ) {
+        final List<String> _partitions = partitions;
+        return _partitions.get( indexOf( scope, _partitions.size() ) );
+    }
+
+    private static int indexOf( final String scope,
+                                final int size ) {
+        return ( scope.hashCode() & Integer.MAX_VALUE ) % size;
+    }
+
+    /**
+     * @return partitions of the scopes without duplicates, in ascending index: the order the
+     * unscoped lock takes them too
+     */
+    static List<String> partitionsOf( final List<String> partitions,
+                                      final String... scopes ) {
+        final Set<Integer> indexes = new TreeSet<Integer>();
+        for ( final String scope : scopes ) {
+            indexes.add( indexOf( scope, partitions.size() ) );
+        }
+        final List<String> result = new ArrayList<String>( indexes.size() );
+        for ( final Integer index : indexes ) {
+            result.add( partitions.get( index ) );
+        }
+        return result;
+    }
+
+    private void enablePartition( final String partition ) {
         if (!isStarted()) {
             return;
         }
-        participantManager.getClusterManagmentTool().enablePartition( true, clusterName, instanceName, resourceName, asList( resourceName + "_0" ) );
+        participantManager.getClusterManagmentTool().enablePartition( true, clusterName, instanceName, resourceName, Collections.singletonList( partition ) );
     }
 
-    private void disablePartition() {
+    private void disablePartition( final String partition ) {
         if (!isStarted()) {
             return;
         }
-        participantManager.getClusterManagmentTool().enablePartition( false, clusterName, instanceName, resourceName, asList( resourceName + "_0" ) );
+        participantManager.getClusterManagmentTool().enablePartition( false, clusterName, instanceName, resourceName, Collections.singletonList( partition ) );
+    }
+
+    private void acquire( final String partition ) {
+        final SimpleLock lock = lockFor( locks, partition );
+        synchronized ( lock ) {
+            lock.holds++;
+            if ( lock.isLocked() ) {
+                return;
+            }
+            final long start = System.nanoTime();
+            enablePartition( partition );
+            lock.awaitUninterruptibly( true );
+            recordAcquire( System.nanoTime() - start );
+        }
+    }
+
+    private boolean tryAcquire( final String partition,
+                                final long deadline ) throws InterruptedException {
+        final SimpleLock lock = lockFor( locks, partition );
+        synchronized ( lock ) {
+            if ( !lock.isLocked() ) {
+                final long start = System.nanoTime();
+                enablePartition( partition );
+                final boolean acquired;
+                try {
+                    acquired = lock.await( true, deadline - start, TimeUnit.NANOSECONDS );
+                } catch ( final InterruptedException e ) {
+                    abandon( lock, partition );
+                    throw e;
+                }
+                if ( !acquired ) {
+                    abandon( lock, partition );
+                    failedAcquireCount.incrementAndGet();
+                    return false;
+                }
+                recordAcquire( System.nanoTime() - start );
+            }
+            lock.holds++;
+            return true;
+        }
+    }
+
+    /**
+     * Gives up a partition enabled by a timed acquisition; a LEADER transition already in
+     * flight is waited out, so it can't leave the partition locked with no holder.
+     */
+    private void abandon( final SimpleLock lock,
+                          final String partition ) {
+        disablePartition( partition );
+        lock.awaitUninterruptibly( false );
+    }
+
+    private void release( final String partition ) {
+        final SimpleLock lock = lockFor( locks, partition );
+        synchronized ( lock ) {
+            lock.holds--;
+            if ( !lock.isLocked() ) {
+                lock.holds = 0;
+                return;
+            }
+
+            if ( lock.holds == 0 ) {
+                disablePartition( partition );
+                lock.awaitUninterruptibly( false );
+            }
+        }
+    }
+
+    private void recordAcquire( final long nanos ) {
+        acquireCount.incrementAndGet();
+        acquireNanos.addAndGet( nanos );
+        long max = maxAcquireNanos.get();
+        while ( nanos > max && !maxAcquireNanos.compareAndSet( max, nanos ) ) {
+            max = maxAcquireNanos.get();
+        }
+    }
+
+    /**
+     * @return partitions this node took leadership of, reentrant acquisitions excluded
+     */
+    public long getAcquireCount() {
+        return acquireCount.get();
+    }
+
+    /**
+     * @return timed acquisitions that gave up before this node became leader of the partition
+     */
+    public long getFailedAcquireCount() {
+        return failedAcquireCount.get();
+    }
+
+    /**
+     * @return mean time between enabling a partition and becoming its leader, in milliseconds
+     */
+    public double getMeanAcquireLatency() {
+        final long count = acquireCount.get();
+        if ( count == 0 ) {
+            return 0;
+        }
+        return acquireNanos.get() / (double) count / 1000000;
+    }
+
+    /**
+     * @return longest time between enabling a partition and becoming its leader, in milliseconds
+     */
+    public double getMaxAcquireLatency() {
+        return maxAcquireNanos.get() / 1000000d;
     }
 
     @Override
@@ -92,18 +268,29 @@ public class ClusterServiceHelix implements ClusterService {
         if (!isStarted()) {
             return;
         }
-        stackSize++;
-        if ( lock.isLocked() ) {
-            return;
+        for ( final String partition : partitions ) {
+            acquire( partition );
         }
-        enablePartition();
+    }
 
-        while ( !lock.isLocked() ) {
-            try {
-                Thread.sleep( 10 );
-            } catch ( InterruptedException e ) {
+    @Override
+    public boolean tryLock( final long timeout,
+                            final TimeUnit unit ) throws InterruptedException {
+        if (!isStarted()) {
+            return true;
+        }
+        final long deadline = System.nanoTime() + unit.toNanos( timeout );
+        final List<String> acquired = new ArrayList<String>();
+        for ( final String partition : partitions ) {
+            if ( !tryAcquire( partition, deadline ) ) {
+                for ( int i = acquired.size() - 1; i >= 0; i-- ) {
+                    release( acquired.get( i ) );
+                }
+                return false;
             }
+            acquired.add( partition );
         }
+        return true;
     }
 
     @Override
@@ -111,30 +298,78 @@ public class ClusterServiceHelix implements ClusterService {
         if (!isStarted()) {
             return;
         }
-        stackSize--;
-        if ( !lock.isLocked() ) {
-            stackSize = 0;
+        final List<String> _partitions = partitions;
+        for ( int i = _partitions.size() - 1; i >= 0; i-- ) {
+            release( _partitions.get( i ) );
+        }
+    }
+
+    @Override
+    public boolean isLocked() {
+        if (!isStarted()) {
+            return true;
+        }
+        for ( final String partition : partitions ) {
+            if ( !lockFor( locks, partition ).isLocked() ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void lock( final String scope ) {
+        if (!isStarted()) {
             return;
         }
+        acquire( partitionOf( scope ) );
+    }
 
-        if ( stackSize == 0 ) {
-            disablePartition();
+    @Override
+    public void lock( final String... scopes ) {
+        if (!isStarted()) {
+            return;
+        }
+        for ( final String partition : partitionsOf( partitions, scopes ) ) {
+            acquire( partition );
+        }
+    }
 
-            while ( lock.isLocked() ) {
-                try {
-                    Thread.sleep( 10 );
-                } catch ( InterruptedException e ) {
-                }
-            }
+    @Override
+    public void unlock( final String... scopes ) {
+        if (!isStarted()) {
+            return;
+        }
+        final List<String> _partitions = partitionsOf( partitions, scopes );
+        for ( int i = _partitions.size() - 1; i >= 0; i-- ) {
+            release( _partitions.get( i ) );
         }
     }
 
     @Override
-    public boolean isLocked() {
+    public boolean tryLock( final String scope,
+                            final long timeout,
+                            final TimeUnit unit ) throws InterruptedException {
+        if (!isStarted()) {
+            return true;
+        }
+        return tryAcquire( partitionOf( scope ), System.nanoTime() + unit.toNanos( timeout ) );
+    }
+
+    @Override
+    public void unlock( final String scope ) {
+        if (!isStarted()) {
+            return;
+        }
+        release( partitionOf( scope ) );
+    }
+
+    @Override
+    public boolean isLocked( final String scope ) {
         if (!isStarted()) {
             return true;
         }
-        return lock.isLocked();
+        return lockFor( locks, partitionOf( scope ) ).isLocked();
     }
 
     @Override
@@ -1,17 +1,32 @@
 package org.kie.commons.io.impl.cluster.helix;
 
+import java.util.concurrent.ConcurrentMap;
+
 import org.apache.helix.participant.statemachine.StateModelFactory;
 
 public class LockTransitionalFactory extends StateModelFactory<LockTransitionModel> {
 
-    private final SimpleLock lock;
+    private final ConcurrentMap<String, SimpleLock> locks;
 
-    LockTransitionalFactory( final SimpleLock lock ) {
-        this.lock = lock;
+    LockTransitionalFactory( final ConcurrentMap<String, SimpleLock> locks ) {
+        this.locks = locks;
     }
 
     @Override
     public LockTransitionModel createNewStateModel( final String lockName ) {
-        return new LockTransitionModel( lockName, lock );
+        return new LockTransitionModel( lockName, lockFor( locks, lockName ) );
+    }
+
+    static SimpleLock lockFor( final ConcurrentMap<String, SimpleLock> locks,
+                               final String lockName ) {
+        SimpleLock lock = locks.get( lockName );
+        if ( lock == null ) {
+            final SimpleLock newLock = new SimpleLock();
+            lock = locks.putIfAbsent( lockName, newLock );
+            if ( lock == null ) {
+                lock = newLock;
+            }
+        }
+        return lock;
     }
 }
@@ -1,11 +1,25 @@
 package org.kie.commons.io.impl.cluster.helix;
 
+import java.util.concurrent.TimeUnit;
+
+/**
+ * State of a lock partition on this node, as last reported by the Helix state transitions.
+ * Threads that toggled the partition wait here until the matching transition arrives.
+ * <p/>
+ * The object monitor serializes local threads acquiring or releasing the partition; the
+ * transitions only take the internal one, so they are delivered while a thread waits.
+ */
 class SimpleLock {
 
-    private boolean isLocked;
+    private final Object transitions = new Object();
+    private volatile boolean isLocked;
+    int holds = 0;
 
     public void lock() {
-        this.isLocked = true;
+        synchronized ( transitions ) {
+            this.isLocked = true;
+            transitions.notifyAll();
+        }
     }
 
     public boolean isLocked() {
@@ -13,7 +27,49 @@ class SimpleLock {
     }
 
     public void unlock() {
-        isLocked = false;
+        synchronized ( transitions ) {
+            isLocked = false;
+            transitions.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until the partition reaches the state, ignoring interrupts until it does; the
+     * interrupt status is restored before returning.
+     */
+    void awaitUninterruptibly( final boolean locked ) {
+        boolean interrupted = false;
+        synchronized ( transitions ) {
+            while ( isLocked != locked ) {
+                try {
+                    transitions.wait();
+                } catch ( final InterruptedException e ) {
+                    interrupted = true;
+                }
+            }
+        }
+        if ( interrupted ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the partition reached the state before the timeout elapsed
+     */
+    boolean await( final boolean locked,
+                   final long timeout,
+                   final TimeUnit unit ) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos( timeout );
+        synchronized ( transitions ) {
+            while ( isLocked != locked ) {
+                final long remaining = deadline - System.nanoTime();
+                if ( remaining <= 0 ) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait( transitions, remaining );
+            }
+            return true;
+        }
     }
 
 }
@@ -0,0 +1,114 @@
+package org.kie.commons.io.impl.lock;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.kie.commons.java.nio.base.FileSystemId;
+import org.kie.commons.java.nio.file.FileSystem;
+import org.kie.commons.java.nio.file.Path;
+
+import static org.kie.commons.validation.Preconditions.*;
+
+/**
+ * Striped read/write locks keyed by file system and path.
+ * <p/>
+ * A dot file (<code>.name</code>) maps to the same key as its content file (<code>name</code>),
+ * so one lock covers both. Locks are reentrant; when several paths are locked at once their
+ * stripes are taken in index order, so concurrent multi-path callers can't deadlock.
+ */
+public class PathLocks {
+
+    public static final int DEFAULT_STRIPES = 256;
+
+    private final ReentrantReadWriteLock[] stripes;
+
+    public PathLocks() {
+        this( DEFAULT_STRIPES );
+    }
+
+    public PathLocks( final int stripes ) {
+        checkCondition( "stripes must be positive", stripes > 0 );
+        this.stripes = new ReentrantReadWriteLock[ stripes ];
+        for ( int i = 0; i < stripes; i++ ) {
+            this.stripes[ i ] = new ReentrantReadWriteLock();
+        }
+    }
+
+    public void lockRead( final Path path ) {
+        stripes[ stripe( path ) ].readLock().lock();
+    }
+
+    public void unlockRead( final Path path ) {
+        stripes[ stripe( path ) ].readLock().unlock();
+    }
+
+    public void lockWrite( final Path... paths ) {
+        for ( final int stripe : stripes( paths ) ) {
+            stripes[ stripe ].writeLock().lock();
+        }
+    }
+
+    public void unlockWrite( final Path... paths ) {
+        final int[] ordered = stripes( paths );
+        for ( int i = ordered.length - 1; i >= 0; i-- ) {
+            stripes[ ordered[ i ] ].writeLock().unlock();
+        }
+    }
+
+    private int[] stripes( final Path... paths ) {
+        final int[] result = new int[ paths.length ];
+        int size = 0;
+        for ( final Path path : paths ) {
+            final int stripe = stripe( path );
+            boolean found = false;
+            for ( int i = 0; i < size; i++ ) {
+                if ( result[ i ] == stripe ) {
+                    found = true;
+                    break;
+                }
+            }
+            if ( !found ) {
+                result[ size++ ] = stripe;
+            }
+        }
+        final int[] distinct = Arrays.copyOf( result, size );
+        Arrays.sort( distinct );
+        return distinct;
+    }
+
+    int stripe( final Path path ) {
+        checkNotNull( "path", path );
+        int hash = key( path ).hashCode();
+        hash ^= ( hash >>> 20 ) ^ ( hash >>> 12 );
+        hash ^= ( hash >>> 7 ) ^ ( hash >>> 4 );
+        return ( hash & 0x7fffffff ) % stripes.length;
+    }
+
+    private static String key( final Path path ) {
+        final Path content = contentPath( path );
+        return fileSystemKey( content.getFileSystem() ) + '|' + content.toUri().toString();
+    }
+
+    private static Path contentPath( final Path path ) {
+        final Path fileName = path.getFileName();
+        if ( fileName == null ) {
+            return path;
+        }
+        final String name = fileName.toString();
+        if ( name.length() < 2 || name.charAt( 0 ) != '.' ) {
+            return path;
+        }
+        final Path parent = path.getParent();
+        if ( name.equals( ".root" ) && ( parent == null || parent.getFileName() == null ) ) {
+            return parent == null ? path : parent;
+        }
+        return path.resolveSibling( name.substring( 1 ) );
+    }
+
+    private static String fileSystemKey( final FileSystem fs ) {
+        if ( fs instanceof FileSystemId ) {
+            return ( (FileSystemId) fs ).id();
+        }
+        return String.valueOf( fs );
+    }
+}
@@ -1,52 +1,130 @@
 package org.kie.commons.io.impl.lock;
 
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
-import org.kie.commons.lock.LockService;
+import org.kie.commons.lock.ScopedLockService;
 
-public class ThreadLockServiceImpl implements LockService {
+import static org.kie.commons.validation.Preconditions.*;
 
-    protected final AtomicReference<Thread> holder = new AtomicReference<Thread>();
-    protected final AtomicInteger stackSize = new AtomicInteger();
-    private final int sleep;
+/**
+ * In-JVM {@link ScopedLockService}: waiting threads are parked, not polled.
+ * <p/>
+ * A scoped lock holds the shared side of a global read/write lock plus the lock of its scope;
+ * the unscoped lock holds the exclusive side. Taking the unscoped lock while holding only
+ * scoped ones would deadlock, so it fails with {@link IllegalMonitorStateException}.
+ */
+public class ThreadLockServiceImpl implements ScopedLockService {
+
+    private final boolean fair;
+    private final ReentrantReadWriteLock global;
+    private final ConcurrentMap<String, ReentrantLock> scopes = new ConcurrentHashMap<String, ReentrantLock>();
 
     public ThreadLockServiceImpl() {
-        this( 50 );
+        this( false );
+    }
+
+    public ThreadLockServiceImpl( final boolean fair ) {
+        this.fair = fair;
+        this.global = new ReentrantReadWriteLock( fair );
     }
 
-    public ThreadLockServiceImpl( int sleep ) {
-        this.sleep = sleep;
+    /**
+     * @deprecated waiters are no longer polled, the sleep interval is ignored.
+     */
+    @Deprecated
+    public ThreadLockServiceImpl( final int sleep ) {
+        this( false );
     }
 
     @Override
     public void lock() {
-        while ( holder.get() != null ) {
-            if ( holder.get().equals( Thread.currentThread() ) ) {
-                stackSize.incrementAndGet();
-                return;
-            }
-            try {
-                Thread.sleep( sleep );
-            } catch ( final InterruptedException ignored ) {
+        checkNoScopeHeld();
+        global.writeLock().lock();
+    }
+
+    @Override
+    public boolean tryLock( final long timeout,
+                            final TimeUnit unit ) throws InterruptedException {
+        checkNoScopeHeld();
+        return global.writeLock().tryLock( timeout, unit );
+    }
+
+    @Override
+    public void unlock() {
+        global.writeLock().unlock();
+    }
+
+    @Override
+    public boolean isLocked() {
+        return global.isWriteLockedByCurrentThread();
+    }
+
+    @Override
+    public void lock( final String scope ) {
+        final ReentrantLock scopeLock = scopeLock( scope );
+        global.readLock().lock();
+        scopeLock.lock();
+    }
+
+    @Override
+    public boolean tryLock( final String scope,
+                            final long timeout,
+                            final TimeUnit unit ) throws InterruptedException {
+        final ReentrantLock scopeLock = scopeLock( scope );
+        final long deadline = System.nanoTime() + unit.toNanos( timeout );
+        if ( !global.readLock().tryLock( timeout, unit ) ) {
+            return false;
+        }
+        boolean acquired = false;
+        try {
+            acquired = scopeLock.tryLock( deadline - System.nanoTime(), TimeUnit.NANOSECONDS );
+            return acquired;
+        } finally {
+            if ( !acquired ) {
+                global.readLock().unlock();
             }
         }
-        holder.set( Thread.currentThread() );
-        stackSize.set( 1 );
     }
 
     @Override
-    public void unlock() {
-        int size = stackSize.decrementAndGet();
-        if ( size == 0 ) {
-            holder.set( null );
-        } else if ( size < 0 ) {
+    public void unlock( final String scope ) {
+        final ReentrantLock scopeLock = scopes.get( checkNotEmpty( "scope", scope ) );
+        if ( scopeLock == null ) {
             throw new IllegalMonitorStateException();
         }
+        scopeLock.unlock();
+        global.readLock().unlock();
     }
 
     @Override
-    public boolean isLocked() {
-        return holder.get() != null && holder.get().equals( Thread.currentThread() );
+    public boolean isLocked( final String scope ) {
+        if ( isLocked() ) {
+            return true;
+        }
+        final ReentrantLock scopeLock = scopes.get( checkNotEmpty( "scope", scope ) );
+        return scopeLock != null && scopeLock.isHeldByCurrentThread();
+    }
+
+    private ReentrantLock scopeLock( final String scope ) {
+        checkNotEmpty( "scope", scope );
+        ReentrantLock result = scopes.get( scope );
+        if ( result == null ) {
+            final ReentrantLock newLock = new ReentrantLock( fair );
+            result = scopes.putIfAbsent( scope, newLock );
+            if ( result == null ) {
+                result = newLock;
+            }
+        }
+        return result;
+    }
+
+    private void checkNoScopeHeld() {
+        if ( global.getReadHoldCount() > 0 && !global.isWriteLockedByCurrentThread() ) {
+            throw new IllegalMonitorStateException( "Can't take the global lock while holding a scoped lock." );
+        }
     }
 }
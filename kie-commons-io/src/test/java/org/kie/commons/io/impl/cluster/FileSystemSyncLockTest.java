@@ -0,0 +1,250 @@
+package org.kie.commons.io.impl.cluster;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.kie.commons.cluster.ClusterService;
+import org.kie.commons.cluster.ClusterServiceFactory;
+import org.kie.commons.io.CommonIOServiceDotFileTest;
+import org.kie.commons.io.IOService;
+import org.kie.commons.io.impl.IOServiceDotFileImpl;
+import org.kie.commons.java.nio.base.RevisionedFileSystem;
+import org.kie.commons.java.nio.file.FileSystem;
+import org.kie.commons.java.nio.file.Path;
+import org.kie.commons.message.AsyncCallback;
+import org.kie.commons.message.MessageHandlerResolver;
+import org.kie.commons.message.MessageType;
+
+import static org.junit.Assert.*;
+
+public class FileSystemSyncLockTest {
+
+    private static IOService ioService;
+    private static FileSystem fileSystem;
+
+    @BeforeClass
+    public static void setup() throws IOException {
+        System.setProperty( "org.kie.nio.git.dir", CommonIOServiceDotFileTest.createTempDirectory().getAbsolutePath() );
+        ioService = new IOServiceDotFileImpl();
+        fileSystem = ioService.newFileSystem( URI.create( "git://sync-lock-test" ), new HashMap<String, Object>() );
+    }
+
+    @Test
+    public void testNotifyAfterRelease() {
+        final Path file = ioService.get( URI.create( "git://sync-lock-test/file.txt" ) );
+        final RecordingClusterService clusterService = new RecordingClusterService();
+
+        new FileSystemSyncLock<Void>( fileSystem ).execute( clusterService, new FutureTask<Void>( new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                ioService.write( file, "content" );
+                return null;
+            }
+        } ) );
+
+        assertEquals( 3, clusterService.calls.size() );
+        assertEquals( "lock:sync-lock-test", clusterService.calls.get( 0 ) );
+        assertEquals( "unlock:sync-lock-test", clusterService.calls.get( 1 ) );
+        assertEquals( "broadcast:SYNC_FS", clusterService.calls.get( 2 ) );
+
+        final Map<String, String> refs = FileSystemSyncLock.readRefs( clusterService.contents.get( 0 ) );
+        final Path root = ioService.get( URI.create( "git://sync-lock-test/" ) ).getRoot();
+        assertEquals( ( (RevisionedFileSystem) fileSystem ).getRevision( root ), refs.get( "master" ) );
+    }
+
+    @Test
+    public void testDeferredInBatch() {
+        final Path file = ioService.get( URI.create( "git://sync-lock-test/batch.txt" ) );
+        final RecordingClusterService clusterService = new RecordingClusterService();
+        final BatchSyncs batchSyncs = new BatchSyncs();
+        batchSyncs.start();
+
+        new FileSystemSyncLock<Void>( fileSystem, batchSyncs ).execute( clusterService, new FutureTask<Void>( new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                ioService.write( file, "content" );
+                return null;
+            }
+        } ) );
+
+        assertEquals( 2, clusterService.calls.size() );
+        assertEquals( 1, batchSyncs.stop().size() );
+    }
+
+    @Test
+    public void testBatchOnlyDefersItsFileSystem() {
+        final FileSystem other = ioService.newFileSystem( URI.create( "git://sync-lock-test-batch" ), new HashMap<String, Object>() );
+        final BatchSyncs batchSyncs = new BatchSyncs();
+
+        batchSyncs.start( fileSystem );
+        batchSyncs.start( other );
+        batchSyncs.start( fileSystem );
+        assertTrue( batchSyncs.defer( fileSystem ) );
+
+        // ending the batch of the other file system leaves this one deferred
+        assertTrue( batchSyncs.stop( other ).isEmpty() );
+        assertFalse( batchSyncs.defer( other ) );
+        assertTrue( batchSyncs.defer( fileSystem ) );
+
+        assertTrue( batchSyncs.stop( fileSystem ).isEmpty() );
+        assertEquals( 1, batchSyncs.stop( fileSystem ).size() );
+        assertFalse( batchSyncs.defer( fileSystem ) );
+    }
+
+    @Test
+    public void testMoveLocksBothScopesAtOnce() {
+        ioService.newFileSystem( URI.create( "git://sync-lock-test-other" ), new HashMap<String, Object>() );
+        final Path source = ioService.get( URI.create( "git://sync-lock-test/move.txt" ) );
+        final Path target = ioService.get( URI.create( "git://sync-lock-test-other/move.txt" ) );
+        ioService.write( source, "content" );
+
+        final RecordingClusterService clusterService = new RecordingClusterService();
+        final IOServiceClusterImpl clusteredService = new IOServiceClusterImpl( ioService, new ClusterServiceFactory() {
+            @Override
+            public ClusterService build( final MessageHandlerResolver resolver ) {
+                return clusterService;
+            }
+        }, false );
+
+        try {
+            clusteredService.move( target, source );
+        } catch ( final RuntimeException ignored ) {
+            // only the lock order matters here
+        }
+
+        assertEquals( "lock:[sync-lock-test-other, sync-lock-test]", clusterService.calls.get( 0 ) );
+        assertEquals( "lock:sync-lock-test-other", clusterService.calls.get( 1 ) );
+        assertEquals( "lock:sync-lock-test", clusterService.calls.get( 2 ) );
+        assertTrue( clusterService.calls.contains( "unlock:[sync-lock-test-other, sync-lock-test]" ) );
+        assertEquals( 1, countPrefix( clusterService.calls, "lock:[" ) );
+    }
+
+    private static int countPrefix( final List<String> calls,
+                                    final String prefix ) {
+        int count = 0;
+        synchronized ( calls ) {
+            for ( final String call : calls ) {
+                if ( call.startsWith( prefix ) ) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    static class RecordingClusterService implements ClusterService {
+
+        final List<String> calls = Collections.synchronizedList( new ArrayList<String>() );
+        final List<Map<String, String>> contents = Collections.synchronizedList( new ArrayList<Map<String, String>>() );
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void dispose() {
+        }
+
+        @Override
+        public boolean tryLock( final long timeout,
+                                final TimeUnit unit ) {
+            calls.add( "lock" );
+            return true;
+        }
+
+        @Override
+        public void lock( final String scope ) {
+            calls.add( "lock:" + scope );
+        }
+
+        @Override
+        public boolean tryLock( final String scope,
+                                final long timeout,
+                                final TimeUnit unit ) {
+            calls.add( "lock:" + scope );
+            return true;
+        }
+
+        @Override
+        public void lock( final String... scopes ) {
+            calls.add( "lock:" + Arrays.asList( scopes ) );
+        }
+
+        @Override
+        public void unlock( final String... scopes ) {
+            calls.add( "unlock:" + Arrays.asList( scopes ) );
+        }
+
+        @Override
+        public void unlock( final String scope ) {
+            calls.add( "unlock:" + scope );
+        }
+
+        @Override
+        public boolean isLocked( final String scope ) {
+            return false;
+        }
+
+        @Override
+        public void lock() {
+            calls.add( "lock" );
+        }
+
+        @Override
+        public void unlock() {
+            calls.add( "unlock" );
+        }
+
+        @Override
+        public boolean isLocked() {
+            return false;
+        }
+
+        @Override
+        public void broadcastAndWait( final MessageType type,
+                                      final Map<String, String> content,
+                                      final int timeOut ) {
+            broadcast( type, content );
+        }
+
+        @Override
+        public void broadcastAndWait( final MessageType type,
+                                      final Map<String, String> content,
+                                      final int timeOut,
+                                      final AsyncCallback callback ) {
+            broadcast( type, content );
+        }
+
+        @Override
+        public void broadcast( final MessageType type,
+                               final Map<String, String> content ) {
+            calls.add( "broadcast:" + type );
+            contents.add( content );
+        }
+
+        @Override
+        public void broadcast( final MessageType type,
+                               final Map<String, String> content,
+                               final int timeOut,
+                               final AsyncCallback callback ) {
+            broadcast( type, content );
+        }
+
+        @Override
+        public void sendTo( final String resourceId,
+                            final MessageType type,
+                            final Map<String, String> content ) {
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package org.kie.commons.io.impl.cluster;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.kie.commons.io.impl.cluster.FileSystemSyncLockTest.RecordingClusterService;
+import org.kie.commons.message.MessageType;
+
+import static org.junit.Assert.*;
+
+public class SyncCoalescerTest {
+
+    @Test
+    public void testMergePerFileSystem() {
+        final RecordingClusterService clusterService = new RecordingClusterService();
+        final SyncCoalescer coalescer = new SyncCoalescer( clusterService, 60000 );
+        try {
+            coalescer.offer( content( "repo1", "c1" ) );
+            coalescer.offer( content( "repo2", "c1" ) );
+            coalescer.offer( content( "repo1", "c2" ) );
+            coalescer.offer( content( "repo1", "c3" ) );
+
+            assertEquals( 0, clusterService.calls.size() );
+            assertEquals( 2, coalescer.getPendingCount() );
+            assertEquals( 2, coalescer.getMergedCount() );
+
+            coalescer.flush();
+
+            assertEquals( 2, clusterService.calls.size() );
+            assertEquals( "broadcast:SYNC_FS", clusterService.calls.get( 0 ) );
+            assertEquals( "repo1", clusterService.contents.get( 0 ).get( "fs_id" ) );
+            assertEquals( "c3", FileSystemSyncLock.readRefs( clusterService.contents.get( 0 ) ).get( "master" ) );
+            assertEquals( "repo2", clusterService.contents.get( 1 ).get( "fs_id" ) );
+            assertEquals( 0, coalescer.getPendingCount() );
+            assertEquals( 2, coalescer.getPublishedCount() );
+        } finally {
+            coalescer.dispose();
+        }
+    }
+
+    @Test
+    public void testFlushAfterWindow() throws InterruptedException {
+        final RecordingClusterService clusterService = new RecordingClusterService();
+        final SyncCoalescer coalescer = new SyncCoalescer( clusterService, 20 );
+        try {
+            coalescer.offer( content( "repo1", "c1" ) );
+            coalescer.offer( content( "repo1", "c2" ) );
+
+            final long timeout = System.currentTimeMillis() + 5000;
+            while ( clusterService.calls.isEmpty() && System.currentTimeMillis() < timeout ) {
+                Thread.sleep( 10 );
+            }
+            assertEquals( 1, clusterService.calls.size() );
+            assertEquals( "c2", FileSystemSyncLock.readRefs( clusterService.contents.get( 0 ) ).get( "master" ) );
+        } finally {
+            coalescer.dispose();
+        }
+    }
+
+    @Test
+    public void testNoWindow() {
+        final RecordingClusterService clusterService = new RecordingClusterService();
+        final SyncCoalescer coalescer = new SyncCoalescer( clusterService, 0 );
+
+        coalescer.offer( content( "repo1", "c1" ) );
+        coalescer.offer( content( "repo1", "c2" ) );
+
+        assertEquals( 2, clusterService.calls.size() );
+        assertEquals( 0, coalescer.getMergedCount() );
+
+        coalescer.dispose();
+    }
+
+    @Test
+    public void testConcurrentFlushesKeepOrder() throws InterruptedException {
+        final CountDownLatch publishing = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        final RecordingClusterService clusterService = new RecordingClusterService() {
+            @Override
+            public void broadcast( final MessageType type,
+                                   final Map<String, String> content ) {
+                super.broadcast( type, content );
+                if ( publishing.getCount() > 0 ) {
+                    publishing.countDown();
+                    try {
+                        release.await( 10, TimeUnit.SECONDS );
+                    } catch ( final InterruptedException e ) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        };
+        final SyncCoalescer coalescer = new SyncCoalescer( clusterService, 60000 );
+        try {
+            coalescer.offer( content( "repo1", "c1" ) );
+            final Thread timer = flushInBackground( coalescer );
+            assertTrue( publishing.await( 10, TimeUnit.SECONDS ) );
+
+            // c1 is on its way out, c2 must not overtake it
+            coalescer.offer( content( "repo1", "c2" ) );
+            final Thread endBatch = flushInBackground( coalescer );
+            endBatch.join( 100 );
+
+            release.countDown();
+            timer.join( 10000 );
+            endBatch.join( 10000 );
+
+            assertEquals( 2, clusterService.contents.size() );
+            assertEquals( "c1", FileSystemSyncLock.readRefs( clusterService.contents.get( 0 ) ).get( "master" ) );
+            assertEquals( "c2", FileSystemSyncLock.readRefs( clusterService.contents.get( 1 ) ).get( "master" ) );
+        } finally {
+            coalescer.dispose();
+        }
+    }
+
+    @Test
+    public void testOfferAfterDispose() {
+        final RecordingClusterService clusterService = new RecordingClusterService();
+        final SyncCoalescer coalescer = new SyncCoalescer( clusterService, 60000 );
+        coalescer.dispose();
+
+        coalescer.offer( content( "repo1", "c1" ) );
+
+        assertEquals( 1, clusterService.calls.size() );
+        assertEquals( 0, coalescer.getPendingCount() );
+    }
+
+    @Test
+    public void testOlderMessageIsDropped() {
+        final RecordingClusterService clusterService = new RecordingClusterService();
+        final SyncCoalescer coalescer = new SyncCoalescer( clusterService, 60000 );
+        try {
+            // built under the lock in order c1, c2, but offered the other way around
+            final Map<String, String> older = content( "repo1", "c1" );
+            older.put( FileSystemSyncLock.SEQUENCE, "1" );
+            final Map<String, String> newer = content( "repo1", "c2" );
+            newer.put( FileSystemSyncLock.SEQUENCE, "2" );
+
+            coalescer.offer( newer );
+            coalescer.offer( older );
+            coalescer.flush();
+
+            coalescer.offer( older );
+            coalescer.flush();
+
+            assertEquals( 1, clusterService.contents.size() );
+            assertEquals( "c2", FileSystemSyncLock.readRefs( clusterService.contents.get( 0 ) ).get( "master" ) );
+        } finally {
+            coalescer.dispose();
+        }
+    }
+
+    private static Thread flushInBackground( final SyncCoalescer coalescer ) {
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                coalescer.flush();
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    private static Map<String, String> content( final String id,
+                                                final String commit ) {
+        final Map<String, String> content = new HashMap<String, String>();
+        content.put( "fs_scheme", "git" );
+        content.put( "fs_id", id );
+        content.put( FileSystemSyncLock.REF_NAME + 0, "master" );
+        content.put( FileSystemSyncLock.REF_COMMIT + 0, commit );
+        return content;
+    }
+}
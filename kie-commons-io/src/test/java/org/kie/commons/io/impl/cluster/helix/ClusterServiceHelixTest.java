@@ -0,0 +1,42 @@
+package org.kie.commons.io.impl.cluster.helix;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ClusterServiceHelixTest {
+
+    @Test
+    public void testPartitionsInAscendingOrder() {
+        final List<String> partitions = new ArrayList<String>();
+        for ( int i = 0; i < 8; i++ ) {
+            partitions.add( "locks_" + i );
+        }
+
+        // find two scopes whose partitions are in the opposite order of their names
+        String high = null;
+        String low = null;
+        for ( int i = 0; high == null || low == null; i++ ) {
+            final String scope = "repo" + i;
+            final int index = ( scope.hashCode() & Integer.MAX_VALUE ) % partitions.size();
+            if ( index == 7 && high == null ) {
+                high = scope;
+            } else if ( index == 2 && low == null ) {
+                low = scope;
+            }
+        }
+
+        final List<String> forward = ClusterServiceHelix.partitionsOf( partitions, high, low );
+        final List<String> backward = ClusterServiceHelix.partitionsOf( partitions, low, high );
+
+        assertEquals( 2, forward.size() );
+        assertEquals( "locks_2", forward.get( 0 ) );
+        assertEquals( "locks_7", forward.get( 1 ) );
+        assertEquals( forward, backward );
+
+        assertEquals( 1, ClusterServiceHelix.partitionsOf( partitions, high, high ).size() );
+    }
+}
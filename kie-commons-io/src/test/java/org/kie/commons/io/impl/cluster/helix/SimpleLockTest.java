@@ -0,0 +1,54 @@
+package org.kie.commons.io.impl.cluster.helix;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SimpleLockTest {
+
+    @Test
+    public void testTransitionWakesWaiter() throws InterruptedException {
+        final SimpleLock lock = new SimpleLock();
+        final CountDownLatch waiting = new CountDownLatch( 1 );
+        final CountDownLatch acquired = new CountDownLatch( 1 );
+
+        final Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                synchronized ( lock ) {
+                    waiting.countDown();
+                    lock.awaitUninterruptibly( true );
+                    acquired.countDown();
+                }
+            }
+        };
+        waiter.start();
+
+        assertTrue( waiting.await( 10, TimeUnit.SECONDS ) );
+        assertFalse( acquired.await( 50, TimeUnit.MILLISECONDS ) );
+
+        // transitions must get through while a thread holds the lock monitor
+        lock.lock();
+
+        assertTrue( acquired.await( 10, TimeUnit.SECONDS ) );
+        waiter.join( 10000 );
+        assertTrue( lock.isLocked() );
+    }
+
+    @Test
+    public void testTimedAwait() throws InterruptedException {
+        final SimpleLock lock = new SimpleLock();
+
+        assertFalse( lock.await( true, 20, TimeUnit.MILLISECONDS ) );
+        assertTrue( lock.await( false, 0, TimeUnit.MILLISECONDS ) );
+
+        lock.lock();
+        assertTrue( lock.await( true, 0, TimeUnit.MILLISECONDS ) );
+
+        lock.unlock();
+        assertTrue( lock.await( false, 10, TimeUnit.SECONDS ) );
+    }
+}
@@ -0,0 +1,137 @@
+package org.kie.commons.io.impl.lock;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.kie.commons.io.IOService;
+import org.kie.commons.io.impl.IOServiceDotFileImpl;
+import org.kie.commons.java.nio.file.Path;
+import org.kie.commons.java.nio.file.Paths;
+
+import static org.fest.assertions.api.Assertions.*;
+import static org.kie.commons.java.nio.base.dotfiles.DotFileUtils.*;
+
+public class PathLocksTest {
+
+    private final Path root = Paths.get( new File( System.getProperty( "java.io.tmpdir" ) ).toURI() );
+
+    @Test
+    public void testDotFileSharesLock() {
+        final PathLocks locks = new PathLocks();
+        final Path path = root.resolve( "some/path/file.txt" );
+
+        assertThat( locks.stripe( dot( path ) ) ).isEqualTo( locks.stripe( path ) );
+        assertThat( locks.stripe( dot( path.getRoot() ) ) ).isEqualTo( locks.stripe( path.getRoot() ) );
+    }
+
+    @Test
+    public void testIndependentPaths() throws InterruptedException {
+        final PathLocks locks = new PathLocks();
+        final Path first = root.resolve( "file0.txt" );
+        Path other = null;
+        for ( int i = 1; other == null; i++ ) {
+            final Path candidate = root.resolve( "file" + i + ".txt" );
+            if ( locks.stripe( candidate ) != locks.stripe( first ) ) {
+                other = candidate;
+            }
+        }
+        final Path second = other;
+
+        locks.lockWrite( first );
+        try {
+            final CountDownLatch acquired = new CountDownLatch( 1 );
+            new Thread() {
+                @Override
+                public void run() {
+                    locks.lockWrite( second );
+                    acquired.countDown();
+                    locks.unlockWrite( second );
+                }
+            }.start();
+            assertThat( acquired.await( 5, TimeUnit.SECONDS ) ).isTrue();
+        } finally {
+            locks.unlockWrite( first );
+        }
+    }
+
+    @Test
+    public void testWriteHoldsOnlyItsPath() throws IOException, InterruptedException {
+        final PathLocks locks = new PathLocks();
+        final IOService ioService = new IOServiceDotFileImpl( new ThreadLockServiceImpl(), null, locks );
+        final File dir = File.createTempFile( "locks", "" );
+        dir.delete();
+        dir.mkdirs();
+        final Path dirPath = ioService.get( dir.toURI() );
+        final Path first = dirPath.resolve( "file0.txt" );
+        Path other = null;
+        for ( int i = 1; other == null; i++ ) {
+            final Path candidate = dirPath.resolve( "file" + i + ".txt" );
+            if ( locks.stripe( candidate ) != locks.stripe( first ) ) {
+                other = candidate;
+            }
+        }
+
+        final Thread blocked = write( ioService, first );
+        final Thread free;
+        locks.lockWrite( first );
+        try {
+            blocked.start();
+            free = write( ioService, other );
+            free.start();
+
+            // a write to another path isn't held back by a pending one
+            free.join( 5000 );
+            assertThat( free.isAlive() ).isFalse();
+            blocked.join( 100 );
+            assertThat( blocked.isAlive() ).isTrue();
+        } finally {
+            locks.unlockWrite( first );
+        }
+        blocked.join( 5000 );
+        assertThat( blocked.isAlive() ).isFalse();
+        assertThat( ioService.readAllString( first ) ).isEqualTo( "content" );
+    }
+
+    private static Thread write( final IOService ioService,
+                                 final Path path ) {
+        return new Thread() {
+            @Override
+            public void run() {
+                ioService.write( path, "content" );
+            }
+        };
+    }
+
+    @Test(timeout = 10000)
+    public void testMultiplePathsDontDeadlock() throws InterruptedException {
+        final PathLocks locks = new PathLocks( 16 );
+        final Path a = root.resolve( "a.txt" );
+        final Path b = root.resolve( "b.txt" );
+
+        final Thread one = new Thread() {
+            @Override
+            public void run() {
+                for ( int i = 0; i < 1000; i++ ) {
+                    locks.lockWrite( a, b );
+                    locks.unlockWrite( a, b );
+                }
+            }
+        };
+        final Thread two = new Thread() {
+            @Override
+            public void run() {
+                for ( int i = 0; i < 1000; i++ ) {
+                    locks.lockWrite( b, a );
+                    locks.unlockWrite( b, a );
+                }
+            }
+        };
+        one.start();
+        two.start();
+        one.join();
+        two.join();
+    }
+}
@@ -1,5 +1,7 @@
 package org.kie.commons.io.lock;
 
+import java.util.concurrent.TimeUnit;
+
 import org.junit.Test;
 import org.kie.commons.io.impl.lock.ThreadLockServiceImpl;
 
@@ -55,4 +57,66 @@ public class ThreadLockServiceTest {
             assertThat( vals[ 0 ] ).isEqualTo( true );
         }
     }
+
+    @Test
+    public void testTryLock() throws InterruptedException {
+        final ThreadLockServiceImpl lockService = new ThreadLockServiceImpl( true );
+        lockService.lock();
+        final boolean[] vals = new boolean[]{ true };
+        final Thread thread = new Thread( new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    vals[ 0 ] = lockService.tryLock( 50, TimeUnit.MILLISECONDS );
+                } catch ( final InterruptedException ignored ) {
+                }
+            }
+        } );
+        thread.start();
+        thread.join();
+        assertThat( vals[ 0 ] ).isFalse();
+        lockService.unlock();
+        assertThat( lockService.tryLock( 50, TimeUnit.MILLISECONDS ) ).isTrue();
+        lockService.unlock();
+    }
+
+    @Test
+    public void testScopes() throws InterruptedException {
+        final ThreadLockServiceImpl lockService = new ThreadLockServiceImpl();
+        lockService.lock( "repo1" );
+        assertThat( lockService.isLocked( "repo1" ) ).isTrue();
+        assertThat( lockService.isLocked( "repo2" ) ).isFalse();
+
+        final boolean[] vals = new boolean[]{ false, true };
+        final Thread thread = new Thread( new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    vals[ 0 ] = lockService.tryLock( "repo2", 50, TimeUnit.MILLISECONDS );
+                    if ( vals[ 0 ] ) {
+                        lockService.unlock( "repo2" );
+                    }
+                    vals[ 1 ] = lockService.tryLock( 50, TimeUnit.MILLISECONDS );
+                } catch ( final InterruptedException ignored ) {
+                }
+            }
+        } );
+        thread.start();
+        thread.join();
+
+        assertThat( vals[ 0 ] ).isTrue();
+        assertThat( vals[ 1 ] ).isFalse();
+        lockService.unlock( "repo1" );
+    }
+
+    @Test(expected = IllegalMonitorStateException.class)
+    public void testGlobalLockInsideScope() {
+        final ThreadLockServiceImpl lockService = new ThreadLockServiceImpl();
+        lockService.lock( "repo1" );
+        try {
+            lockService.lock();
+        } finally {
+            lockService.unlock( "repo1" );
+        }
+    }
 }
@@ -19,44 +19,40 @@ package org.kie.commons.java.nio.fs.jgit;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.ListBranchCommand;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.transport.CredentialsProvider;
 import org.kie.commons.java.nio.IOException;
 import org.kie.commons.java.nio.base.FileSystemId;
-import org.kie.commons.java.nio.file.ClosedWatchServiceException;
+import org.kie.commons.java.nio.base.RevisionedFileSystem;
 import org.kie.commons.java.nio.file.FileStore;
 import org.kie.commons.java.nio.file.FileSystem;
-import org.kie.commons.java.nio.file.InterruptedException;
 import org.kie.commons.java.nio.file.InvalidPathException;
 import org.kie.commons.java.nio.file.Path;
 import org.kie.commons.java.nio.file.PathMatcher;
 import org.kie.commons.java.nio.file.PatternSyntaxException;
 import org.kie.commons.java.nio.file.WatchEvent;
-import org.kie.commons.java.nio.file.WatchKey;
 import org.kie.commons.java.nio.file.WatchService;
-import org.kie.commons.java.nio.file.Watchable;
 import org.kie.commons.java.nio.file.attribute.UserPrincipalLookupService;
 import org.kie.commons.java.nio.file.spi.FileSystemProvider;
+import org.kie.commons.java.nio.fs.jgit.util.PathHistoryIndex;
 
 import static org.eclipse.jgit.lib.Repository.*;
 import static org.kie.commons.java.nio.fs.jgit.util.JGitUtil.*;
 import static org.kie.commons.validation.Preconditions.*;
 
 public class JGitFileSystem implements FileSystem,
-                                       FileSystemId {
+                                       FileSystemId,
+                                       RevisionedFileSystem {
 
     private static final Set<String> SUPPORTED_ATTR_VIEWS = Collections.unmodifiableSet( new HashSet<String>() {{
         add( "basic" );
@@ -67,12 +63,12 @@ public class JGitFileSystem implements FileSystem,
     private final Git gitRepo;
     private final ListBranchCommand.ListMode listMode;
     private final String fullHostName;
-    private boolean isClose = false;
+    private volatile boolean isClose = false;
     private final FileStore fileStore;
     private final String name;
     private final CredentialsProvider credential;
-    private final Map<WatchService, Queue<WatchKey>> events = new HashMap<WatchService, Queue<WatchKey>>();
-    private final Collection<WatchService> watchServices = new ArrayList<WatchService>();
+    private final Collection<JGitWatchService> watchServices = new CopyOnWriteArrayList<JGitWatchService>();
+    private PathHistoryIndex historyIndex = null;
 
     JGitFileSystem( final JGitFileSystemProvider provider,
                     final String fullHostName,
@@ -114,6 +110,18 @@ public class JGitFileSystem implements FileSystem,
         return credential;
     }
 
+    public synchronized PathHistoryIndex getHistoryIndex() {
+        if ( historyIndex == null ) {
+            historyIndex = new PathHistoryIndex( gitRepo.getRepository() );
+            final List<String> branches = new ArrayList<String>();
+            for ( final Ref ref : branchList( gitRepo ) ) {
+                branches.add( shortenRefName( ref.getName() ) );
+            }
+            historyIndex.buildInBackground( branches );
+        }
+        return historyIndex;
+    }
+
     @Override
     public FileSystemProvider provider() {
         return provider;
@@ -257,55 +265,15 @@ public class JGitFileSystem implements FileSystem,
     public WatchService newWatchService()
             throws UnsupportedOperationException, IOException {
         checkClose();
-        final WatchService ws = new WatchService() {
-            private boolean wsClose = false;
-
-            @Override
-            public WatchKey poll() throws ClosedWatchServiceException {
-                return events.get( this ).poll();
-            }
-
-            @Override
-            public WatchKey poll( long timeout,
-                                  TimeUnit unit ) throws ClosedWatchServiceException, org.kie.commons.java.nio.file.InterruptedException {
-                return events.get( this ).poll();
-            }
-
-            @Override
-            public WatchKey take() throws ClosedWatchServiceException, InterruptedException {
-                while ( !wsClose && !isClose ) {
-                    if ( events.get( this ).size() > 0 ) {
-                        return events.get( this ).poll();
-                    } else {
-                        try {
-                            Thread.sleep( 200 );
-                        } catch ( java.lang.InterruptedException e ) {
-                        }
-                    }
-                }
-                return null;
-            }
-
-            @Override
-            public void close() throws IOException {
-                wsClose = true;
-                if ( !isClose ) {
-                    watchServices.remove( this );
-                }
-            }
-
-            @Override
-            public String toString() {
-                return "WatchService{" +
-                        "FileSystem=" + JGitFileSystem.this.toString() +
-                        '}';
-            }
-        };
-        events.put( ws, new ConcurrentLinkedQueue<WatchKey>() );
+        final JGitWatchService ws = new JGitWatchService( this );
         watchServices.add( ws );
         return ws;
     }
 
+    void onCloseWatchService( final JGitWatchService watchService ) {
+        watchServices.remove( watchService );
+    }
+
     @Override
     public void close() throws IOException {
         if ( isClose ) {
@@ -317,7 +285,6 @@ public class JGitFileSystem implements FileSystem,
             ws.close();
         }
         watchServices.clear();
-        events.clear();
         provider.onCloseFileSystem( this );
     }
 
@@ -379,41 +346,48 @@ public class JGitFileSystem implements FileSystem,
         return result;
     }
 
+    @Override
+    public String getRevision( final Path root ) {
+        checkClose();
+        final ObjectId head = resolveObjectId( gitRepo, refTree( root ) );
+        return head == null ? null : head.name();
+    }
+
+    @Override
+    public List<WatchEvent<?>> getChanges( final Path root,
+                                           final String fromRevision,
+                                           final String toRevision ) {
+        checkClose();
+        checkNotEmpty( "fromRevision", fromRevision );
+        checkNotEmpty( "toRevision", toRevision );
+        final ObjectId fromTree;
+        final ObjectId toTree;
+        try {
+            fromTree = getTreeRefObjectId( gitRepo.getRepository(), fromRevision );
+            toTree = getTreeRefObjectId( gitRepo.getRepository(), toRevision );
+        } catch ( final RuntimeException ex ) {
+            return null;
+        }
+        if ( fromTree == null || toTree == null ) {
+            return null;
+        }
+        return toWatchEvents( this, refTree( root ), "<system>", "<system>", getDiff( gitRepo.getRepository(), fromTree, toTree ) );
+    }
+
+    private String refTree( final Path root ) {
+        checkNotNull( "root", root );
+        checkCondition( "root must belong to this file system", root.getFileSystem() == this );
+        return ( (JGitPathImpl) root ).getRefTree();
+    }
+
     public void publishEvents( final Path watchable,
                                final List<WatchEvent<?>> elist ) {
-        if ( this.events.isEmpty() ) {
+        if ( watchServices.isEmpty() ) {
             return;
         }
 
-        final WatchKey wk = new WatchKey() {
-
-            @Override
-            public boolean isValid() {
-                return true;
-            }
-
-            @Override
-            public List<WatchEvent<?>> pollEvents() {
-                return new ArrayList<WatchEvent<?>>( elist );
-            }
-
-            @Override
-            public boolean reset() {
-                return false;
-            }
-
-            @Override
-            public void cancel() {
-            }
-
-            @Override
-            public Watchable watchable() {
-                return watchable;
-            }
-        };
-
-        for ( final Queue<WatchKey> queue : events.values() ) {
-            queue.add( wk );
+        for ( final JGitWatchService ws : watchServices ) {
+            ws.publish( watchable, elist );
         }
     }
 }
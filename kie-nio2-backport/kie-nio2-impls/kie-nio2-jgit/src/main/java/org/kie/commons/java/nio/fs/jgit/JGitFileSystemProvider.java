@@ -17,12 +17,10 @@
 package org.kie.commons.java.nio.fs.jgit;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.FilterOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.RandomAccessFile;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.nio.ByteBuffer;
@@ -61,6 +59,7 @@ import org.eclipse.jgit.transport.resolver.RepositoryResolver;
 import org.eclipse.jgit.transport.resolver.ServiceNotAuthorizedException;
 import org.eclipse.jgit.transport.resolver.ServiceNotEnabledException;
 import org.eclipse.jgit.util.FileUtils;
+import org.eclipse.jgit.util.TemporaryBuffer;
 import org.kie.commons.cluster.ClusterService;
 import org.kie.commons.data.Pair;
 import org.kie.commons.java.nio.IOException;
@@ -68,7 +67,7 @@ import org.kie.commons.java.nio.base.AbstractPath;
 import org.kie.commons.java.nio.base.BasicFileAttributesImpl;
 import org.kie.commons.java.nio.base.ExtendedAttributeView;
 import org.kie.commons.java.nio.base.FileSystemState;
-import org.kie.commons.java.nio.base.SeekableByteChannelFileBasedImpl;
+import org.kie.commons.java.nio.base.SeekableByteChannelWrapperImpl;
 import org.kie.commons.java.nio.base.dotfiles.DotFileOption;
 import org.kie.commons.java.nio.base.options.CommentedOption;
 import org.kie.commons.java.nio.base.version.VersionAttributeView;
@@ -101,9 +100,13 @@ import org.kie.commons.java.nio.file.attribute.BasicFileAttributes;
 import org.kie.commons.java.nio.file.attribute.FileAttribute;
 import org.kie.commons.java.nio.file.attribute.FileAttributeView;
 import org.kie.commons.java.nio.file.spi.FileSystemProvider;
+import org.kie.commons.java.nio.fs.jgit.util.BatchCommit;
 import org.kie.commons.java.nio.fs.jgit.util.Daemon;
 import org.kie.commons.java.nio.fs.jgit.util.DaemonClient;
+import org.kie.commons.java.nio.fs.jgit.util.GroupCommitter;
 import org.kie.commons.java.nio.fs.jgit.util.JGitUtil;
+import org.kie.commons.java.nio.fs.jgit.util.TemporaryBufferChannel;
+import org.kie.commons.java.nio.fs.jgit.util.TreeLookupCache;
 import org.kie.commons.message.MessageType;
 
 import static org.eclipse.jgit.api.ListBranchCommand.ListMode.*;
@@ -126,6 +129,10 @@ public class JGitFileSystemProvider implements FileSystemProvider {
     public static final int DEAMON_DEFAULT_PORT = 9418;
     public static final String DEAMON_DEFAULT_HOST = "localhost";
     public static final boolean DEAMON_DEFAULT_UPLOAD = true;
+    public static final int WRITE_DEFAULT_IN_CORE_LIMIT = 1024 * 1024;
+    public static final long COMMIT_GROUP_DEFAULT_WINDOW = 0;
+    public static final int COMMIT_GROUP_DEFAULT_MAX_PATHS = 500;
+    public static final int LOOKUP_CACHE_DEFAULT_SIZE = TreeLookupCache.DEFAULT_MAX_ENTRIES;
     private static final String GIT_ENV_PROP_DEST_PATH = "out-dir";
 
     public static File FILE_REPOSITORIES_ROOT;
@@ -133,6 +140,10 @@ public class JGitFileSystemProvider implements FileSystemProvider {
     public static int DEAMON_PORT;
     public static boolean DEAMON_UPLOAD;
     private static String DEAMON_HOST;
+    public static int WRITE_IN_CORE_LIMIT;
+    public static long COMMIT_GROUP_WINDOW;
+    public static int COMMIT_GROUP_MAX_PATHS;
+    public static int LOOKUP_CACHE_SIZE;
 
     public static final String USER_NAME = "username";
     public static final String PASSWORD = "password";
@@ -142,8 +153,7 @@ public class JGitFileSystemProvider implements FileSystemProvider {
     public static final int DEFAULT_SCHEME_SIZE = ( "default://" ).length();
 
     private Daemon deamonService = null;
-    private FileSystemState state = FileSystemState.NORMAL;
-    private boolean hadCommitOnBatchState = false;
+    private final Map<JGitFileSystem, BatchCommit> batches = new ConcurrentHashMap<JGitFileSystem, BatchCommit>();
 
     private final Map<String, JGitFileSystem> fileSystems = new ConcurrentHashMap<String, JGitFileSystem>();
     private final Set<JGitFileSystem> closedFileSystems = new HashSet<JGitFileSystem>();
@@ -155,6 +165,8 @@ public class JGitFileSystemProvider implements FileSystemProvider {
 
     private boolean isDefault;
 
+    private final GroupCommitter groupCommitter;
+
     static {
         loadConfig();
         CredentialsProvider.setDefault( new UsernamePasswordCredentialsProvider( "guest", "" ) );
@@ -166,6 +178,10 @@ public class JGitFileSystemProvider implements FileSystemProvider {
         final String host = System.getProperty( "org.kie.nio.git.deamon.host" );
         final String port = System.getProperty( "org.kie.nio.git.deamon.port" );
         final String upload = System.getProperty( "org.kie.nio.git.deamon.upload" );
+        final String inCoreLimit = System.getProperty( "org.kie.nio.git.write.incore.limit" );
+        final String groupWindow = System.getProperty( "org.kie.nio.git.commit.group.window" );
+        final String groupMaxPaths = System.getProperty( "org.kie.nio.git.commit.group.maxpaths" );
+        final String lookupCacheSize = System.getProperty( "org.kie.nio.git.lookup.cache.size" );
         if ( bareReposDir == null || bareReposDir.trim().isEmpty() ) {
             FILE_REPOSITORIES_ROOT = new File( REPOSITORIES_ROOT_DIR );
         } else {
@@ -202,6 +218,56 @@ public class JGitFileSystemProvider implements FileSystemProvider {
                 }
             }
         }
+
+        if ( inCoreLimit == null || inCoreLimit.trim().isEmpty() ) {
+            WRITE_IN_CORE_LIMIT = WRITE_DEFAULT_IN_CORE_LIMIT;
+        } else {
+            try {
+                WRITE_IN_CORE_LIMIT = Integer.valueOf( inCoreLimit.trim() );
+            } catch ( Exception ex ) {
+                WRITE_IN_CORE_LIMIT = WRITE_DEFAULT_IN_CORE_LIMIT;
+            }
+            if ( WRITE_IN_CORE_LIMIT <= 0 ) {
+                WRITE_IN_CORE_LIMIT = WRITE_DEFAULT_IN_CORE_LIMIT;
+            }
+        }
+
+        if ( groupWindow == null || groupWindow.trim().isEmpty() ) {
+            COMMIT_GROUP_WINDOW = COMMIT_GROUP_DEFAULT_WINDOW;
+        } else {
+            try {
+                COMMIT_GROUP_WINDOW = Long.valueOf( groupWindow.trim() );
+            } catch ( Exception ex ) {
+                COMMIT_GROUP_WINDOW = COMMIT_GROUP_DEFAULT_WINDOW;
+            }
+        }
+
+        if ( groupMaxPaths == null || groupMaxPaths.trim().isEmpty() ) {
+            COMMIT_GROUP_MAX_PATHS = COMMIT_GROUP_DEFAULT_MAX_PATHS;
+        } else {
+            try {
+                COMMIT_GROUP_MAX_PATHS = Integer.valueOf( groupMaxPaths.trim() );
+            } catch ( Exception ex ) {
+                COMMIT_GROUP_MAX_PATHS = COMMIT_GROUP_DEFAULT_MAX_PATHS;
+            }
+            if ( COMMIT_GROUP_MAX_PATHS <= 0 ) {
+                COMMIT_GROUP_MAX_PATHS = COMMIT_GROUP_DEFAULT_MAX_PATHS;
+            }
+        }
+
+        if ( lookupCacheSize == null || lookupCacheSize.trim().isEmpty() ) {
+            LOOKUP_CACHE_SIZE = LOOKUP_CACHE_DEFAULT_SIZE;
+        } else {
+            try {
+                LOOKUP_CACHE_SIZE = Integer.valueOf( lookupCacheSize.trim() );
+            } catch ( Exception ex ) {
+                LOOKUP_CACHE_SIZE = LOOKUP_CACHE_DEFAULT_SIZE;
+            }
+            if ( LOOKUP_CACHE_SIZE <= 0 ) {
+                LOOKUP_CACHE_SIZE = LOOKUP_CACHE_DEFAULT_SIZE;
+            }
+        }
+        TreeLookupCache.getInstance().setMaxEntries( LOOKUP_CACHE_SIZE );
     }
 
     public void onCloseFileSystem( final JGitFileSystem fileSystem ) {
@@ -244,6 +310,7 @@ public class JGitFileSystemProvider implements FileSystemProvider {
 
     public JGitFileSystemProvider() {
         fullHostName = DEAMON_ENABLED ? DEAMON_HOST + ":" + DEAMON_PORT : null;
+        groupCommitter = COMMIT_GROUP_WINDOW > 0 ? new GroupCommitter( COMMIT_GROUP_WINDOW, COMMIT_GROUP_MAX_PATHS ) : null;
 
         final String[] repos = FILE_REPOSITORIES_ROOT.list( new FilenameFilter() {
             @Override
@@ -290,7 +357,7 @@ public class JGitFileSystemProvider implements FileSystemProvider {
                         public void onPreReceive( final ReceivePack rp,
                                                   final Collection<ReceiveCommand> commands ) {
                             if ( clusterService != null ) {
-                                clusterService.lock();
+                                clusterService.lock( fs.id() );
                             }
                         }
                     } );
@@ -300,6 +367,11 @@ public class JGitFileSystemProvider implements FileSystemProvider {
                         public void onPostReceive( final ReceivePack rp,
                                                    final Collection<ReceiveCommand> commands ) {
                             final ObjectId newHead = JGitUtil.getTreeRefObjectId( db, treeRef );
+                            for ( final ReceiveCommand command : commands ) {
+                                if ( command.getRefName().startsWith( R_HEADS ) ) {
+                                    fs.getHistoryIndex().update( command.getRefName().substring( R_HEADS.length() ) );
+                                }
+                            }
                             notifyDiffs( fs, treeRef, "<system>", "<system>", oldHead, newHead );
 
                             if ( clusterService != null ) {
@@ -319,10 +391,18 @@ public class JGitFileSystemProvider implements FileSystemProvider {
                                                               put( "fs_scheme", "git" );
                                                               put( "fs_id", fs.id() );
                                                               put( "fs_uri", fs.toString() );
+                                                              int i = 0;
+                                                              for ( final ReceiveCommand command : commands ) {
+                                                                  if ( command.getRefName().startsWith( R_HEADS ) && command.getType() != ReceiveCommand.Type.DELETE ) {
+                                                                      put( "ref_name_" + i, command.getRefName().substring( R_HEADS.length() ) );
+                                                                      put( "ref_commit_" + i, command.getNewId().name() );
+                                                                      i++;
+                                                                  }
+                                                              }
                                                           }}
                                                         );
 
-                                clusterService.unlock();
+                                clusterService.unlock( fs.id() );
                             }
                         }
                     } );
@@ -469,7 +549,7 @@ public class JGitFileSystemProvider implements FileSystemProvider {
                 final String treeRef = "master";
                 final ObjectId oldHead = JGitUtil.getTreeRefObjectId( fileSystem.gitRepo().getRepository(), treeRef );
                 final Map<String, String> params = getQueryParams( uri );
-                syncRepository( fileSystem.gitRepo(), fileSystem.getCredential(), params.get( "sync" ), hasForceFlag( uri ) );
+                syncRepository( fileSystem.gitRepo(), fileSystem.getCredential(), params.get( "sync" ), hasForceFlag( uri ), getRefsParam( params ) );
                 final ObjectId newHead = JGitUtil.getTreeRefObjectId( fileSystem.gitRepo().getRepository(), treeRef );
                 notifyDiffs( fileSystem, treeRef, "<system>", "<system>", oldHead, newHead );
             } catch ( final Exception ex ) {
@@ -525,11 +605,18 @@ public class JGitFileSystemProvider implements FileSystemProvider {
             throw new IOException();
         }
 
-        try {
-            final File file = File.createTempFile( "gitz", "woot" );
-            return new FilterOutputStream( new FileOutputStream( file ) ) {
-                public void close() throws java.io.IOException {
-                    super.close();
+        final TemporaryBuffer buffer = new TemporaryBuffer.LocalFile( WRITE_IN_CORE_LIMIT );
+        return new FilterOutputStream( buffer ) {
+            @Override
+            public void write( final byte[] b,
+                               final int off,
+                               final int len ) throws java.io.IOException {
+                out.write( b, off, len );
+            }
+
+            public void close() throws java.io.IOException {
+                super.close();
+                try {
                     String sessionId = null;
                     String name = null;
                     String email = null;
@@ -552,15 +639,16 @@ public class JGitFileSystemProvider implements FileSystemProvider {
                         }
                     }
 
-                    commit( gPath, sessionId, name, email, message, timeZone, when, amend(), new HashMap<String, File>() {{
-                        put( gPath.getPath(), file );
+                    final ObjectId blobId = insertBlob( gPath.getFileSystem().gitRepo(), buffer );
+
+                    commit( gPath, sessionId, name, email, message, timeZone, when, new HashMap<String, ObjectId>() {{
+                        put( gPath.getPath(), blobId );
                     }} );
-                    checkAmend();
+                } finally {
+                    buffer.destroy();
                 }
-            };
-        } catch ( java.io.IOException e ) {
-            throw new IOException( e );
-        }
+            }
+        };
     }
 
     @Override
@@ -600,54 +688,64 @@ public class JGitFileSystemProvider implements FileSystemProvider {
         }
 
         try {
-            final File file = File.createTempFile( "gitz", "woot" );
+            final TemporaryBufferChannel buffer = new TemporaryBufferChannel( WRITE_IN_CORE_LIMIT );
 
-            return new SeekableByteChannelFileBasedImpl( new RandomAccessFile( file, "rw" ).getChannel() ) {
+            return new SeekableByteChannelWrapperImpl( buffer ) {
                 @Override
                 public void close() throws java.io.IOException {
                     super.close();
-                    String sessionId = null;
-                    String name = null;
-                    String email = null;
-                    String message = null;
-                    TimeZone timeZone = null;
-                    Date when = null;
-
-                    if ( options != null && options.size() > 0 ) {
-                        for ( final OpenOption option : options ) {
-                            if ( option instanceof CommentedOption ) {
-                                final CommentedOption op = (CommentedOption) option;
-                                sessionId = op.getSessionId();
-                                name = op.getName();
-                                email = op.getEmail();
-                                message = op.getMessage();
-                                timeZone = op.getTimeZone();
-                                when = op.getWhen();
-                                break;
+                    TemporaryBuffer dotBuffer = null;
+                    try {
+                        String sessionId = null;
+                        String name = null;
+                        String email = null;
+                        String message = null;
+                        TimeZone timeZone = null;
+                        Date when = null;
+
+                        if ( options != null && options.size() > 0 ) {
+                            for ( final OpenOption option : options ) {
+                                if ( option instanceof CommentedOption ) {
+                                    final CommentedOption op = (CommentedOption) option;
+                                    sessionId = op.getSessionId();
+                                    name = op.getName();
+                                    email = op.getEmail();
+                                    message = op.getMessage();
+                                    timeZone = op.getTimeZone();
+                                    when = op.getWhen();
+                                    break;
+                                }
                             }
                         }
-                    }
 
-                    File tempDot = null;
-                    if ( options != null && options.contains( new DotFileOption() ) ) {
-                        deleteIfExists( dot( path ) );
-                        tempDot = File.createTempFile( "meta", "dot" );
-                        buildDotFile( path, new FileOutputStream( tempDot ), attrs );
-                    }
+                        final Git git = gPath.getFileSystem().gitRepo();
+                        final ObjectId blobId = insertBlob( git, buffer );
 
-                    final File dotfile = tempDot;
+                        ObjectId tempDotId = null;
+                        if ( options != null && options.contains( new DotFileOption() ) ) {
+                            deleteIfExists( dot( path ) );
+                            dotBuffer = new TemporaryBuffer.LocalFile( WRITE_IN_CORE_LIMIT );
+                            buildDotFile( path, dotBuffer, attrs );
+                            dotBuffer.close();
+                            tempDotId = insertBlob( git, dotBuffer );
+                        }
 
-                    commit( gPath, sessionId, name, email, message, timeZone, when, amend(), new HashMap<String, File>() {{
-                        put( gPath.getPath(), file );
-                        if ( dotfile != null ) {
-                            put( toPathImpl( dot( gPath ) ).getPath(), dotfile );
+                        final ObjectId dotBlobId = tempDotId;
+
+                        commit( gPath, sessionId, name, email, message, timeZone, when, new HashMap<String, ObjectId>() {{
+                            put( gPath.getPath(), blobId );
+                            if ( dotBlobId != null ) {
+                                put( toPathImpl( dot( gPath ) ).getPath(), dotBlobId );
+                            }
+                        }} );
+                    } finally {
+                        buffer.destroy();
+                        if ( dotBuffer != null ) {
+                            dotBuffer.destroy();
                         }
-                    }} );
-                    checkAmend();
+                    }
                 }
             };
-        } catch ( java.io.IOException e ) {
-            throw new IOException( e );
         } finally {
             ( (AbstractPath) path ).clearCache();
         }
@@ -888,8 +986,29 @@ public class JGitFileSystemProvider implements FileSystemProvider {
             }
         }
 
-        JGitUtil.delete( path, sessionId, name, email, message, timeZone, when, amend() );
-        checkAmend();
+        commit( path, sessionId, name, email, message, timeZone, when, new HashMap<String, ObjectId>() {{
+            put( path.getPath(), null );
+        }} );
+    }
+
+    private void commit( final JGitPathImpl path,
+                         final String sessionId,
+                         final String name,
+                         final String email,
+                         final String message,
+                         final TimeZone timeZone,
+                         final Date when,
+                         final Map<String, ObjectId> content ) {
+        final BatchCommit batch = batches.get( path.getFileSystem() );
+        if ( batch != null ) {
+            batch.commit( path.getRefTree(), sessionId, name, email, message, timeZone, when, content );
+            return;
+        }
+        if ( groupCommitter != null ) {
+            groupCommitter.commit( path, sessionId, name, email, message, timeZone, when, content );
+            return;
+        }
+        commitBlobs( path, sessionId, name, email, message, timeZone, when, false, content );
     }
 
     private boolean deleteNonEmptyDirectory( final DeleteOption... options ) {
@@ -1272,16 +1391,26 @@ public class JGitFileSystemProvider implements FileSystemProvider {
 
         final JGitPathImpl gPath = toPathImpl( path );
 
+        if ( type == BasicFileAttributesImpl.class || type == BasicFileAttributes.class || type == VersionAttributes.class ) {
+            // resolving the attributes already does the path lookup and throws NoSuchFileException
+            final JGitVersionAttributeView view = gPath.getAttrView( JGitVersionAttributeView.class );
+            if ( view == null ) {
+                final JGitVersionAttributeView newView = new JGitVersionAttributeView( gPath );
+                final VersionAttributes attrs = newView.readAttributes();
+                gPath.addAttrView( newView );
+                return (A) attrs;
+            }
+            if ( checkPath( gPath.getFileSystem().gitRepo(), gPath.getRefTree(), gPath.getPath() ).getK1().equals( NOT_FOUND ) ) {
+                throw new NoSuchFileException( path.toString() );
+            }
+            return (A) view.readAttributes();
+        }
+
         final Pair<PathType, ObjectId> pathResult = checkPath( gPath.getFileSystem().gitRepo(), gPath.getRefTree(), gPath.getPath() );
         if ( pathResult.getK1().equals( NOT_FOUND ) ) {
             throw new NoSuchFileException( path.toString() );
         }
 
-        if ( type == BasicFileAttributesImpl.class || type == BasicFileAttributes.class || type == VersionAttributes.class ) {
-            final JGitVersionAttributeView view = getFileAttributeView( path, JGitVersionAttributeView.class, options );
-            return (A) view.readAttributes();
-        }
-
         return null;
     }
 
@@ -1316,13 +1445,23 @@ public class JGitFileSystemProvider implements FileSystemProvider {
         checkNotEmpty( "attributes", attribute );
 
         if ( attribute.equals( FileSystemState.FILE_SYSTEM_STATE_ATTR ) ) {
+            FileSystemState state;
             try {
                 state = FileSystemState.valueOf( value.toString() );
-                FileSystemState.valueOf( value.toString() );
             } catch ( final Exception ex ) {
                 state = FileSystemState.NORMAL;
             }
-            hadCommitOnBatchState = false;
+            final JGitFileSystem fs = toPathImpl( path ).getFileSystem();
+            if ( state == FileSystemState.BATCH ) {
+                if ( !batches.containsKey( fs ) ) {
+                    batches.put( fs, new BatchCommit( fs ) );
+                }
+            } else {
+                final BatchCommit batch = batches.remove( fs );
+                if ( batch != null ) {
+                    batch.publish();
+                }
+            }
             return;
         }
 
@@ -1356,16 +1495,6 @@ public class JGitFileSystemProvider implements FileSystemProvider {
 
     }
 
-    private void checkAmend() {
-        if ( state == FileSystemState.BATCH && !hadCommitOnBatchState ) {
-            hadCommitOnBatchState = true;
-        }
-    }
-
-    private boolean amend() {
-        return state == FileSystemState.BATCH && hadCommitOnBatchState;
-    }
-
     private String extractHost( final URI uri ) {
         checkNotNull( "uri", uri );
 
@@ -1429,6 +1558,22 @@ public class JGitFileSystemProvider implements FileSystemProvider {
         }};
     }
 
+    //refs param lists the announced branches as name:commit pairs separated by commas
+    private static Map<String, String> getRefsParam( final Map<String, String> params ) {
+        final Map<String, String> refs = new HashMap<String, String>();
+        final String value = params.get( "refs" );
+        if ( value == null || value.isEmpty() ) {
+            return refs;
+        }
+        for ( final String ref : value.split( "," ) ) {
+            final int index = ref.lastIndexOf( ':' );
+            if ( index > 0 && index < ref.length() - 1 ) {
+                refs.put( ref.substring( 0, index ), ref.substring( index + 1 ) );
+            }
+        }
+        return refs;
+    }
+
     private String extractPath( final URI uri ) {
         checkNotNull( "uri", uri );
 
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kie.commons.java.nio.fs.jgit;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.kie.commons.java.nio.IOException;
+import org.kie.commons.java.nio.base.BatchWatchService;
+import org.kie.commons.java.nio.base.WatchContext;
+import org.kie.commons.java.nio.file.ClosedWatchServiceException;
+import org.kie.commons.java.nio.file.InterruptedException;
+import org.kie.commons.java.nio.file.Path;
+import org.kie.commons.java.nio.file.WatchEvent;
+import org.kie.commons.java.nio.file.WatchKey;
+import org.kie.commons.java.nio.file.Watchable;
+
+/**
+ * Watch service of a {@link JGitFileSystem}.
+ * <p/>
+ * Consumers block on a condition until a key is published (no polling), and timed polls
+ * honour their timeout. While a key is still pending, a new event that repeats the latest
+ * pending event of the same path (same kind, same paths) replaces it in place instead of
+ * being queued again, so the consumer sees the path once, with the most recent context.
+ */
+public class JGitWatchService implements BatchWatchService {
+
+    private final JGitFileSystem fs;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final LinkedList<PendingKey> pending = new LinkedList<PendingKey>();
+    private final Map<String, PendingEvent> latest = new HashMap<String, PendingEvent>();
+
+    private volatile boolean closed = false;
+
+    JGitWatchService( final JGitFileSystem fs ) {
+        this.fs = fs;
+    }
+
+    void publish( final Path watchable,
+                  final List<WatchEvent<?>> events ) {
+        lock.lock();
+        try {
+            if ( closed ) {
+                return;
+            }
+            PendingKey key = null;
+            for ( final WatchEvent<?> event : events ) {
+                final String pathKey = pathKey( event );
+                if ( pathKey != null ) {
+                    final PendingEvent previous = latest.get( pathKey );
+                    if ( previous != null && isSame( previous.event(), event ) ) {
+                        previous.replace( event );
+                        continue;
+                    }
+                }
+                if ( key == null ) {
+                    key = new PendingKey( watchable );
+                }
+                final PendingEvent added = key.add( event );
+                register( pathKey, added );
+                if ( event.context() instanceof WatchContext ) {
+                    final Path oldPath = ( (WatchContext) event.context() ).getOldPath();
+                    if ( oldPath != null && !oldPath.toString().equals( pathKey ) ) {
+                        register( oldPath.toString(), added );
+                    }
+                }
+            }
+            if ( key != null ) {
+                pending.add( key );
+                notEmpty.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public WatchKey poll() throws ClosedWatchServiceException {
+        lock.lock();
+        try {
+            return next();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public WatchKey poll( final long timeout,
+                          final TimeUnit unit ) throws ClosedWatchServiceException, InterruptedException {
+        final List<WatchKey> result = poll( timeout, unit, 1 );
+        return result.isEmpty() ? null : result.get( 0 );
+    }
+
+    @Override
+    public WatchKey take() throws ClosedWatchServiceException, InterruptedException {
+        final List<WatchKey> result = take( 1 );
+        return result.isEmpty() ? null : result.get( 0 );
+    }
+
+    @Override
+    public List<WatchKey> poll( final long timeout,
+                                final TimeUnit unit,
+                                final int maxKeys ) throws ClosedWatchServiceException, InterruptedException {
+        lock.lock();
+        try {
+            long nanos = unit.toNanos( timeout );
+            while ( pending.isEmpty() && !isClosed() && nanos > 0 ) {
+                nanos = notEmpty.awaitNanos( nanos );
+            }
+            return drain( maxKeys );
+        } catch ( final java.lang.InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedException();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<WatchKey> take( final int maxKeys ) throws ClosedWatchServiceException, InterruptedException {
+        lock.lock();
+        try {
+            while ( pending.isEmpty() && !isClosed() ) {
+                notEmpty.await();
+            }
+            return drain( maxKeys );
+        } catch ( final java.lang.InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedException();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if ( closed ) {
+                return;
+            }
+            closed = true;
+            pending.clear();
+            latest.clear();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        fs.onCloseWatchService( this );
+    }
+
+    private boolean isClosed() {
+        return closed || !fs.isOpen();
+    }
+
+    private List<WatchKey> drain( final int maxKeys ) {
+        final List<WatchKey> result = new ArrayList<WatchKey>();
+        while ( result.size() < maxKeys ) {
+            final WatchKey key = next();
+            if ( key == null ) {
+                break;
+            }
+            result.add( key );
+        }
+        return result;
+    }
+
+    private WatchKey next() {
+        final PendingKey key = pending.poll();
+        if ( key == null ) {
+            return null;
+        }
+        for ( final PendingEvent event : key.events ) {
+            for ( final String pathKey : event.pathKeys ) {
+                if ( latest.get( pathKey ) == event ) {
+                    latest.remove( pathKey );
+                }
+            }
+        }
+        return key.toWatchKey();
+    }
+
+    private void register( final String pathKey,
+                           final PendingEvent event ) {
+        if ( pathKey != null ) {
+            latest.put( pathKey, event );
+            event.pathKeys.add( pathKey );
+        }
+    }
+
+    private static String pathKey( final WatchEvent<?> event ) {
+        if ( !( event.context() instanceof WatchContext ) ) {
+            return null;
+        }
+        final WatchContext context = (WatchContext) event.context();
+        if ( context.getPath() != null ) {
+            return context.getPath().toString();
+        }
+        if ( context.getOldPath() != null ) {
+            return context.getOldPath().toString();
+        }
+        return null;
+    }
+
+    private static boolean isSame( final WatchEvent<?> one,
+                                   final WatchEvent<?> other ) {
+        if ( !one.kind().equals( other.kind() ) ) {
+            return false;
+        }
+        final WatchContext oneContext = (WatchContext) one.context();
+        final WatchContext otherContext = (WatchContext) other.context();
+        return isSame( oneContext.getPath(), otherContext.getPath() ) &&
+                isSame( oneContext.getOldPath(), otherContext.getOldPath() );
+    }
+
+    private static boolean isSame( final Path one,
+                                   final Path other ) {
+        if ( one == null ) {
+            return other == null;
+        }
+        return other != null && one.toString().equals( other.toString() );
+    }
+
+    @Override
+    public String toString() {
+        return "WatchService{" +
+                "FileSystem=" + fs.toString() +
+                '}';
+    }
+
+    private static class PendingKey {
+
+        private final Path watchable;
+        private final List<PendingEvent> events = new ArrayList<PendingEvent>();
+
+        PendingKey( final Path watchable ) {
+            this.watchable = watchable;
+        }
+
+        PendingEvent add( final WatchEvent<?> event ) {
+            final PendingEvent result = new PendingEvent( event );
+            events.add( result );
+            return result;
+        }
+
+        WatchKey toWatchKey() {
+            final List<WatchEvent<?>> elist = new ArrayList<WatchEvent<?>>( events.size() );
+            for ( final PendingEvent event : events ) {
+                elist.add( event.event() );
+            }
+            return new WatchKey() {
+
+                @Override
+                public boolean isValid() {
+                    return true;
+                }
+
+                @Override
+                public List<WatchEvent<?>> pollEvents() {
+                    return new ArrayList<WatchEvent<?>>( elist );
+                }
+
+                @Override
+                public boolean reset() {
+                    return false;
+                }
+
+                @Override
+                public void cancel() {
+                }
+
+                @Override
+                public Watchable watchable() {
+                    return watchable;
+                }
+            };
+        }
+    }
+
+    private static class PendingEvent {
+
+        private final List<String> pathKeys = new ArrayList<String>( 2 );
+        private WatchEvent<?> event;
+
+        PendingEvent( final WatchEvent<?> event ) {
+            this.event = event;
+        }
+
+        WatchEvent<?> event() {
+            return event;
+        }
+
+        void replace( final WatchEvent<?> event ) {
+            this.event = event;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kie.commons.java.nio.fs.jgit.util;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.eclipse.jgit.lib.ObjectId;
+import org.kie.commons.java.nio.IOException;
+import org.kie.commons.java.nio.fs.jgit.JGitFileSystem;
+
+import static org.kie.commons.java.nio.fs.jgit.util.JGitUtil.*;
+import static org.kie.commons.validation.Preconditions.*;
+
+/**
+ * Collects the writes of a batch on a single file system.
+ * <p/>
+ * Writes are committed as they arrive, so reads inside the batch see them, but no watch
+ * event is published. On {@link #publish()} every touched branch gets its intermediate
+ * commits squashed into one commit, followed by a single burst of watch events.
+ */
+public class BatchCommit {
+
+    private final JGitFileSystem fs;
+    private final Map<String, BranchBatch> branches = new LinkedHashMap<String, BranchBatch>();
+
+    public BatchCommit( final JGitFileSystem fs ) {
+        this.fs = checkNotNull( "fs", fs );
+    }
+
+    public synchronized void commit( final String branchName,
+                                     final String sessionId,
+                                     final String name,
+                                     final String email,
+                                     final String message,
+                                     final TimeZone timeZone,
+                                     final Date when,
+                                     final Map<String, ObjectId> content ) {
+        BranchBatch branch = branches.get( branchName );
+        if ( branch == null ) {
+            branch = new BranchBatch( resolveCommit( branchName ),
+                                      getTreeRefObjectId( fs.gitRepo().getRepository(), branchName ) );
+            branches.put( branchName, branch );
+        }
+
+        commitBlobs( fs.gitRepo(), branchName, name, email, message, timeZone, when, false, content );
+
+        branch.sessionId = sessionId;
+        branch.name = name;
+        branch.email = email;
+        branch.message = message;
+        branch.timeZone = timeZone;
+        branch.when = when;
+    }
+
+    public synchronized void publish() {
+        for ( final Map.Entry<String, BranchBatch> entry : branches.entrySet() ) {
+            final String branchName = entry.getKey();
+            final BranchBatch branch = entry.getValue();
+
+            squash( fs.gitRepo(), branchName, branch.baseCommitId, branch.name, branch.email, branch.message, branch.timeZone, branch.when );
+
+            final ObjectId newTree = getTreeRefObjectId( fs.gitRepo().getRepository(), branchName );
+            fs.getHistoryIndex().update( branchName );
+            notifyDiffs( fs, branchName, branch.sessionId, branch.name, branch.baseTreeId, newTree );
+        }
+        branches.clear();
+    }
+
+    private ObjectId resolveCommit( final String branchName ) {
+        try {
+            return fs.gitRepo().getRepository().resolve( branchName + "^{commit}" );
+        } catch ( final java.io.IOException e ) {
+            throw new IOException( e );
+        }
+    }
+
+    private static class BranchBatch {
+
+        private final ObjectId baseCommitId;
+        private final ObjectId baseTreeId;
+
+        private String sessionId;
+        private String name;
+        private String email;
+        private String message;
+        private TimeZone timeZone;
+        private Date when;
+
+        BranchBatch( final ObjectId baseCommitId,
+                     final ObjectId baseTreeId ) {
+            this.baseCommitId = baseCommitId;
+            this.baseTreeId = baseTreeId;
+        }
+    }
+}
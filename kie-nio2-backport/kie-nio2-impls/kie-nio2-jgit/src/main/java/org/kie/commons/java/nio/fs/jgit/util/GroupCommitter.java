@@ -0,0 +1,423 @@
+/*
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kie.commons.java.nio.fs.jgit.util;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.lib.ObjectId;
+import org.kie.commons.java.nio.fs.jgit.JGitFileSystem;
+import org.kie.commons.java.nio.fs.jgit.JGitPathImpl;
+
+import static org.kie.commons.java.nio.fs.jgit.util.JGitUtil.*;
+import static org.kie.commons.validation.Preconditions.*;
+
+/**
+ * Coalesces writes to the same branch into a single commit.
+ * <p/>
+ * The first writer of a group waits up to <code>windowMillis</code> (or until the group
+ * reaches <code>maxPaths</code> changed paths) and then commits everything collected so far
+ * with one ref update. Every writer of the group returns only once that ref update succeeded,
+ * or rethrows its failure. Watch events are published with the session of the writer that
+ * changed each path.
+ * <p/>
+ * A group only takes writes of a single author, and never a write to a path that contains, or
+ * is contained by, a path already in the group: merging those would not give the same tree as
+ * committing them one after the other. Such a write closes the group and starts the next one;
+ * groups of a branch are committed in the order they were started.
+ */
+public class GroupCommitter {
+
+    private final long windowMillis;
+    private final int maxPaths;
+
+    private final Map<String, BranchQueue> queues = new HashMap<String, BranchQueue>();
+
+    public GroupCommitter( final long windowMillis,
+                           final int maxPaths ) {
+        checkCondition( "windowMillis must be positive", windowMillis > 0 );
+        checkCondition( "maxPaths must be positive", maxPaths > 0 );
+        this.windowMillis = windowMillis;
+        this.maxPaths = maxPaths;
+    }
+
+    public void commit( final JGitPathImpl path,
+                        final String sessionId,
+                        final String name,
+                        final String email,
+                        final String message,
+                        final TimeZone timeZone,
+                        final Date when,
+                        final Map<String, ObjectId> content ) {
+        checkNotNull( "path", path );
+        checkNotNull( "content", content );
+
+        final String key = path.getFileSystem().id() + "@" + path.getRefTree();
+        final BranchQueue queue;
+        synchronized ( queues ) {
+            BranchQueue existing = queues.get( key );
+            if ( existing == null ) {
+                existing = new BranchQueue( path.getFileSystem(), path.getRefTree() );
+                queues.put( key, existing );
+            }
+            existing.writers++;
+            queue = existing;
+        }
+
+        try {
+            queue.submit( new CommitRequest( sessionId, name, email, message, timeZone, when, content ) );
+        } finally {
+            // drained queues are dropped, so closed file systems aren't kept reachable
+            synchronized ( queues ) {
+                queue.writers--;
+                if ( queue.writers == 0 ) {
+                    queues.remove( key );
+                }
+            }
+        }
+    }
+
+    /**
+     * @return branches with writers currently waiting on a group
+     */
+    public int getQueueCount() {
+        synchronized ( queues ) {
+            return queues.size();
+        }
+    }
+
+    private class BranchQueue {
+
+        private final JGitFileSystem fs;
+        private final String branchName;
+        private final Object commitLock = new Object();
+
+        private int writers = 0;
+        private Group current = null;
+        private long started = 0;
+        private long committed = 0;
+
+        BranchQueue( final JGitFileSystem fs,
+                     final String branchName ) {
+            this.fs = fs;
+            this.branchName = branchName;
+        }
+
+        void submit( final CommitRequest request ) {
+            final Group group;
+            final boolean leader;
+            synchronized ( this ) {
+                if ( current != null && current.conflicts( request ) ) {
+                    close( current );
+                }
+                leader = current == null;
+                if ( leader ) {
+                    current = new Group( started++ );
+                }
+                group = current;
+                group.add( request );
+                if ( group.paths >= maxPaths ) {
+                    close( group );
+                }
+            }
+
+            if ( leader ) {
+                synchronized ( this ) {
+                    final long deadline = System.currentTimeMillis() + windowMillis;
+                    long remaining = windowMillis;
+                    boolean interrupted = false;
+                    while ( !group.closed && remaining > 0 ) {
+                        try {
+                            wait( remaining );
+                        } catch ( final InterruptedException e ) {
+                            interrupted = true;
+                            break;
+                        }
+                        remaining = deadline - System.currentTimeMillis();
+                    }
+                    close( group );
+                    if ( interrupted ) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                synchronized ( commitLock ) {
+                    boolean interrupted = false;
+                    while ( committed != group.sequence ) {
+                        try {
+                            commitLock.wait();
+                        } catch ( final InterruptedException e ) {
+                            interrupted = true;
+                        }
+                    }
+                    try {
+                        group.commit( fs, branchName );
+                    } finally {
+                        committed++;
+                        commitLock.notifyAll();
+                    }
+                    if ( interrupted ) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+
+            request.await();
+        }
+
+        private void close( final Group group ) {
+            group.closed = true;
+            if ( current == group ) {
+                current = null;
+            }
+            notifyAll();
+        }
+    }
+
+    private static class Group {
+
+        private final long sequence;
+        private final List<CommitRequest> requests = new ArrayList<CommitRequest>();
+        private final Set<String> pathSet = new HashSet<String>();
+        private int paths = 0;
+        private boolean closed = false;
+
+        Group( final long sequence ) {
+            this.sequence = sequence;
+        }
+
+        void add( final CommitRequest request ) {
+            requests.add( request );
+            pathSet.addAll( request.paths );
+            paths += request.content.size();
+        }
+
+        /**
+         * @return <code>true</code> if the request can't be merged into this group: another author,
+         * or a path nested in one of the group, or the other way around
+         */
+        boolean conflicts( final CommitRequest request ) {
+            final CommitRequest first = requests.get( 0 );
+            if ( !equal( first.name, request.name ) || !equal( first.email, request.email ) ) {
+                return true;
+            }
+            for ( final String path : request.paths ) {
+                for ( final String groupPath : pathSet ) {
+                    if ( isAncestor( path, groupPath ) || isAncestor( groupPath, path ) ) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static boolean isAncestor( final String ancestor,
+                                           final String path ) {
+            if ( ancestor.isEmpty() ) {
+                return !path.isEmpty();
+            }
+            return path.startsWith( ancestor + "/" );
+        }
+
+        private static boolean equal( final String a,
+                                      final String b ) {
+            return a == null ? b == null : a.equals( b );
+        }
+
+        void commit( final JGitFileSystem fs,
+                     final String branchName ) {
+            final CommitRequest first = requests.get( 0 );
+            final Map<String, ObjectId> content = new LinkedHashMap<String, ObjectId>();
+            final Set<String> messages = new LinkedHashSet<String>();
+            for ( final CommitRequest request : requests ) {
+                content.putAll( request.content );
+                if ( request.message != null ) {
+                    messages.add( request.message );
+                }
+            }
+
+            final ObjectId oldHead;
+            final ObjectId newHead;
+            try {
+                oldHead = getTreeRefObjectId( fs.gitRepo().getRepository(), branchName );
+                commitBlobs( fs.gitRepo(), branchName, first.name, first.email, buildMessage( first, messages ), first.timeZone, first.when, false, content );
+                newHead = getTreeRefObjectId( fs.gitRepo().getRepository(), branchName );
+            } catch ( final RuntimeException ex ) {
+                for ( final CommitRequest request : requests ) {
+                    request.done( ex );
+                }
+                return;
+            }
+
+            // the commit is in: whatever fails from here on must neither fail the writers
+            // nor escape to the thread committing the group, which still has to let the next one in
+            try {
+                fs.getHistoryIndex().update( branchName );
+            } catch ( final RuntimeException ignored ) {
+                // the history index catches up with the branch on its next update
+            }
+            try {
+                notifyRequests( fs, branchName, getDiff( fs.gitRepo().getRepository(), oldHead, newHead ) );
+            } catch ( final RuntimeException ignored ) {
+                // watchers miss these events, the content is committed regardless
+            }
+            for ( final CommitRequest request : requests ) {
+                request.done( null );
+            }
+        }
+
+        private String buildMessage( final CommitRequest first,
+                                     final Set<String> messages ) {
+            if ( messages.size() <= 1 ) {
+                return first.message;
+            }
+            final StringBuilder sb = new StringBuilder();
+            for ( final String message : messages ) {
+                if ( sb.length() > 0 ) {
+                    sb.append( '\n' );
+                }
+                sb.append( message );
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Each diff entry is reported to the last writer of its path; anything
+         * not matched by a writer is reported to the first one.
+         */
+        private void notifyRequests( final JGitFileSystem fs,
+                                     final String branchName,
+                                     final List<DiffEntry> diff ) {
+            final Set<DiffEntry> claimed = new HashSet<DiffEntry>();
+            final List<List<DiffEntry>> perRequest = new ArrayList<List<DiffEntry>>( requests.size() );
+            for ( int i = 0; i < requests.size(); i++ ) {
+                perRequest.add( new ArrayList<DiffEntry>() );
+            }
+
+            for ( int i = requests.size() - 1; i >= 0; i-- ) {
+                for ( final DiffEntry entry : diff ) {
+                    if ( !claimed.contains( entry ) && requests.get( i ).owns( entry ) ) {
+                        claimed.add( entry );
+                        perRequest.get( i ).add( entry );
+                    }
+                }
+            }
+            for ( final DiffEntry entry : diff ) {
+                if ( !claimed.contains( entry ) ) {
+                    perRequest.get( 0 ).add( entry );
+                }
+            }
+
+            for ( int i = 0; i < requests.size(); i++ ) {
+                if ( !perRequest.get( i ).isEmpty() ) {
+                    final CommitRequest request = requests.get( i );
+                    notifyDiffs( fs, branchName, request.sessionId, request.name, perRequest.get( i ) );
+                }
+            }
+        }
+    }
+
+    private static class CommitRequest {
+
+        private final String sessionId;
+        private final String name;
+        private final String email;
+        private final String message;
+        private final TimeZone timeZone;
+        private final Date when;
+        private final Map<String, ObjectId> content;
+        private final Set<String> paths = new HashSet<String>();
+
+        private final CountDownLatch latch = new CountDownLatch( 1 );
+        private volatile RuntimeException failure = null;
+
+        CommitRequest( final String sessionId,
+                       final String name,
+                       final String email,
+                       final String message,
+                       final TimeZone timeZone,
+                       final Date when,
+                       final Map<String, ObjectId> content ) {
+            this.sessionId = sessionId;
+            this.name = name;
+            this.email = email;
+            this.message = message;
+            this.timeZone = timeZone;
+            this.when = when;
+            this.content = content;
+            for ( final String path : content.keySet() ) {
+                paths.add( normalize( path ) );
+            }
+        }
+
+        boolean owns( final DiffEntry entry ) {
+            return owns( entry.getNewPath() ) || owns( entry.getOldPath() );
+        }
+
+        private boolean owns( final String diffPath ) {
+            for ( final String path : paths ) {
+                if ( diffPath.equals( path ) || diffPath.startsWith( path + "/" ) ) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void done( final RuntimeException failure ) {
+            this.failure = failure;
+            latch.countDown();
+        }
+
+        void await() {
+            boolean interrupted = false;
+            while ( true ) {
+                try {
+                    latch.await();
+                    break;
+                } catch ( final InterruptedException e ) {
+                    interrupted = true;
+                }
+            }
+            if ( interrupted ) {
+                Thread.currentThread().interrupt();
+            }
+            if ( failure != null ) {
+                throw failure;
+            }
+        }
+
+        private static String normalize( final String path ) {
+            String result = path;
+            while ( result.startsWith( "/" ) ) {
+                result = result.substring( 1 );
+            }
+            while ( result.endsWith( "/" ) ) {
+                result = result.substring( 0, result.length() - 1 );
+            }
+            return result;
+        }
+    }
+}
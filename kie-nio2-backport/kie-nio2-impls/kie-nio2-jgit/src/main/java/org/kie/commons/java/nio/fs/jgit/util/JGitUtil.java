@@ -26,11 +26,9 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.TimeZone;
 
 import org.eclipse.jgit.api.CreateBranchCommand;
@@ -42,9 +40,6 @@ import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.api.errors.InvalidRemoteException;
 import org.eclipse.jgit.api.errors.JGitInternalException;
 import org.eclipse.jgit.diff.DiffEntry;
-import org.eclipse.jgit.dircache.DirCache;
-import org.eclipse.jgit.dircache.DirCacheEditor;
-import org.eclipse.jgit.dircache.DirCacheEntry;
 import org.eclipse.jgit.internal.JGitText;
 import org.eclipse.jgit.lib.CommitBuilder;
 import org.eclipse.jgit.lib.Constants;
@@ -60,14 +55,12 @@ import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.RepositoryCache;
 import org.eclipse.jgit.lib.StoredConfig;
 import org.eclipse.jgit.revwalk.RevCommit;
-import org.eclipse.jgit.revwalk.RevObject;
 import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.storage.file.FileRepository;
 import org.eclipse.jgit.transport.CredentialsProvider;
 import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
-import org.eclipse.jgit.treewalk.TreeWalk;
-import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.util.TemporaryBuffer;
 import org.kie.commons.data.Pair;
 import org.kie.commons.java.nio.IOException;
 import org.kie.commons.java.nio.base.FileTimeImpl;
@@ -87,7 +80,6 @@ import static java.util.Collections.*;
 import static org.apache.commons.io.FileUtils.*;
 import static org.eclipse.jgit.lib.Constants.*;
 import static org.eclipse.jgit.lib.FileMode.*;
-import static org.eclipse.jgit.treewalk.filter.PathFilterGroup.*;
 import static org.eclipse.jgit.util.FS.*;
 import static org.kie.commons.data.Pair.*;
 import static org.kie.commons.validation.Preconditions.*;
@@ -132,37 +124,29 @@ public final class JGitUtil {
 
         final String gitPath = fixPath( path );
 
-        RevWalk rw = null;
-        TreeWalk tw = null;
         try {
-            final ObjectId tree = git.getRepository().resolve( treeRef + "^{tree}" );
-            rw = new RevWalk( git.getRepository() );
-            tw = new TreeWalk( git.getRepository() );
-            tw.setFilter( createFromStrings( singleton( gitPath ) ) );
-            tw.reset( tree );
-            while ( tw.next() ) {
-                if ( tw.isSubtree() && !gitPath.equals( tw.getPathString() ) ) {
-                    tw.enterSubtree();
-                    continue;
-                }
-                final ObjectId entid = tw.getObjectId( 0 );
-                final FileMode entmode = tw.getFileMode( 0 );
-                final RevObject ro = rw.lookupAny( entid, entmode.getObjectType() );
-                rw.parseBody( ro );
-                final ObjectLoader ldr = git.getRepository().open( ro.getId(), Constants.OBJ_BLOB );
+            final TreeLookupCache.PathEntry entry = lookupPath( git, treeRef, gitPath );
+            if ( entry != null && !entry.isTree() ) {
+                final ObjectLoader ldr = git.getRepository().open( entry.getObjectId(), Constants.OBJ_BLOB );
                 return ldr.openStream();
             }
         } catch ( final Throwable t ) {
             throw new NoSuchFileException( "Can't find '" + gitPath + "' in tree '" + treeRef + "'" );
-        } finally {
-            if ( rw != null ) {
-                rw.dispose();
-            }
-            if ( tw != null ) {
-                tw.release();
-            }
         }
-        throw new NoSuchFileException( "" );
+        throw new NoSuchFileException( "Can't find '" + gitPath + "' in tree '" + treeRef + "'" );
+    }
+
+    /**
+     * Resolves only the head of <code>treeRef</code>; the path itself is looked up through the shared {@link TreeLookupCache}.
+     */
+    private static TreeLookupCache.PathEntry lookupPath( final Git git,
+                                                         final String treeRef,
+                                                         final String gitPath ) throws java.io.IOException {
+        final ObjectId commitId = git.getRepository().resolve( treeRef );
+        if ( commitId == null ) {
+            return null;
+        }
+        return TreeLookupCache.getInstance().lookup( git.getRepository(), commitId, gitPath );
     }
 
     private static String fixPath( final String path ) {
@@ -253,6 +237,99 @@ public final class JGitUtil {
         }
     }
 
+    /**
+     * Brings the given branches of the origin to the given commits, without a full ref
+     * negotiation: branches already at their commit are skipped, commits already in the local
+     * object database only move refs, and only the remaining branches are fetched.
+     * <p/>
+     * Announcements may arrive out of order, so a branch only ever moves forward: a commit the
+     * local branch already contains is ignored, and a commit that diverged from it falls back
+     * to a full sync.
+     * @param refs commit of each branch, by short branch name; all refs are synced when empty
+     */
+    public static void syncRepository( final Git git,
+                                       final CredentialsProvider credentialsProvider,
+                                       final String origin,
+                                       final boolean force,
+                                       final Map<String, String> refs )
+            throws InvalidRemoteException {
+        if ( refs == null || refs.isEmpty() || origin == null || origin.isEmpty() ) {
+            syncRepository( git, credentialsProvider, origin, force );
+            return;
+        }
+
+        final Repository repository = git.getRepository();
+        final List<RefSpec> missing = new ArrayList<RefSpec>();
+        try {
+            for ( final Map.Entry<String, String> ref : refs.entrySet() ) {
+                final ObjectId commit = ObjectId.fromString( ref.getValue() );
+                final ObjectId local = resolveObjectId( git, R_HEADS + ref.getKey() );
+                if ( commit.equals( local ) ) {
+                    continue;
+                }
+                if ( !repository.hasObject( commit ) ) {
+                    missing.add( new RefSpec( "+" + R_HEADS + ref.getKey() + ":" + R_REMOTES + "upstream/" + ref.getKey() ) );
+                } else if ( local == null || isAncestor( repository, local, commit ) ) {
+                    updateRef( repository, R_REMOTES + "upstream/" + ref.getKey(), commit );
+                } else if ( !isAncestor( repository, commit, local ) ) {
+                    // diverged from the local branch, let the origin decide
+                    syncRepository( git, credentialsProvider, origin, force );
+                    return;
+                }
+                // otherwise a stale announcement, already contained in the local branch
+            }
+
+            if ( !missing.isEmpty() ) {
+                final StoredConfig config = repository.getConfig();
+                config.setString( "remote", "upstream", "url", origin );
+                config.save();
+
+                git.fetch()
+                        .setCredentialsProvider( credentialsProvider )
+                        .setRefSpecs( missing )
+                        .setRemote( origin )
+                        .call();
+            }
+
+            if ( refs.containsKey( "master" ) ) {
+                final ObjectId upstream = resolveObjectId( git, R_REMOTES + "upstream/master" );
+                final ObjectId local = resolveObjectId( git, R_HEADS + "master" );
+                if ( upstream != null && !upstream.equals( local ) && ( local == null || !isAncestor( repository, upstream, local ) ) ) {
+                    git.branchCreate()
+                            .setName( "master" )
+                            .setUpstreamMode( CreateBranchCommand.SetupUpstreamMode.SET_UPSTREAM )
+                            .setStartPoint( "upstream/master" )
+                            .setForce( true )
+                            .call();
+                }
+            }
+        } catch ( final InvalidRemoteException e ) {
+            throw e;
+        } catch ( final Exception ex ) {
+            throw new RuntimeException( ex );
+        }
+    }
+
+    private static boolean isAncestor( final Repository repository,
+                                       final ObjectId ancestor,
+                                       final ObjectId commit ) throws java.io.IOException {
+        final RevWalk revWalk = new RevWalk( repository );
+        try {
+            return revWalk.isMergedInto( revWalk.parseCommit( ancestor ), revWalk.parseCommit( commit ) );
+        } finally {
+            revWalk.release();
+        }
+    }
+
+    private static void updateRef( final Repository repository,
+                                   final String refName,
+                                   final ObjectId commit ) throws java.io.IOException {
+        final RefUpdate update = repository.updateRef( refName );
+        update.setNewObjectId( commit );
+        update.setForceUpdate( true );
+        update.update();
+    }
+
     public static void syncRepository( final Git git,
                                        final CredentialsProvider credentialsProvider,
                                        final String origin,
@@ -305,7 +382,7 @@ public final class JGitUtil {
                                final TimeZone timeZone,
                                final Date when,
                                final boolean amend ) {
-        commit( path, sessionId, name, email, message, timeZone, when, amend, new HashMap<String, File>() {{
+        commitBlobs( path, sessionId, name, email, message, timeZone, when, amend, new HashMap<String, ObjectId>() {{
             put( path.getPath(), null );
         }} );
     }
@@ -347,15 +424,29 @@ public final class JGitUtil {
                                final Date when,
                                final boolean amend,
                                final Map<String, File> content ) {
+        commitBlobs( path, sessionId, name, email, message, timeZone, when, amend, insertBlobs( path.getFileSystem().gitRepo(), content ) );
+    }
+
+    public static void commitBlobs( final JGitPathImpl path,
+                                    final String sessionId,
+                                    final String name,
+                                    final String email,
+                                    final String message,
+                                    final TimeZone timeZone,
+                                    final Date when,
+                                    final boolean amend,
+                                    final Map<String, ObjectId> content ) {
 
         final Git git = path.getFileSystem().gitRepo();
         final String branchName = path.getRefTree();
         final ObjectId oldHead = JGitUtil.getTreeRefObjectId( path.getFileSystem().gitRepo().getRepository(), branchName );
 
-        commit( git, branchName, name, email, message, timeZone, when, amend, content );
+        commitBlobs( git, branchName, name, email, message, timeZone, when, amend, content );
 
         final ObjectId newHead = JGitUtil.getTreeRefObjectId( path.getFileSystem().gitRepo().getRepository(), branchName );
 
+        path.getFileSystem().getHistoryIndex().update( branchName );
+
         notifyDiffs( path.getFileSystem(), branchName, sessionId, name, oldHead, newHead );
     }
 
@@ -368,16 +459,30 @@ public final class JGitUtil {
                                final Date when,
                                final boolean amend,
                                final Map<String, File> content ) {
+        commitBlobs( git, branchName, name, email, message, timeZone, when, amend, insertBlobs( git, content ) );
+    }
+
+    /**
+     * Commits content already stored in the object database; a <code>null</code> blob id deletes the path.
+     */
+    public static void commitBlobs( final Git git,
+                                    final String branchName,
+                                    final String name,
+                                    final String email,
+                                    final String message,
+                                    final TimeZone timeZone,
+                                    final Date when,
+                                    final boolean amend,
+                                    final Map<String, ObjectId> content ) {
 
         final PersonIdent author = buildPersonIdent( git, name, email, timeZone, when );
 
         try {
             final ObjectInserter odi = git.getRepository().newObjectInserter();
             try {
-                // Create the in-memory index of the new/updated issue.
+                // Rewrite only the trees along the changed paths
                 final ObjectId headId = git.getRepository().resolve( branchName + "^{commit}" );
-                final DirCache index = createTemporaryIndex( git, headId, content );
-                final ObjectId indexTreeId = index.writeTree( odi );
+                final ObjectId indexTreeId = buildTree( git, odi, headId, content );
 
                 // Create a commit object
                 final CommitBuilder commit = new CommitBuilder();
@@ -405,33 +510,62 @@ public final class JGitUtil {
                 final ObjectId commitId = odi.insert( commit );
                 odi.flush();
 
+                updateBranch( git, branchName, headId, commitId );
+            } finally {
+                odi.release();
+            }
+        } catch ( final Throwable t ) {
+            throw new RuntimeException( t );
+        }
+    }
+
+    /**
+     * Replaces every commit made on the branch after <code>baseCommitId</code> by a single commit
+     * holding the current branch tree.
+     */
+    public static void squash( final Git git,
+                               final String branchName,
+                               final ObjectId baseCommitId,
+                               final String name,
+                               final String email,
+                               final String message,
+                               final TimeZone timeZone,
+                               final Date when ) {
+        checkNotNull( "git", git );
+        checkNotEmpty( "branchName", branchName );
+
+        final PersonIdent author = buildPersonIdent( git, name, email, timeZone, when );
+
+        try {
+            final ObjectId headId = git.getRepository().resolve( branchName + "^{commit}" );
+            if ( headId == null || headId.equals( baseCommitId ) ) {
+                return;
+            }
+
+            final ObjectInserter odi = git.getRepository().newObjectInserter();
+            try {
                 final RevWalk revWalk = new RevWalk( git.getRepository() );
+                final ObjectId treeId;
                 try {
-                    final RevCommit revCommit = revWalk.parseCommit( commitId );
-                    final RefUpdate ru = git.getRepository().updateRef( "refs/heads/" + branchName );
-                    if ( headId == null ) {
-                        ru.setExpectedOldObjectId( ObjectId.zeroId() );
-                    } else {
-                        ru.setExpectedOldObjectId( headId );
-                    }
-                    ru.setNewObjectId( commitId );
-                    ru.setRefLogMessage( "commit: " + revCommit.getShortMessage(), false );
-                    final RefUpdate.Result rc = ru.forceUpdate();
-                    switch ( rc ) {
-                        case NEW:
-                        case FORCED:
-                        case FAST_FORWARD:
-                            break;
-                        case REJECTED:
-                        case LOCK_FAILURE:
-                            throw new ConcurrentRefUpdateException( JGitText.get().couldNotLockHEAD, ru.getRef(), rc );
-                        default:
-                            throw new JGitInternalException( MessageFormat.format( JGitText.get().updatingRefFailed, Constants.HEAD, commitId.toString(), rc ) );
-                    }
-
+                    treeId = revWalk.parseCommit( headId ).getTree().getId();
                 } finally {
                     revWalk.release();
                 }
+
+                final CommitBuilder commit = new CommitBuilder();
+                commit.setAuthor( author );
+                commit.setCommitter( author );
+                commit.setEncoding( Constants.CHARACTER_ENCODING );
+                commit.setMessage( message );
+                if ( baseCommitId != null ) {
+                    commit.setParentId( baseCommitId );
+                }
+                commit.setTreeId( treeId );
+
+                final ObjectId commitId = odi.insert( commit );
+                odi.flush();
+
+                updateBranch( git, branchName, headId, commitId );
             } finally {
                 odi.release();
             }
@@ -440,114 +574,148 @@ public final class JGitUtil {
         }
     }
 
-    private static PersonIdent buildPersonIdent( final Git git,
-                                                 final String name,
-                                                 final String email,
-                                                 final TimeZone timeZone,
-                                                 final Date when ) {
-        final TimeZone tz = timeZone == null ? TimeZone.getDefault() : timeZone;
-
-        if ( name != null ) {
-            if ( when != null ) {
-                return new PersonIdent( name, email, when, tz );
+    private static void updateBranch( final Git git,
+                                      final String branchName,
+                                      final ObjectId headId,
+                                      final ObjectId commitId ) throws java.io.IOException, ConcurrentRefUpdateException {
+        final RevWalk revWalk = new RevWalk( git.getRepository() );
+        try {
+            final RevCommit revCommit = revWalk.parseCommit( commitId );
+            final RefUpdate ru = git.getRepository().updateRef( "refs/heads/" + branchName );
+            if ( headId == null ) {
+                ru.setExpectedOldObjectId( ObjectId.zeroId() );
             } else {
-                return new PersonIdent( name, email );
+                ru.setExpectedOldObjectId( headId );
+            }
+            ru.setNewObjectId( commitId );
+            ru.setRefLogMessage( "commit: " + revCommit.getShortMessage(), false );
+            final RefUpdate.Result rc = ru.forceUpdate();
+            switch ( rc ) {
+                case NEW:
+                case FORCED:
+                case FAST_FORWARD:
+                    break;
+                case REJECTED:
+                case LOCK_FAILURE:
+                    throw new ConcurrentRefUpdateException( JGitText.get().couldNotLockHEAD, ru.getRef(), rc );
+                default:
+                    throw new JGitInternalException( MessageFormat.format( JGitText.get().updatingRefFailed, Constants.HEAD, commitId.toString(), rc ) );
             }
+        } finally {
+            revWalk.release();
         }
-        return new PersonIdent( git.getRepository() );
     }
 
     /**
-     * Creates an in-memory index of the issue change.
+     * Stores the given stream as a blob, without any intermediate copy.
      */
-    private static DirCache createTemporaryIndex( final Git git,
-                                                  final ObjectId headId,
-                                                  final Map<String, File> content ) {
-
-        final Map<String, File> paths = new HashMap<String, File>( content.size() );
-        final Set<String> path2delete = new HashSet<String>();
+    public static ObjectId insertBlob( final Git git,
+                                       final InputStream content,
+                                       final long length ) {
+        checkNotNull( "git", git );
+        checkNotNull( "content", content );
 
-        final DirCache inCoreIndex = DirCache.newInCore();
         final ObjectInserter inserter = git.getRepository().newObjectInserter();
-        final DirCacheEditor editor = inCoreIndex.editor();
+        try {
+            final ObjectId blobId = inserter.insert( Constants.OBJ_BLOB, length, content );
+            inserter.flush();
+            return blobId;
+        } catch ( final java.io.IOException e ) {
+            throw new IOException( e );
+        } finally {
+            inserter.release();
+        }
+    }
 
+    public static ObjectId insertBlob( final Git git,
+                                       final TemporaryBuffer buffer ) {
+        checkNotNull( "buffer", buffer );
+        try {
+            final InputStream inputStream = buffer.openInputStream();
+            try {
+                return insertBlob( git, inputStream, buffer.length() );
+            } finally {
+                inputStream.close();
+            }
+        } catch ( final java.io.IOException e ) {
+            throw new IOException( e );
+        }
+    }
+
+    public static ObjectId insertBlob( final Git git,
+                                       final TemporaryBufferChannel buffer ) {
+        checkNotNull( "buffer", buffer );
+        try {
+            final InputStream inputStream = buffer.openInputStream();
+            try {
+                return insertBlob( git, inputStream, buffer.length() );
+            } finally {
+                inputStream.close();
+            }
+        } catch ( final java.io.IOException e ) {
+            throw new IOException( e );
+        }
+    }
+
+    private static Map<String, ObjectId> insertBlobs( final Git git,
+                                                      final Map<String, File> content ) {
+        final Map<String, ObjectId> result = new HashMap<String, ObjectId>( content.size() );
+        final ObjectInserter inserter = git.getRepository().newObjectInserter();
         try {
             for ( final Map.Entry<String, File> pathAndContent : content.entrySet() ) {
-                final String gPath = fixPath( pathAndContent.getKey() );
-                paths.put( gPath, pathAndContent.getValue() );
                 if ( pathAndContent.getValue() == null ) {
-                    final TreeWalk treeWalk = new TreeWalk( git.getRepository() );
-                    treeWalk.addTree( new RevWalk( git.getRepository() ).parseTree( headId ) );
-                    treeWalk.setRecursive( true );
-                    treeWalk.setFilter( PathFilter.create( gPath ) );
-
-                    while ( treeWalk.next() ) {
-                        path2delete.add( treeWalk.getPathString() );
-                    }
-                    treeWalk.release();
+                    result.put( pathAndContent.getKey(), null );
+                    continue;
+                }
+                final InputStream inputStream = new FileInputStream( pathAndContent.getValue() );
+                try {
+                    result.put( pathAndContent.getKey(), inserter.insert( Constants.OBJ_BLOB, pathAndContent.getValue().length(), inputStream ) );
+                } finally {
+                    inputStream.close();
                 }
             }
+            inserter.flush();
+        } catch ( final java.io.IOException e ) {
+            throw new IOException( e );
+        } finally {
+            inserter.release();
+        }
+        return result;
+    }
 
-            for ( final Map.Entry<String, File> pathAndContent : paths.entrySet() ) {
-                if ( pathAndContent.getValue() != null ) {
-                    editor.add( new DirCacheEditor.PathEdit( new DirCacheEntry( pathAndContent.getKey() ) ) {
-                        @Override
-                        public void apply( final DirCacheEntry ent ) {
-                            ent.setLength( pathAndContent.getValue().length() );
-                            ent.setLastModified( pathAndContent.getValue().lastModified() );
-                            ent.setFileMode( REGULAR_FILE );
-
-                            try {
-                                final InputStream inputStream = new FileInputStream( pathAndContent.getValue() );
-                                try {
-                                    final ObjectId objectId = inserter.insert( Constants.OBJ_BLOB, pathAndContent.getValue().length(), inputStream );
-                                    ent.setObjectId( objectId );
-                                } finally {
-                                    inputStream.close();
-                                }
-                            } catch ( final Exception ex ) {
-                                throw new RuntimeException( ex );
-                            }
-                        }
-                    } );
-                }
+    private static PersonIdent buildPersonIdent( final Git git,
+                                                 final String name,
+                                                 final String email,
+                                                 final TimeZone timeZone,
+                                                 final Date when ) {
+        final TimeZone tz = timeZone == null ? TimeZone.getDefault() : timeZone;
+
+        if ( name != null ) {
+            if ( when != null ) {
+                return new PersonIdent( name, email, when, tz );
+            } else {
+                return new PersonIdent( name, email );
             }
+        }
+        return new PersonIdent( git.getRepository() );
+    }
 
+    private static ObjectId buildTree( final Git git,
+                                       final ObjectInserter inserter,
+                                       final ObjectId headId,
+                                       final Map<String, ObjectId> content ) throws java.io.IOException {
+        final ObjectReader reader = git.getRepository().newObjectReader();
+        try {
+            final ObjectId baseTreeId;
             if ( headId != null ) {
-                final TreeWalk treeWalk = new TreeWalk( git.getRepository() );
-                final int hIdx = treeWalk.addTree( new RevWalk( git.getRepository() ).parseTree( headId ) );
-                treeWalk.setRecursive( true );
-
-                while ( treeWalk.next() ) {
-                    final String walkPath = treeWalk.getPathString();
-                    final CanonicalTreeParser hTree = treeWalk.getTree( hIdx, CanonicalTreeParser.class );
-
-                    if ( paths.get( walkPath ) == null && !path2delete.contains( walkPath ) ) {
-                        final DirCacheEntry dcEntry = new DirCacheEntry( walkPath );
-                        final ObjectId _objectId = hTree.getEntryObjectId();
-                        final FileMode _fileMode = hTree.getEntryFileMode();
-
-                        // add to temporary in-core index
-                        editor.add( new DirCacheEditor.PathEdit( dcEntry ) {
-                            @Override
-                            public void apply( final DirCacheEntry ent ) {
-                                ent.setObjectId( _objectId );
-                                ent.setFileMode( _fileMode );
-                            }
-                        } );
-                    }
-                }
-                treeWalk.release();
+                baseTreeId = new RevWalk( reader ).parseCommit( headId ).getTree().getId();
+            } else {
+                baseTreeId = null;
             }
-
-            editor.finish();
-        } catch ( Exception e ) {
-            throw new RuntimeException( e );
+            return new TreeRewriter( reader, inserter ).rewrite( baseTreeId, content );
         } finally {
-            inserter.release();
+            reader.release();
         }
-
-        return inCoreIndex;
     }
 
     public static ObjectId resolveObjectId( final Git git,
@@ -594,6 +762,10 @@ public final class JGitUtil {
         }
     }
 
+    /**
+     * Resolves the path with a single tree lookup; version history (and the timestamps derived
+     * from it) is only walked when first requested.
+     */
     public static VersionAttributes buildVersionAttributes( final JGitFileSystem fs,
                                                             final String branchName,
                                                             final String path ) {
@@ -603,55 +775,49 @@ public final class JGitUtil {
             throw new NoSuchFileException( path );
         }
 
-        final String gPath = fixPath( path );
+        return new LazyVersionAttributes( fs, branchName, path, pathInfo );
+    }
 
-        final ObjectId id = resolveObjectId( fs.gitRepo(), branchName );
+    public static List<VersionRecord> buildVersionRecords( final JGitFileSystem fs,
+                                                           final String branchName,
+                                                           final String path,
+                                                           final int maxCount ) {
+        final String gPath = fixPath( path );
 
         final List<VersionRecord> records = new ArrayList<VersionRecord>();
 
-        if ( id != null ) {
+        final List<ObjectId> indexed = fs.getHistoryIndex().history( branchName, gPath );
+        if ( indexed != null ) {
+            final int from = maxCount > 0 ? Math.max( 0, indexed.size() - maxCount ) : 0;
+            final RevWalk revWalk = new RevWalk( fs.gitRepo().getRepository() );
             try {
-                final LogCommand logCommand = fs.gitRepo().log().add( id );
-                if ( !gPath.isEmpty() ) {
-                    logCommand.addPath( gPath );
+                for ( final ObjectId commitId : indexed.subList( from, indexed.size() ) ) {
+                    records.add( buildVersionRecord( fs, path, revWalk.parseCommit( commitId ) ) );
                 }
+            } catch ( final java.io.IOException e ) {
+                throw new IOException( e );
+            } finally {
+                revWalk.release();
+            }
+        } else {
+            final ObjectId id = resolveObjectId( fs.gitRepo(), branchName );
 
-                for ( final RevCommit commit : logCommand.call() ) {
-
-                    records.add( new VersionRecord() {
-                        @Override
-                        public String id() {
-                            return commit.name();
-                        }
-
-                        @Override
-                        public String author() {
-                            return commit.getCommitterIdent().getName();
-                        }
-
-                        @Override
-                        public String email() {
-                            return commit.getCommitterIdent().getEmailAddress();
-                        }
-
-                        @Override
-                        public String comment() {
-                            return commit.getFullMessage();
-                        }
-
-                        @Override
-                        public Date date() {
-                            return commit.getCommitterIdent().getWhen();
-                        }
+            if ( id != null ) {
+                try {
+                    final LogCommand logCommand = fs.gitRepo().log().add( id );
+                    if ( !gPath.isEmpty() ) {
+                        logCommand.addPath( gPath );
+                    }
+                    if ( maxCount > 0 ) {
+                        logCommand.setMaxCount( maxCount );
+                    }
 
-                        @Override
-                        public String uri() {
-                            return fs.getPath( commit.name(), path ).toUri().toString();
-                        }
-                    } );
+                    for ( final RevCommit commit : logCommand.call() ) {
+                        records.add( buildVersionRecord( fs, path, commit ) );
+                    }
+                } catch ( Exception e ) {
+                    throw new RuntimeException( e );
                 }
-            } catch ( Exception e ) {
-                throw new RuntimeException( e );
             }
         }
 
@@ -663,68 +829,136 @@ public final class JGitUtil {
             }
         } );
 
-        return new VersionAttributes() {
-            @Override
-            public VersionHistory history() {
-                return new VersionHistory() {
-                    @Override
-                    public List<VersionRecord> records() {
-                        return records;
-                    }
-                };
-            }
+        return records;
+    }
 
+    private static VersionRecord buildVersionRecord( final JGitFileSystem fs,
+                                                     final String path,
+                                                     final RevCommit commit ) {
+        return new VersionRecord() {
             @Override
-            public FileTime lastModifiedTime() {
-                if ( records.size() > 0 ) {
-                    return new FileTimeImpl( records.get( records.size() - 1 ).date().getTime() );
-                }
-                return null;
+            public String id() {
+                return commit.name();
             }
 
             @Override
-            public FileTime lastAccessTime() {
-                return null;
+            public String author() {
+                return commit.getCommitterIdent().getName();
             }
 
             @Override
-            public FileTime creationTime() {
-                if ( records.size() > 0 ) {
-                    return new FileTimeImpl( records.get( 0 ).date().getTime() );
-                }
-                return null;
+            public String email() {
+                return commit.getCommitterIdent().getEmailAddress();
             }
 
             @Override
-            public boolean isRegularFile() {
-                return pathInfo.getPathType().equals( PathType.FILE );
+            public String comment() {
+                return commit.getFullMessage();
             }
 
             @Override
-            public boolean isDirectory() {
-                return pathInfo.getPathType().equals( PathType.DIRECTORY );
+            public Date date() {
+                return commit.getCommitterIdent().getWhen();
             }
 
             @Override
-            public boolean isSymbolicLink() {
-                return false;
+            public String uri() {
+                return fs.getPath( commit.name(), path ).toUri().toString();
             }
+        };
+    }
 
-            @Override
-            public boolean isOther() {
-                return false;
+    private static class LazyVersionAttributes implements VersionAttributes {
+
+        private final JGitFileSystem fs;
+        private final String branchName;
+        private final String path;
+        private final JGitPathInfo pathInfo;
+
+        private List<VersionRecord> records = null;
+        private FileTime lastModifiedTime = null;
+
+        LazyVersionAttributes( final JGitFileSystem fs,
+                               final String branchName,
+                               final String path,
+                               final JGitPathInfo pathInfo ) {
+            this.fs = fs;
+            this.branchName = branchName;
+            this.path = path;
+            this.pathInfo = pathInfo;
+        }
+
+        private synchronized List<VersionRecord> records() {
+            if ( records == null ) {
+                records = buildVersionRecords( fs, branchName, path, -1 );
             }
+            return records;
+        }
 
-            @Override
-            public long size() {
-                return pathInfo.getSize();
+        @Override
+        public VersionHistory history() {
+            return new VersionHistory() {
+                @Override
+                public List<VersionRecord> records() {
+                    return LazyVersionAttributes.this.records();
+                }
+            };
+        }
+
+        @Override
+        public synchronized FileTime lastModifiedTime() {
+            if ( lastModifiedTime == null ) {
+                final List<VersionRecord> latest = records != null ? records : buildVersionRecords( fs, branchName, path, 1 );
+                if ( latest.size() > 0 ) {
+                    lastModifiedTime = new FileTimeImpl( latest.get( latest.size() - 1 ).date().getTime() );
+                }
             }
+            return lastModifiedTime;
+        }
 
-            @Override
-            public Object fileKey() {
-                return pathInfo.getObjectId() == null ? null : pathInfo.getObjectId().toString();
+        @Override
+        public FileTime lastAccessTime() {
+            return null;
+        }
+
+        @Override
+        public FileTime creationTime() {
+            final List<VersionRecord> history = records();
+            if ( history.size() > 0 ) {
+                return new FileTimeImpl( history.get( 0 ).date().getTime() );
             }
-        };
+            return null;
+        }
+
+        @Override
+        public boolean isRegularFile() {
+            return pathInfo.getPathType().equals( PathType.FILE );
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return pathInfo.getPathType().equals( PathType.DIRECTORY );
+        }
+
+        @Override
+        public boolean isSymbolicLink() {
+            return false;
+        }
+
+        @Override
+        public boolean isOther() {
+            return false;
+        }
+
+        @Override
+        public long size() {
+            return pathInfo.getSize();
+        }
+
+        @Override
+        public Object fileKey() {
+            return pathInfo.getObjectId() == null ? null : pathInfo.getObjectId().toString();
+        }
     }
 
     public static void createBranch( final Git git,
@@ -762,31 +996,16 @@ public final class JGitUtil {
             return newPair( PathType.DIRECTORY, null );
         }
 
-        TreeWalk tw = null;
         try {
-            final ObjectId tree = git.getRepository().resolve( branchName + "^{tree}" );
-            tw = new TreeWalk( git.getRepository() );
-            tw.setFilter( PathFilter.create( gitPath ) );
-            tw.reset( tree );
-            while ( tw.next() ) {
-                if ( tw.getPathString().equals( gitPath ) ) {
-                    if ( tw.getFileMode( 0 ).equals( FileMode.TYPE_TREE ) ) {
-                        return newPair( PathType.DIRECTORY, tw.getObjectId( 0 ) );
-                    } else if ( tw.getFileMode( 0 ).equals( FileMode.TYPE_FILE ) ||
-                            tw.getFileMode( 0 ).equals( FileMode.EXECUTABLE_FILE ) ||
-                            tw.getFileMode( 0 ).equals( FileMode.REGULAR_FILE ) ) {
-                        return newPair( PathType.FILE, tw.getObjectId( 0 ) );
-                    }
-                }
-                if ( tw.isSubtree() ) {
-                    tw.enterSubtree();
+            final TreeLookupCache.PathEntry entry = lookupPath( git, branchName, gitPath );
+            if ( entry != null ) {
+                if ( entry.isTree() ) {
+                    return newPair( PathType.DIRECTORY, entry.getObjectId() );
+                } else if ( entry.isFile() ) {
+                    return newPair( PathType.FILE, entry.getObjectId() );
                 }
             }
         } catch ( final Throwable ignored ) {
-        } finally {
-            if ( tw != null ) {
-                tw.release();
-            }
         }
         return newPair( PathType.NOT_FOUND, null );
     }
@@ -804,29 +1023,21 @@ public final class JGitUtil {
             return new JGitPathInfo( null, "/", TREE );
         }
 
-        TreeWalk tw = null;
+        ObjectReader reader = null;
         try {
-            final ObjectId tree = git.getRepository().resolve( branchName + "^{tree}" );
-            tw = new TreeWalk( git.getRepository() );
-            tw.setFilter( PathFilter.create( gitPath ) );
-            tw.reset( tree );
-            while ( tw.next() ) {
-                if ( tw.getPathString().equals( gitPath ) ) {
-                    if ( tw.getFileMode( 0 ).equals( TREE ) ) {
-                        return new JGitPathInfo( tw.getObjectId( 0 ), tw.getPathString(), TREE );
-                    } else if ( tw.getFileMode( 0 ).equals( REGULAR_FILE ) || tw.getFileMode( 0 ).equals( EXECUTABLE_FILE ) ) {
-                        final long size = tw.getObjectReader().getObjectSize( tw.getObjectId( 0 ), OBJ_BLOB );
-                        return new JGitPathInfo( tw.getObjectId( 0 ), tw.getPathString(), REGULAR_FILE, size );
-                    }
-                }
-                if ( tw.isSubtree() ) {
-                    tw.enterSubtree();
+            final TreeLookupCache.PathEntry entry = lookupPath( git, branchName, gitPath );
+            if ( entry != null ) {
+                if ( entry.isTree() ) {
+                    return new JGitPathInfo( entry.getObjectId(), entry.getPath(), TREE );
+                } else if ( entry.isFile() ) {
+                    reader = git.getRepository().newObjectReader();
+                    return new JGitPathInfo( entry.getObjectId(), entry.getPath(), REGULAR_FILE, entry.getSize( reader ) );
                 }
             }
         } catch ( final Throwable ignored ) {
         } finally {
-            if ( tw != null ) {
-                tw.release();
+            if ( reader != null ) {
+                reader.release();
             }
         }
 
@@ -842,35 +1053,15 @@ public final class JGitUtil {
 
         final String gitPath = fixPath( path );
 
-        TreeWalk tw = null;
         final List<JGitPathInfo> result = new ArrayList<JGitPathInfo>();
         try {
-            final ObjectId tree = git.getRepository().resolve( branchName + "^{tree}" );
-            tw = new TreeWalk( git.getRepository() );
-            boolean found = false;
-            if ( gitPath.isEmpty() ) {
-                found = true;
-            } else {
-                tw.setFilter( PathFilter.create( gitPath ) );
-            }
-            tw.reset( tree );
-            while ( tw.next() ) {
-                if ( !found && tw.isSubtree() ) {
-                    tw.enterSubtree();
-                }
-                if ( tw.getPathString().equals( gitPath ) ) {
-                    found = true;
-                    continue;
-                }
-                if ( found ) {
-                    result.add( new JGitPathInfo( tw.getObjectId( 0 ), tw.getPathString(), tw.getFileMode( 0 ) ) );
+            final ObjectId commitId = git.getRepository().resolve( branchName );
+            if ( commitId != null ) {
+                for ( final TreeLookupCache.PathEntry entry : TreeLookupCache.getInstance().list( git.getRepository(), commitId, gitPath ) ) {
+                    result.add( new JGitPathInfo( entry.getObjectId(), entry.getPath(), entry.getFileMode() ) );
                 }
             }
         } catch ( final Throwable ignored ) {
-        } finally {
-            if ( tw != null ) {
-                tw.release();
-            }
         }
 
         return result;
@@ -882,11 +1073,32 @@ public final class JGitUtil {
                                     final String userName,
                                     final ObjectId oldHead,
                                     final ObjectId newHead ) {
+        notifyDiffs( fs, tree, sessionId, userName, getDiff( fs.gitRepo().getRepository(), oldHead, newHead ) );
+    }
+
+    public static void notifyDiffs( final JGitFileSystem fs,
+                                    final String tree,
+                                    final String sessionId,
+                                    final String userName,
+                                    final List<DiffEntry> diff ) {
+
+        final Path root = JGitPathImpl.createRoot( fs, "/", tree + "@" + fs.getName(), false );
+
+        final List<WatchEvent<?>> events = toWatchEvents( fs, tree, sessionId, userName, diff );
+
+        if ( !events.isEmpty() ) {
+            fs.publishEvents( root, events );
+        }
+    }
+
+    public static List<WatchEvent<?>> toWatchEvents( final JGitFileSystem fs,
+                                                     final String tree,
+                                                     final String sessionId,
+                                                     final String userName,
+                                                     final List<DiffEntry> diff ) {
 
         final String host = tree + "@" + fs.getName();
-        final Path root = JGitPathImpl.createRoot( fs, "/", host, false );
 
-        final List<DiffEntry> diff = getDiff( fs.gitRepo().getRepository(), oldHead, newHead );
         final List<WatchEvent<?>> events = new ArrayList<WatchEvent<?>>( diff.size() );
 
         for ( final DiffEntry diffEntry : diff ) {
@@ -955,9 +1167,8 @@ public final class JGitUtil {
                 }
             } );
         }
-        if ( !events.isEmpty() ) {
-            fs.publishEvents( root, events );
-        }
+
+        return events;
     }
 
 //    public static MergeResult mergeBranches( final Git git,
@@ -0,0 +1,454 @@
+/*
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kie.commons.java.nio.fs.jgit.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import static org.kie.commons.validation.Preconditions.*;
+
+/**
+ * On-disk index of the commits that touched each path of a branch, so history and
+ * timestamp queries cost O(history of the path) instead of a full <code>git log</code>.
+ * <p/>
+ * Each branch has an append-only file under <code>$GIT_DIR/kie-history</code>, with one
+ * record per commit (id, commit time and changed paths, including their parent directories).
+ * The index catches up incrementally with the branch head; when the branch was rewritten
+ * (amend, squash) records are rewound to the merge base first. Commits are compared against
+ * their first parent only.
+ * <p/>
+ * Until a branch has been indexed, queries return <code>null</code> and callers are expected
+ * to fall back to walking the log.
+ */
+public class PathHistoryIndex {
+
+    private static final String INDEX_DIR = "kie-history";
+    private static final String INDEX_EXT = ".idx";
+
+    private final Repository repo;
+    private final File indexDir;
+    private final Map<String, BranchIndex> branches = new ConcurrentHashMap<String, BranchIndex>();
+
+    public PathHistoryIndex( final Repository repo ) {
+        this.repo = checkNotNull( "repo", repo );
+        this.indexDir = new File( repo.getDirectory(), INDEX_DIR );
+    }
+
+    /**
+     * Builds (or catches up) the index of the given branches on a daemon thread.
+     */
+    public void buildInBackground( final Collection<String> branchNames ) {
+        final List<BranchIndex> toIndex = new ArrayList<BranchIndex>();
+        for ( final String branchName : branchNames ) {
+            final BranchIndex index = getBranchIndex( branchName );
+            if ( index.buildScheduled.compareAndSet( false, true ) ) {
+                toIndex.add( index );
+            }
+        }
+        if ( toIndex.isEmpty() ) {
+            return;
+        }
+        final Thread thread = new Thread( "history-index-" + repo.getDirectory().getName() ) {
+            @Override
+            public void run() {
+                for ( final BranchIndex index : toIndex ) {
+                    try {
+                        index.update( true );
+                    } catch ( final Exception ignored ) {
+                    } finally {
+                        index.buildScheduled.set( false );
+                    }
+                }
+            }
+        };
+        thread.setDaemon( true );
+        thread.start();
+    }
+
+    /**
+     * Builds (or catches up) the index of the given branch on the calling thread.
+     */
+    public void build( final String branchName ) {
+        getBranchIndex( branchName ).update( true );
+    }
+
+    /**
+     * Brings an already indexed branch up to date with its head; branches not yet indexed are left alone.
+     */
+    public void update( final String branchName ) {
+        final BranchIndex index = getBranchIndex( branchName );
+        if ( index.isIndexed() ) {
+            index.update( false );
+        }
+    }
+
+    /**
+     * @return ids of the commits that touched the path, ordered by commit date (oldest first) as a log
+     * walk would list them; <code>null</code> if the branch is not indexed (yet).
+     */
+    public List<ObjectId> history( final String branchName,
+                                   final String path ) {
+        if ( !isBranch( branchName ) ) {
+            return null;
+        }
+        final BranchIndex index = getBranchIndex( branchName );
+        if ( !index.isIndexed() ) {
+            buildInBackground( Collections.singleton( branchName ) );
+            return null;
+        }
+        return index.query( path );
+    }
+
+    private boolean isBranch( final String branchName ) {
+        try {
+            final Ref ref = repo.getRef( Constants.R_HEADS + branchName );
+            return ref != null && ref.getName().equals( Constants.R_HEADS + branchName );
+        } catch ( final java.io.IOException e ) {
+            return false;
+        }
+    }
+
+    private BranchIndex getBranchIndex( final String branchName ) {
+        BranchIndex index = branches.get( branchName );
+        if ( index == null ) {
+            synchronized ( branches ) {
+                index = branches.get( branchName );
+                if ( index == null ) {
+                    index = new BranchIndex( branchName );
+                    branches.put( branchName, index );
+                }
+            }
+        }
+        return index;
+    }
+
+    private static final Comparator<IndexedCommit> BY_TIME = new Comparator<IndexedCommit>() {
+        @Override
+        public int compare( final IndexedCommit o1,
+                            final IndexedCommit o2 ) {
+            return o1.time < o2.time ? -1 : ( o1.time == o2.time ? 0 : 1 );
+        }
+    };
+
+    private static class IndexedCommit {
+
+        private final ObjectId id;
+        private final long time;
+        private final List<String> paths;
+
+        IndexedCommit( final ObjectId id,
+                       final long time,
+                       final List<String> paths ) {
+            this.id = id;
+            this.time = time;
+            this.paths = paths;
+        }
+    }
+
+    private class BranchIndex {
+
+        private final String branchName;
+        private final File file;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final AtomicBoolean buildScheduled = new AtomicBoolean( false );
+
+        private volatile boolean indexed = false;
+        private final List<IndexedCommit> commits = new ArrayList<IndexedCommit>();
+        private final Map<String, List<IndexedCommit>> byPath = new HashMap<String, List<IndexedCommit>>();
+
+        BranchIndex( final String branchName ) {
+            this.branchName = branchName;
+            this.file = new File( indexDir, encode( branchName ) + INDEX_EXT );
+        }
+
+        boolean isIndexed() {
+            return indexed;
+        }
+
+        List<ObjectId> query( final String path ) {
+            // a running background build holds the lock; callers fall back meanwhile
+            if ( !lock.tryLock() ) {
+                return null;
+            }
+            try {
+                update( false );
+                if ( !indexed ) {
+                    return null;
+                }
+                final List<IndexedCommit> matches;
+                if ( path.isEmpty() ) {
+                    matches = new ArrayList<IndexedCommit>( commits );
+                } else {
+                    final List<IndexedCommit> pathCommits = byPath.get( path );
+                    matches = pathCommits == null ? new ArrayList<IndexedCommit>() : new ArrayList<IndexedCommit>( pathCommits );
+                }
+                // commits are kept in topological order, which differs from date order once histories merge
+                Collections.sort( matches, BY_TIME );
+                final List<ObjectId> result = new ArrayList<ObjectId>( matches.size() );
+                for ( final IndexedCommit commit : matches ) {
+                    result.add( commit.id );
+                }
+                return result;
+            } catch ( final Exception e ) {
+                return null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void update( final boolean build ) {
+            lock.lock();
+            try {
+                if ( !indexed ) {
+                    if ( !load() && !build ) {
+                        return;
+                    }
+                }
+                catchUp();
+                indexed = true;
+            } catch ( final java.io.IOException e ) {
+                clear();
+                file.delete();
+                indexed = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void catchUp() throws java.io.IOException {
+            final ObjectId head = repo.resolve( branchName + "^{commit}" );
+            if ( head == null ) {
+                if ( !commits.isEmpty() ) {
+                    clear();
+                    rewrite();
+                }
+                return;
+            }
+            final ObjectId lastIndexed = commits.isEmpty() ? null : commits.get( commits.size() - 1 ).id;
+            if ( head.equals( lastIndexed ) ) {
+                return;
+            }
+
+            final RevWalk revWalk = new RevWalk( repo );
+            try {
+                boolean rewound = false;
+                if ( lastIndexed != null && !revWalk.isMergedInto( revWalk.parseCommit( lastIndexed ), revWalk.parseCommit( head ) ) ) {
+                    rewind( mergeBase( lastIndexed, head ) );
+                    rewound = true;
+                }
+                revWalk.reset();
+
+                final List<IndexedCommit> newCommits = new ArrayList<IndexedCommit>();
+                revWalk.sort( RevSort.TOPO );
+                revWalk.sort( RevSort.REVERSE, true );
+                revWalk.markStart( revWalk.parseCommit( head ) );
+                if ( !commits.isEmpty() ) {
+                    revWalk.markUninteresting( revWalk.parseCommit( commits.get( commits.size() - 1 ).id ) );
+                }
+                for ( final RevCommit commit : revWalk ) {
+                    final IndexedCommit indexedCommit = new IndexedCommit( commit.copy(), commit.getCommitterIdent().getWhen().getTime(), changedPaths( commit ) );
+                    add( indexedCommit );
+                    newCommits.add( indexedCommit );
+                }
+
+                if ( rewound ) {
+                    rewrite();
+                } else {
+                    append( newCommits );
+                }
+            } finally {
+                revWalk.release();
+            }
+        }
+
+        private ObjectId mergeBase( final ObjectId a,
+                                    final ObjectId b ) throws java.io.IOException {
+            final RevWalk revWalk = new RevWalk( repo );
+            try {
+                revWalk.setRevFilter( RevFilter.MERGE_BASE );
+                revWalk.markStart( revWalk.parseCommit( a ) );
+                revWalk.markStart( revWalk.parseCommit( b ) );
+                final RevCommit base = revWalk.next();
+                return base == null ? null : base.copy();
+            } finally {
+                revWalk.release();
+            }
+        }
+
+        private void rewind( final ObjectId base ) {
+            while ( !commits.isEmpty() && !commits.get( commits.size() - 1 ).id.equals( base ) ) {
+                final IndexedCommit removed = commits.remove( commits.size() - 1 );
+                for ( final String path : removed.paths ) {
+                    final List<IndexedCommit> pathCommits = byPath.get( path );
+                    if ( pathCommits != null ) {
+                        pathCommits.remove( removed );
+                        if ( pathCommits.isEmpty() ) {
+                            byPath.remove( path );
+                        }
+                    }
+                }
+            }
+        }
+
+        private List<String> changedPaths( final RevCommit commit ) throws java.io.IOException {
+            final Set<String> result = new LinkedHashSet<String>();
+            final TreeWalk treeWalk = new TreeWalk( repo );
+            try {
+                treeWalk.setRecursive( true );
+                if ( commit.getParentCount() > 0 ) {
+                    final RevWalk revWalk = new RevWalk( repo );
+                    try {
+                        treeWalk.addTree( revWalk.parseCommit( commit.getParent( 0 ) ).getTree() );
+                    } finally {
+                        revWalk.release();
+                    }
+                    treeWalk.addTree( commit.getTree() );
+                    treeWalk.setFilter( TreeFilter.ANY_DIFF );
+                } else {
+                    treeWalk.addTree( commit.getTree() );
+                }
+                while ( treeWalk.next() ) {
+                    final String path = treeWalk.getPathString();
+                    result.add( path );
+                    int index = path.lastIndexOf( '/' );
+                    while ( index > 0 ) {
+                        if ( !result.add( path.substring( 0, index ) ) ) {
+                            break;
+                        }
+                        index = path.lastIndexOf( '/', index - 1 );
+                    }
+                }
+            } finally {
+                treeWalk.release();
+            }
+            return new ArrayList<String>( result );
+        }
+
+        private void add( final IndexedCommit commit ) {
+            commits.add( commit );
+            for ( final String path : commit.paths ) {
+                List<IndexedCommit> pathCommits = byPath.get( path );
+                if ( pathCommits == null ) {
+                    pathCommits = new ArrayList<IndexedCommit>();
+                    byPath.put( path, pathCommits );
+                }
+                pathCommits.add( commit );
+            }
+        }
+
+        private void clear() {
+            commits.clear();
+            byPath.clear();
+        }
+
+        private boolean load() throws java.io.IOException {
+            if ( !file.exists() ) {
+                return false;
+            }
+            final DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+            try {
+                while ( true ) {
+                    final String id;
+                    try {
+                        id = in.readUTF();
+                    } catch ( final EOFException eof ) {
+                        break;
+                    }
+                    final long time = in.readLong();
+                    final int size = in.readInt();
+                    final List<String> paths = new ArrayList<String>( size );
+                    for ( int i = 0; i < size; i++ ) {
+                        paths.add( in.readUTF() );
+                    }
+                    add( new IndexedCommit( ObjectId.fromString( id ), time, paths ) );
+                }
+            } finally {
+                in.close();
+            }
+            return true;
+        }
+
+        private void append( final List<IndexedCommit> newCommits ) throws java.io.IOException {
+            if ( newCommits.isEmpty() && file.exists() ) {
+                return;
+            }
+            write( newCommits, true );
+        }
+
+        private void rewrite() throws java.io.IOException {
+            write( commits, false );
+        }
+
+        private void write( final List<IndexedCommit> toWrite,
+                            final boolean append ) throws java.io.IOException {
+            if ( !indexDir.exists() && !indexDir.mkdirs() ) {
+                throw new java.io.IOException( "Can't create history index directory " + indexDir );
+            }
+            final DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file, append ) ) );
+            try {
+                for ( final IndexedCommit commit : toWrite ) {
+                    out.writeUTF( commit.id.name() );
+                    out.writeLong( commit.time );
+                    out.writeInt( commit.paths.size() );
+                    for ( final String path : commit.paths ) {
+                        out.writeUTF( path );
+                    }
+                }
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private static String encode( final String branchName ) {
+        try {
+            return URLEncoder.encode( branchName, "UTF-8" );
+        } catch ( final java.io.UnsupportedEncodingException e ) {
+            throw new RuntimeException( e );
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kie.commons.java.nio.fs.jgit.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.kie.commons.java.nio.IOException;
+import org.kie.commons.java.nio.channels.SeekableByteChannel;
+
+import static org.kie.commons.validation.Preconditions.*;
+
+/**
+ * Seekable channel that keeps its content in memory and only spills to a
+ * temporary file once it grows beyond the configured in-core limit.
+ * <p/>
+ * Content stays readable after {@link #close()} so it can be inserted into
+ * the object database; {@link #destroy()} releases the spill file.
+ */
+public class TemporaryBufferChannel implements SeekableByteChannel {
+
+    private static final int INITIAL_CAPACITY = 8192;
+
+    private final int inCoreLimit;
+
+    private byte[] inCore;
+    private File onDiskFile = null;
+    private RandomAccessFile onDisk = null;
+    private FileChannel onDiskChannel = null;
+
+    private long size = 0;
+    private long position = 0;
+    private boolean isOpen = true;
+
+    public TemporaryBufferChannel( final int inCoreLimit ) {
+        checkCondition( "inCoreLimit must be positive", inCoreLimit > 0 );
+        this.inCoreLimit = inCoreLimit;
+        this.inCore = new byte[ Math.min( INITIAL_CAPACITY, inCoreLimit ) ];
+    }
+
+    @Override
+    public long position() throws IOException {
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position( final long newPosition ) throws IOException {
+        checkCondition( "newPosition can't be negative", newPosition >= 0 );
+        this.position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate( final long newSize ) throws IOException {
+        checkCondition( "size can't be negative", newSize >= 0 );
+        if ( newSize < size ) {
+            if ( onDiskChannel != null ) {
+                try {
+                    onDiskChannel.truncate( newSize );
+                } catch ( java.io.IOException e ) {
+                    throw new IOException( e );
+                }
+            } else {
+                Arrays.fill( inCore, (int) newSize, (int) size, (byte) 0 );
+            }
+            size = newSize;
+        }
+        if ( position > newSize ) {
+            position = newSize;
+        }
+        return this;
+    }
+
+    @Override
+    public int read( final ByteBuffer dst ) throws java.io.IOException {
+        checkOpen();
+        if ( position >= size ) {
+            return -1;
+        }
+        if ( onDiskChannel != null ) {
+            final int read = onDiskChannel.read( dst, position );
+            if ( read > 0 ) {
+                position += read;
+            }
+            return read;
+        }
+        final int read = (int) Math.min( dst.remaining(), size - position );
+        dst.put( inCore, (int) position, read );
+        position += read;
+        return read;
+    }
+
+    @Override
+    public int write( final ByteBuffer src ) throws java.io.IOException {
+        checkOpen();
+        final int length = src.remaining();
+        final long end = position + length;
+
+        if ( onDiskChannel == null && end > inCoreLimit ) {
+            spill();
+        }
+
+        if ( onDiskChannel != null ) {
+            long pos = position;
+            while ( src.hasRemaining() ) {
+                pos += onDiskChannel.write( src, pos );
+            }
+        } else {
+            ensureCapacity( (int) end );
+            src.get( inCore, (int) position, length );
+        }
+
+        position = end;
+        if ( end > size ) {
+            size = end;
+        }
+        return length;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return isOpen;
+    }
+
+    @Override
+    public void close() throws java.io.IOException {
+        isOpen = false;
+    }
+
+    /**
+     * @return number of bytes held by this buffer.
+     */
+    public long length() {
+        return size;
+    }
+
+    /**
+     * Opens a stream over the current content, from the first byte up to {@link #length()}.
+     */
+    public InputStream openInputStream() throws java.io.IOException {
+        if ( onDiskChannel == null ) {
+            return new ByteArrayInputStream( inCore, 0, (int) size );
+        }
+        onDiskChannel.force( false );
+        return new FileInputStream( onDiskFile );
+    }
+
+    /**
+     * Releases memory and deletes the spill file, if any.
+     */
+    public void destroy() {
+        isOpen = false;
+        inCore = null;
+        if ( onDisk != null ) {
+            try {
+                onDisk.close();
+            } catch ( java.io.IOException ignored ) {
+            }
+            onDisk = null;
+            onDiskChannel = null;
+        }
+        if ( onDiskFile != null ) {
+            if ( !onDiskFile.delete() ) {
+                onDiskFile.deleteOnExit();
+            }
+            onDiskFile = null;
+        }
+    }
+
+    private void spill() throws java.io.IOException {
+        onDiskFile = File.createTempFile( "jgit_", ".buf" );
+        onDisk = new RandomAccessFile( onDiskFile, "rw" );
+        onDiskChannel = onDisk.getChannel();
+
+        final ByteBuffer current = ByteBuffer.wrap( inCore, 0, (int) size );
+        long pos = 0;
+        while ( current.hasRemaining() ) {
+            pos += onDiskChannel.write( current, pos );
+        }
+        inCore = null;
+    }
+
+    private void ensureCapacity( final int required ) {
+        if ( required <= inCore.length ) {
+            return;
+        }
+        int newCapacity = inCore.length * 2;
+        if ( newCapacity < required ) {
+            newCapacity = required;
+        }
+        if ( newCapacity > inCoreLimit ) {
+            newCapacity = inCoreLimit;
+        }
+        inCore = Arrays.copyOf( inCore, newCapacity );
+    }
+
+    private void checkOpen() throws ClosedChannelException {
+        if ( !isOpen ) {
+            throw new ClosedChannelException();
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kie.commons.java.nio.fs.jgit.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+import static org.eclipse.jgit.lib.Constants.*;
+import static org.kie.commons.validation.Preconditions.*;
+
+/**
+ * Bounded LRU cache of path lookups, keyed by the commit (or any other immutable object id)
+ * a tree reference resolves to.
+ * <p/>
+ * Git objects never change, so <code>(commitId, path)</code> always resolves to the same entry
+ * and nothing has to be invalidated; callers only re-resolve the branch head on each lookup.
+ * Since object ids are content hashes, a single cache is shared by every repository.
+ */
+public final class TreeLookupCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private static final TreeLookupCache INSTANCE = new TreeLookupCache( DEFAULT_MAX_ENTRIES );
+
+    private static final Object NOT_FOUND = new Object();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private volatile int maxEntries;
+    private final Map<Key, Object> entries = new LinkedHashMap<Key, Object>( 16, 0.75f, true ) {
+        @Override
+        protected boolean removeEldestEntry( final Map.Entry<Key, Object> eldest ) {
+            return size() > maxEntries;
+        }
+    };
+
+    TreeLookupCache( final int maxEntries ) {
+        setMaxEntries( maxEntries );
+    }
+
+    public static TreeLookupCache getInstance() {
+        return INSTANCE;
+    }
+
+    public void setMaxEntries( final int maxEntries ) {
+        checkCondition( "maxEntries must be positive", maxEntries > 0 );
+        this.maxEntries = maxEntries;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        hits.set( 0 );
+        misses.set( 0 );
+    }
+
+    /**
+     * @param repo repository holding the objects
+     * @param commitId resolved commit of the tree reference
+     * @param gitPath repository path, without leading or trailing slashes; empty for the root tree
+     * @return entry of the path, or <code>null</code> if the path doesn't exist at that commit
+     */
+    PathEntry lookup( final Repository repo,
+                      final ObjectId commitId,
+                      final String gitPath ) throws java.io.IOException {
+        final Key key = new Key( commitId, gitPath, false );
+        final Object cached = get( key );
+        if ( cached != null ) {
+            return cached == NOT_FOUND ? null : (PathEntry) cached;
+        }
+
+        final PathEntry result = resolve( repo, commitId, gitPath );
+        put( key, result == null ? NOT_FOUND : result );
+        return result;
+    }
+
+    /**
+     * @return direct children of the directory, or an empty list if the path isn't a directory
+     */
+    @SuppressWarnings("unchecked")
+    List<PathEntry> list( final Repository repo,
+                          final ObjectId commitId,
+                          final String gitPath ) throws java.io.IOException {
+        final Key key = new Key( commitId, gitPath, true );
+        final Object cached = get( key );
+        if ( cached != null ) {
+            return (List<PathEntry>) cached;
+        }
+
+        final List<PathEntry> result = new ArrayList<PathEntry>();
+        final PathEntry dir = lookup( repo, commitId, gitPath );
+        if ( dir != null && dir.isTree() ) {
+            final String prefix = gitPath.isEmpty() ? "" : gitPath + "/";
+            final ObjectReader reader = repo.newObjectReader();
+            try {
+                final CanonicalTreeParser parser = new CanonicalTreeParser( null, reader, dir.getObjectId() );
+                while ( !parser.eof() ) {
+                    result.add( new PathEntry( parser.getEntryObjectId(), prefix + parser.getEntryPathString(), parser.getEntryFileMode() ) );
+                    parser.next();
+                }
+            } finally {
+                reader.release();
+            }
+        }
+
+        final List<PathEntry> unmodifiable = Collections.unmodifiableList( result );
+        put( key, unmodifiable );
+        return unmodifiable;
+    }
+
+    private PathEntry resolve( final Repository repo,
+                               final ObjectId commitId,
+                               final String gitPath ) throws java.io.IOException {
+        final ObjectId treeId = repo.resolve( commitId.name() + "^{tree}" );
+        if ( treeId == null ) {
+            return null;
+        }
+        if ( gitPath.isEmpty() ) {
+            return new PathEntry( treeId, "", FileMode.TREE );
+        }
+
+        final ObjectReader reader = repo.newObjectReader();
+        try {
+            final TreeWalk tw = TreeWalk.forPath( reader, gitPath, treeId );
+            if ( tw == null ) {
+                return null;
+            }
+            try {
+                return new PathEntry( tw.getObjectId( 0 ), tw.getPathString(), tw.getFileMode( 0 ) );
+            } finally {
+                tw.release();
+            }
+        } finally {
+            reader.release();
+        }
+    }
+
+    private synchronized Object get( final Key key ) {
+        final Object result = entries.get( key );
+        if ( result != null ) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return result;
+    }
+
+    private synchronized void put( final Key key,
+                                   final Object value ) {
+        entries.put( key, value );
+    }
+
+    static class PathEntry {
+
+        private final ObjectId objectId;
+        private final String path;
+        private final FileMode fileMode;
+        private volatile long size = -1;
+
+        PathEntry( final ObjectId objectId,
+                   final String path,
+                   final FileMode fileMode ) {
+            this.objectId = objectId;
+            this.path = path;
+            this.fileMode = fileMode;
+        }
+
+        ObjectId getObjectId() {
+            return objectId;
+        }
+
+        String getPath() {
+            return path;
+        }
+
+        FileMode getFileMode() {
+            return fileMode;
+        }
+
+        boolean isTree() {
+            return FileMode.TREE.equals( fileMode.getBits() );
+        }
+
+        boolean isFile() {
+            return FileMode.REGULAR_FILE.equals( fileMode.getBits() ) || FileMode.EXECUTABLE_FILE.equals( fileMode.getBits() );
+        }
+
+        long getSize( final ObjectReader reader ) throws java.io.IOException {
+            if ( size < 0 ) {
+                size = reader.getObjectSize( objectId, OBJ_BLOB );
+            }
+            return size;
+        }
+    }
+
+    private static class Key {
+
+        private final ObjectId commitId;
+        private final String path;
+        private final boolean listing;
+
+        Key( final ObjectId commitId,
+             final String path,
+             final boolean listing ) {
+            this.commitId = commitId.copy();
+            this.path = path;
+            this.listing = listing;
+        }
+
+        @Override
+        public boolean equals( final Object o ) {
+            if ( this == o ) {
+                return true;
+            }
+            if ( !( o instanceof Key ) ) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return listing == key.listing && commitId.equals( key.commitId ) && path.equals( key.path );
+        }
+
+        @Override
+        public int hashCode() {
+            int result = commitId.hashCode();
+            result = 31 * result + path.hashCode();
+            result = 31 * result + ( listing ? 1 : 0 );
+            return result;
+        }
+    }
+}
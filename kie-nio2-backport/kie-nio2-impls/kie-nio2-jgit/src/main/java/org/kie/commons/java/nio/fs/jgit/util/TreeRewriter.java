@@ -0,0 +1,181 @@
+/*
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kie.commons.java.nio.fs.jgit.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.treewalk.CanonicalTreeParser;
+
+/**
+ * Builds a new root tree by rewriting only the trees along the changed paths;
+ * every untouched subtree keeps its original id and is never read.
+ * <p/>
+ * Changes are keyed by repository path; a <code>null</code> blob id removes the path
+ * (and everything below it, if it is a directory). Directories left empty are dropped.
+ */
+class TreeRewriter {
+
+    private final ObjectReader reader;
+    private final ObjectInserter inserter;
+
+    TreeRewriter( final ObjectReader reader,
+                  final ObjectInserter inserter ) {
+        this.reader = reader;
+        this.inserter = inserter;
+    }
+
+    ObjectId rewrite( final ObjectId baseTreeId,
+                      final Map<String, ObjectId> content ) throws java.io.IOException {
+        final TreeChanges root = new TreeChanges();
+        for ( final Map.Entry<String, ObjectId> entry : content.entrySet() ) {
+            root.add( entry.getKey(), entry.getValue() );
+        }
+
+        final ObjectId result = rewrite( baseTreeId, root );
+        if ( result == null ) {
+            return inserter.insert( new TreeFormatter() );
+        }
+        return result;
+    }
+
+    private ObjectId rewrite( final ObjectId baseTreeId,
+                              final TreeChanges changes ) throws java.io.IOException {
+        final Map<String, TreeEntry> entries = new HashMap<String, TreeEntry>();
+        if ( baseTreeId != null ) {
+            final CanonicalTreeParser parser = new CanonicalTreeParser( null, reader, baseTreeId );
+            while ( !parser.eof() ) {
+                final String name = parser.getEntryPathString();
+                entries.put( name, new TreeEntry( name, parser.getEntryFileMode(), parser.getEntryObjectId() ) );
+                parser.next();
+            }
+        }
+
+        for ( final Map.Entry<String, ObjectId> file : changes.files.entrySet() ) {
+            if ( file.getValue() == null ) {
+                entries.remove( file.getKey() );
+            } else {
+                entries.put( file.getKey(), new TreeEntry( file.getKey(), FileMode.REGULAR_FILE, file.getValue() ) );
+            }
+        }
+
+        for ( final Map.Entry<String, TreeChanges> dir : changes.dirs.entrySet() ) {
+            final TreeEntry current = entries.get( dir.getKey() );
+            final ObjectId currentTreeId;
+            if ( current != null && current.isTree() ) {
+                currentTreeId = current.objectId;
+            } else {
+                currentTreeId = null;
+            }
+
+            final ObjectId newTreeId = rewrite( currentTreeId, dir.getValue() );
+            if ( newTreeId == null ) {
+                entries.remove( dir.getKey() );
+            } else {
+                entries.put( dir.getKey(), new TreeEntry( dir.getKey(), FileMode.TREE, newTreeId ) );
+            }
+        }
+
+        if ( entries.isEmpty() ) {
+            return null;
+        }
+
+        final List<TreeEntry> sorted = new ArrayList<TreeEntry>( entries.values() );
+        Collections.sort( sorted );
+
+        final TreeFormatter formatter = new TreeFormatter();
+        for ( final TreeEntry entry : sorted ) {
+            formatter.append( entry.name, entry.fileMode, entry.objectId );
+        }
+
+        return inserter.insert( formatter );
+    }
+
+    private static class TreeChanges {
+
+        private final Map<String, ObjectId> files = new HashMap<String, ObjectId>();
+        private final Map<String, TreeChanges> dirs = new HashMap<String, TreeChanges>();
+
+        void add( final String path,
+                  final ObjectId blobId ) {
+            TreeChanges current = this;
+            final String[] segments = path.split( "/" );
+            int last = segments.length - 1;
+            while ( last >= 0 && segments[ last ].isEmpty() ) {
+                last--;
+            }
+            if ( last < 0 ) {
+                return;
+            }
+            for ( int i = 0; i < last; i++ ) {
+                if ( segments[ i ].isEmpty() ) {
+                    continue;
+                }
+                TreeChanges next = current.dirs.get( segments[ i ] );
+                if ( next == null ) {
+                    next = new TreeChanges();
+                    current.dirs.put( segments[ i ], next );
+                }
+                current = next;
+            }
+            current.files.put( segments[ last ], blobId );
+        }
+    }
+
+    private static class TreeEntry implements Comparable<TreeEntry> {
+
+        private final String name;
+        private final FileMode fileMode;
+        private final ObjectId objectId;
+        private final byte[] sortKey;
+
+        TreeEntry( final String name,
+                   final FileMode fileMode,
+                   final ObjectId objectId ) {
+            this.name = name;
+            this.fileMode = fileMode;
+            this.objectId = objectId;
+            // git orders tree entries as if directory names had a trailing '/'
+            this.sortKey = Constants.encode( isTree() ? name + "/" : name );
+        }
+
+        boolean isTree() {
+            return FileMode.TREE.equals( fileMode.getBits() );
+        }
+
+        @Override
+        public int compareTo( final TreeEntry other ) {
+            final int length = Math.min( sortKey.length, other.sortKey.length );
+            for ( int i = 0; i < length; i++ ) {
+                final int diff = ( sortKey[ i ] & 0xff ) - ( other.sortKey[ i ] & 0xff );
+                if ( diff != 0 ) {
+                    return diff;
+                }
+            }
+            return sortKey.length - other.sortKey.length;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kie.commons.java.nio.fs.jgit;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Test;
+import org.kie.commons.java.nio.file.Path;
+import org.kie.commons.java.nio.fs.jgit.util.GroupCommitter;
+
+import static org.fest.assertions.api.Assertions.*;
+import static org.kie.commons.java.nio.fs.jgit.util.JGitUtil.*;
+import static org.kie.commons.java.nio.fs.jgit.util.JGitUtil.PathType.*;
+
+public class GroupCommitterTest extends AbstractTestInfra {
+
+    private static final JGitFileSystemProvider PROVIDER = JGitFileSystemProvider.getInstance();
+
+    @Test
+    public void testConcurrentWritesShareCommit() throws Exception {
+        final URI newRepo = URI.create( "git://group-commit-repo" );
+        final JGitFileSystem fs = (JGitFileSystem) PROVIDER.newFileSystem( newRepo, new HashMap<String, Object>() {{
+            put( "init", Boolean.TRUE );
+        }} );
+        final Git git = fs.gitRepo();
+        final int initialCommits = countCommits( git );
+
+        final GroupCommitter committer = new GroupCommitter( 500, 1000 );
+        final int writers = 10;
+        final List<Thread> threads = new ArrayList<Thread>();
+        final List<Throwable> failures = new ArrayList<Throwable>();
+
+        for ( int i = 0; i < writers; i++ ) {
+            final int id = i;
+            threads.add( new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        final Path path = PROVIDER.getPath( URI.create( "git://master@group-commit-repo/dir/file" + id + ".txt" ) );
+                        final byte[] content = ( "content" + id ).getBytes();
+                        final ObjectId blobId = insertBlob( git, new ByteArrayInputStream( content ), content.length );
+                        final Map<String, ObjectId> changes = new HashMap<String, ObjectId>();
+                        changes.put( ( (JGitPathImpl) path ).getPath(), blobId );
+                        committer.commit( (JGitPathImpl) path, "session" + id, "name", "name@example.com", "write " + id, null, null, changes );
+                    } catch ( final Throwable t ) {
+                        synchronized ( failures ) {
+                            failures.add( t );
+                        }
+                    }
+                }
+            } );
+        }
+
+        for ( final Thread thread : threads ) {
+            thread.start();
+        }
+        for ( final Thread thread : threads ) {
+            thread.join();
+        }
+
+        assertThat( failures ).isEmpty();
+        for ( int i = 0; i < writers; i++ ) {
+            assertThat( checkPath( git, "master", "dir/file" + i + ".txt" ).getK1() ).isEqualTo( FILE );
+        }
+        assertThat( countCommits( git ) - initialCommits ).isLessThan( writers );
+    }
+
+    @Test
+    public void testNestedPathsAreCommittedInOrder() throws Exception {
+        final URI newRepo = URI.create( "git://group-commit-nested-repo" );
+        final JGitFileSystem fs = (JGitFileSystem) PROVIDER.newFileSystem( newRepo, new HashMap<String, Object>() {{
+            put( "init", Boolean.TRUE );
+        }} );
+        final Git git = fs.gitRepo();
+        final GroupCommitter committer = new GroupCommitter( 1000, 1000 );
+
+        final Thread writer = commitInBackground( committer, git, "git://master@group-commit-nested-repo/nested/a/x.txt", "name", "content" );
+        Thread.sleep( 100 );
+
+        // deleting the directory after the write must remove the file, as two commits would
+        final Path dir = PROVIDER.getPath( URI.create( "git://master@group-commit-nested-repo/nested/a" ) );
+        final Map<String, ObjectId> delete = new HashMap<String, ObjectId>();
+        delete.put( ( (JGitPathImpl) dir ).getPath(), null );
+        committer.commit( (JGitPathImpl) dir, "session", "name", "name@example.com", "delete", null, null, delete );
+        writer.join();
+
+        assertThat( checkPath( git, "master", "nested/a/x.txt" ).getK1() ).isEqualTo( NOT_FOUND );
+        assertThat( committer.getQueueCount() ).isEqualTo( 0 );
+    }
+
+    @Test
+    public void testAuthorsAreNotMerged() throws Exception {
+        final URI newRepo = URI.create( "git://group-commit-authors-repo" );
+        final JGitFileSystem fs = (JGitFileSystem) PROVIDER.newFileSystem( newRepo, new HashMap<String, Object>() {{
+            put( "init", Boolean.TRUE );
+        }} );
+        final Git git = fs.gitRepo();
+        final int initialCommits = countCommits( git );
+        final GroupCommitter committer = new GroupCommitter( 500, 1000 );
+
+        final Thread alice = commitInBackground( committer, git, "git://master@group-commit-authors-repo/alice.txt", "alice", "content" );
+        final Thread bob = commitInBackground( committer, git, "git://master@group-commit-authors-repo/bob.txt", "bob", "content" );
+        alice.join();
+        bob.join();
+
+        assertThat( countCommits( git ) - initialCommits ).isEqualTo( 2 );
+        final List<String> authors = new ArrayList<String>();
+        for ( final RevCommit commit : git.log().add( git.getRepository().resolve( "master" ) ).setMaxCount( 2 ).call() ) {
+            authors.add( commit.getAuthorIdent().getName() );
+        }
+        assertThat( authors ).contains( "alice", "bob" );
+        assertThat( committer.getQueueCount() ).isEqualTo( 0 );
+    }
+
+    private Thread commitInBackground( final GroupCommitter committer,
+                                       final Git git,
+                                       final String uri,
+                                       final String author,
+                                       final String text ) {
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                final Path path = PROVIDER.getPath( URI.create( uri ) );
+                final byte[] content = text.getBytes();
+                final ObjectId blobId = insertBlob( git, new ByteArrayInputStream( content ), content.length );
+                final Map<String, ObjectId> changes = new HashMap<String, ObjectId>();
+                changes.put( ( (JGitPathImpl) path ).getPath(), blobId );
+                committer.commit( (JGitPathImpl) path, "session", author, author + "@example.com", "write", null, null, changes );
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    private int countCommits( final Git git ) throws Exception {
+        int result = 0;
+        for ( final RevCommit ignored : git.log().add( git.getRepository().resolve( "master" ) ).call() ) {
+            result++;
+        }
+        return result;
+    }
+
+}
@@ -29,11 +29,15 @@ import java.util.Scanner;
 
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.kie.commons.data.Pair;
+import org.kie.commons.java.nio.base.FileSystemState;
 import org.kie.commons.java.nio.base.NotImplementedException;
 import org.kie.commons.java.nio.base.options.CommentedOption;
+import org.kie.commons.java.nio.base.version.VersionAttributes;
 import org.kie.commons.java.nio.file.DirectoryNotEmptyException;
 import org.kie.commons.java.nio.file.DirectoryStream;
 import org.kie.commons.java.nio.file.FileAlreadyExistsException;
@@ -211,6 +215,49 @@ public class JGitFileSystemProviderTest extends AbstractTestInfra {
         }
     }
 
+    @Test
+    public void testSyncAnnouncedRefs() throws IOException {
+
+        final URI originRepo = URI.create( "git://my-refs-sync-origin-name" );
+
+        final JGitFileSystem origin = (JGitFileSystem) PROVIDER.newFileSystem( originRepo, new HashMap<String, Object>() {{
+            put( "listMode", "ALL" );
+        }} );
+
+        commit( origin.gitRepo(), "master", "user1", "user1@example.com", "commitx", null, null, false, new HashMap<String, File>() {{
+            put( "file.txt", tempFile( "temp" ) );
+        }} );
+
+        final Map<String, Object> env = new HashMap<String, Object>() {{
+            put( JGitFileSystemProvider.GIT_DEFAULT_REMOTE_NAME, "git://localhost:9418/my-refs-sync-origin-name" );
+            put( "listMode", "ALL" );
+        }};
+
+        final JGitFileSystem fs = (JGitFileSystem) PROVIDER.newFileSystem( URI.create( "git://my-refs-sync-repo-name" ), env );
+        final ObjectId older = JGitUtil.resolveObjectId( fs.gitRepo(), "master" );
+
+        commit( origin.gitRepo(), "master", "user1", "user1@example.com", "commitx", null, null, false, new HashMap<String, File>() {{
+            put( "fileXXXXX.txt", tempFile( "temp" ) );
+        }} );
+
+        final ObjectId announced = JGitUtil.resolveObjectId( origin.gitRepo(), "master" );
+
+        PROVIDER.getFileSystem( URI.create( "git://my-refs-sync-repo-name?sync=git://localhost:9418/my-refs-sync-origin-name&force&refs=master:" + announced.name() ) );
+
+        assertThat( JGitUtil.resolveObjectId( fs.gitRepo(), "master" ) ).isEqualTo( announced );
+        assertThat( fs.getPath( "fileXXXXX.txt" ).toFile() ).isNotNull().exists();
+
+        //already at the announced commit, nothing to fetch
+        PROVIDER.getFileSystem( URI.create( "git://my-refs-sync-repo-name?sync=git://localhost:9418/my-refs-sync-origin-name&force&refs=master:" + announced.name() ) );
+
+        assertThat( JGitUtil.resolveObjectId( fs.gitRepo(), "master" ) ).isEqualTo( announced );
+
+        //a late announcement of an older commit must not move master back
+        PROVIDER.getFileSystem( URI.create( "git://my-refs-sync-repo-name?sync=git://localhost:9418/my-refs-sync-origin-name&force&refs=master:" + older.name() ) );
+
+        assertThat( JGitUtil.resolveObjectId( fs.gitRepo(), "master" ) ).isEqualTo( announced );
+    }
+
     @Test
     public void testGetFileSystem() {
         final URI newRepo = URI.create( "git://new-repo-name" );
@@ -1158,6 +1205,66 @@ public class JGitFileSystemProviderTest extends AbstractTestInfra {
 
     }
 
+    @Test
+    public void testBatchProducesSingleCommit() throws Exception {
+        final URI newRepo = URI.create( "git://batch-test-repo" );
+
+        final FileSystem fs = PROVIDER.newFileSystem( newRepo, new HashMap<String, Object>() {{
+            put( "init", Boolean.TRUE );
+        }} );
+        final Git git = ( (JGitFileSystem) fs ).gitRepo();
+        final ObjectId before = git.getRepository().resolve( "master^{commit}" );
+
+        final Path root = PROVIDER.getPath( URI.create( "git://master@batch-test-repo/" ) );
+        PROVIDER.setAttribute( root, FileSystemState.FILE_SYSTEM_STATE_ATTR, FileSystemState.BATCH );
+
+        for ( int i = 0; i < 3; i++ ) {
+            final OutputStream outStream = PROVIDER.newOutputStream( PROVIDER.getPath( URI.create( "git://master@batch-test-repo/batch/file" + i + ".txt" ) ) );
+            outStream.write( ( "content" + i ).getBytes() );
+            outStream.close();
+        }
+        assertThat( checkPath( git, "master", "batch/file0.txt" ).getK1() ).isEqualTo( PathType.FILE );
+
+        PROVIDER.setAttribute( root, FileSystemState.FILE_SYSTEM_STATE_ATTR, FileSystemState.NORMAL );
+
+        final RevCommit head = new RevWalk( git.getRepository() ).parseCommit( git.getRepository().resolve( "master^{commit}" ) );
+        assertThat( head.getParentCount() ).isEqualTo( 1 );
+        assertThat( head.getParent( 0 ).getId() ).isEqualTo( before );
+        for ( int i = 0; i < 3; i++ ) {
+            assertThat( checkPath( git, "master", "batch/file" + i + ".txt" ).getK1() ).isEqualTo( PathType.FILE );
+        }
+    }
+
+    @Test
+    public void testReadBasicAttributesLazyHistory() throws Exception {
+        final URI newRepo = URI.create( "git://lazy-attrs-test-repo" );
+        PROVIDER.newFileSystem( newRepo, new HashMap<String, Object>() {{
+            put( "init", Boolean.TRUE );
+        }} );
+
+        final Path path = PROVIDER.getPath( URI.create( "git://master@lazy-attrs-test-repo/some/file.txt" ) );
+        for ( int i = 0; i < 2; i++ ) {
+            final OutputStream outStream = PROVIDER.newOutputStream( path );
+            outStream.write( ( "content" + i ).getBytes() );
+            outStream.close();
+        }
+
+        final BasicFileAttributes attrs = PROVIDER.readAttributes( PROVIDER.getPath( URI.create( "git://master@lazy-attrs-test-repo/some/file.txt" ) ), BasicFileAttributes.class );
+        assertThat( attrs.isRegularFile() ).isTrue();
+        assertThat( attrs.size() ).isEqualTo( "content1".getBytes().length );
+
+        final VersionAttributes versionAttrs = (VersionAttributes) attrs;
+        assertThat( versionAttrs.history().records() ).hasSize( 2 );
+        assertThat( attrs.lastModifiedTime().toMillis() ).isEqualTo( versionAttrs.history().records().get( 1 ).date().getTime() );
+        assertThat( attrs.creationTime().toMillis() ).isEqualTo( versionAttrs.history().records().get( 0 ).date().getTime() );
+
+        try {
+            PROVIDER.readAttributes( PROVIDER.getPath( URI.create( "git://master@lazy-attrs-test-repo/some/missing.txt" ) ), BasicFileAttributes.class );
+            failBecauseExceptionWasNotThrown( NoSuchFileException.class );
+        } catch ( NoSuchFileException ignored ) {
+        }
+    }
+
     private static class MyInvalidFileAttributeView implements BasicFileAttributeView {
 
         @Override
@@ -18,6 +18,11 @@ package org.kie.commons.java.nio.fs.jgit;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
@@ -25,8 +30,11 @@ import org.eclipse.jgit.transport.CredentialsProvider;
 import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.kie.commons.java.nio.base.WatchContext;
 import org.kie.commons.java.nio.file.FileStore;
 import org.kie.commons.java.nio.file.Path;
+import org.kie.commons.java.nio.file.StandardWatchEventKind;
+import org.kie.commons.java.nio.file.WatchEvent;
 import org.kie.commons.java.nio.file.spi.FileSystemProvider;
 
 import static org.fest.assertions.api.Assertions.*;
@@ -330,4 +338,50 @@ public class JGitFileSystemTest extends AbstractTestInfra {
         final JGitFileSystem fileSystem = new JGitFileSystem( fsProvider, null, git, "my-repo", CredentialsProvider.getDefault() );
         fileSystem.getPathMatcher( "*" );
     }
+
+    @Test
+    public void testRevisionsAndChanges() throws Exception {
+        final JGitFileSystemProvider provider = JGitFileSystemProvider.getInstance();
+        final JGitFileSystem fs = (JGitFileSystem) provider.newFileSystem( URI.create( "git://revisions-test-repo" ), new HashMap<String, Object>() {{
+            put( "init", Boolean.TRUE );
+        }} );
+
+        final Path root = provider.getPath( URI.create( "git://master@revisions-test-repo/" ) );
+
+        write( provider, provider.getPath( URI.create( "git://master@revisions-test-repo/file1.txt" ) ), "content" );
+        write( provider, provider.getPath( URI.create( "git://master@revisions-test-repo/file2.txt" ) ), "content" );
+
+        final String first = fs.getRevision( root );
+        assertThat( first ).isNotNull();
+        assertThat( fs.getChanges( root, first, first ) ).isEmpty();
+
+        write( provider, provider.getPath( URI.create( "git://master@revisions-test-repo/file1.txt" ) ), "new content" );
+        write( provider, provider.getPath( URI.create( "git://master@revisions-test-repo/file3.txt" ) ), "content" );
+        provider.delete( provider.getPath( URI.create( "git://master@revisions-test-repo/file2.txt" ) ) );
+
+        final String second = fs.getRevision( root );
+        assertThat( second ).isNotEqualTo( first );
+
+        final List<WatchEvent<?>> changes = fs.getChanges( root, first, second );
+        assertThat( changes ).hasSize( 3 );
+        final Map<String, WatchEvent.Kind<?>> kinds = new HashMap<String, WatchEvent.Kind<?>>();
+        for ( final WatchEvent<?> change : changes ) {
+            final WatchContext context = (WatchContext) change.context();
+            final Path path = context.getPath() != null ? context.getPath() : context.getOldPath();
+            kinds.put( path.getFileName().toString(), change.kind() );
+        }
+        assertThat( kinds.get( "file1.txt" ) ).isEqualTo( StandardWatchEventKind.ENTRY_MODIFY );
+        assertThat( kinds.get( "file2.txt" ) ).isEqualTo( StandardWatchEventKind.ENTRY_DELETE );
+        assertThat( kinds.get( "file3.txt" ) ).isEqualTo( StandardWatchEventKind.ENTRY_CREATE );
+
+        assertThat( fs.getChanges( root, "0000000000000000000000000000000000000001", second ) ).isNull();
+    }
+
+    private void write( final JGitFileSystemProvider provider,
+                        final Path path,
+                        final String content ) throws Exception {
+        final OutputStream out = provider.newOutputStream( path );
+        out.write( content.getBytes() );
+        out.close();
+    }
 }
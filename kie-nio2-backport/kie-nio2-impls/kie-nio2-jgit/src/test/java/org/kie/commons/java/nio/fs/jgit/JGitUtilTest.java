@@ -18,12 +18,18 @@ package org.kie.commons.java.nio.fs.jgit;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 
+import org.apache.commons.io.IOUtils;
 import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.transport.CredentialsProvider;
 import org.junit.Test;
 import org.kie.commons.java.nio.fs.jgit.util.JGitUtil;
+import org.kie.commons.java.nio.fs.jgit.util.TemporaryBufferChannel;
+import org.kie.commons.java.nio.fs.jgit.util.TreeLookupCache;
 
 import static org.eclipse.jgit.api.ListBranchCommand.ListMode.*;
 import static org.fest.assertions.api.Assertions.*;
@@ -129,4 +135,107 @@ public class JGitUtilTest extends AbstractTestInfra {
         assertThat( JGitUtil.checkPath( git, "master", "path/to" ).getK1() ).isEqualTo( DIRECTORY );
     }
 
+    @Test
+    public void testCommitBlobs() throws IOException {
+        final File parentFolder = createTempDirectory();
+        final File gitFolder = new File( parentFolder, "myblobtest.git" );
+
+        final Git origin = JGitUtil.newRepository( gitFolder, true );
+
+        final TemporaryBufferChannel buffer = new TemporaryBufferChannel( 4 );
+        buffer.write( ByteBuffer.wrap( "more than four bytes".getBytes() ) );
+        buffer.close();
+        final ObjectId blobId = insertBlob( origin, buffer );
+        buffer.destroy();
+
+        commitBlobs( origin, "master", "name", "name@example.com", "commit!", null, null, false, new HashMap<String, ObjectId>() {{
+            put( "path/to/file.txt", blobId );
+        }} );
+
+        assertThat( JGitUtil.checkPath( origin, "master", "path/to/file.txt" ).getK1() ).isEqualTo( FILE );
+
+        final InputStream content = resolveInputStream( origin, "master", "path/to/file.txt" );
+        assertThat( IOUtils.toString( content ) ).isEqualTo( "more than four bytes" );
+        content.close();
+
+        commitBlobs( origin, "master", "name", "name@example.com", "commit!", null, null, false, new HashMap<String, ObjectId>() {{
+            put( "path/to/file.txt", null );
+        }} );
+
+        assertThat( JGitUtil.checkPath( origin, "master", "path/to/file.txt" ).getK1() ).isEqualTo( NOT_FOUND );
+    }
+
+    @Test
+    public void testCommitKeepsUntouchedSubtrees() throws IOException {
+        final File parentFolder = createTempDirectory();
+        final File gitFolder = new File( parentFolder, "mytreetest.git" );
+
+        final Git origin = JGitUtil.newRepository( gitFolder, true );
+
+        commit( origin, "master", "name", "name@example.com", "commit!", null, null, false, new HashMap<String, File>() {{
+            put( "a/b/file1.txt", tempFile( "content1" ) );
+            put( "a/c/file2.txt", tempFile( "content2" ) );
+            put( "d/file3.txt", tempFile( "content3" ) );
+            put( "file4.txt", tempFile( "content4" ) );
+        }} );
+
+        final ObjectId untouchedTree = checkPath( origin, "master", "d" ).getK2();
+
+        commit( origin, "master", "name", "name@example.com", "commit!", null, null, false, new HashMap<String, File>() {{
+            put( "/a/b/file5.txt", tempFile( "content5" ) );
+            put( "a/c/file2.txt", null );
+        }} );
+
+        assertThat( checkPath( origin, "master", "d" ).getK2() ).isEqualTo( untouchedTree );
+        assertThat( checkPath( origin, "master", "a/b/file1.txt" ).getK1() ).isEqualTo( FILE );
+        assertThat( checkPath( origin, "master", "a/b/file5.txt" ).getK1() ).isEqualTo( FILE );
+        assertThat( checkPath( origin, "master", "file4.txt" ).getK1() ).isEqualTo( FILE );
+        assertThat( checkPath( origin, "master", "a/c" ).getK1() ).isEqualTo( NOT_FOUND );
+
+        commit( origin, "master", "name", "name@example.com", "commit!", null, null, false, new HashMap<String, File>() {{
+            put( "a", null );
+        }} );
+
+        assertThat( checkPath( origin, "master", "a/b/file1.txt" ).getK1() ).isEqualTo( NOT_FOUND );
+        assertThat( checkPath( origin, "master", "d/file3.txt" ).getK1() ).isEqualTo( FILE );
+    }
+
+    @Test
+    public void testLookupCache() throws IOException {
+        final File parentFolder = createTempDirectory();
+        final File gitFolder = new File( parentFolder, "mycachetest.git" );
+
+        final Git origin = JGitUtil.newRepository( gitFolder, true );
+
+        commit( origin, "master", "name", "name@example.com", "commit!", null, null, false, new HashMap<String, File>() {{
+            put( "dir/file1.txt", tempFile( "content1" ) );
+            put( "dir/file2.txt", tempFile( "content2" ) );
+        }} );
+
+        final TreeLookupCache cache = TreeLookupCache.getInstance();
+        cache.clear();
+
+        assertThat( resolvePath( origin, "master", "dir/file1.txt" ).getSize() ).isEqualTo( 8 );
+        assertThat( cache.getMissCount() ).isEqualTo( 1 );
+        assertThat( cache.getHitCount() ).isEqualTo( 0 );
+
+        assertThat( checkPath( origin, "master", "dir/file1.txt" ).getK1() ).isEqualTo( FILE );
+        assertThat( IOUtils.toString( resolveInputStream( origin, "master", "dir/file1.txt" ) ) ).isEqualTo( "content1" );
+        assertThat( cache.getMissCount() ).isEqualTo( 1 );
+        assertThat( cache.getHitCount() ).isEqualTo( 2 );
+
+        assertThat( listPathContent( origin, "master", "dir" ) ).hasSize( 2 );
+        assertThat( listPathContent( origin, "master", "dir" ) ).hasSize( 2 );
+
+        // a new head is looked up again, old entries stay valid
+        commit( origin, "master", "name", "name@example.com", "commit!", null, null, false, new HashMap<String, File>() {{
+            put( "dir/file1.txt", tempFile( "new content" ) );
+            put( "dir/file2.txt", null );
+        }} );
+
+        assertThat( IOUtils.toString( resolveInputStream( origin, "master", "dir/file1.txt" ) ) ).isEqualTo( "new content" );
+        assertThat( checkPath( origin, "master", "dir/file2.txt" ).getK1() ).isEqualTo( NOT_FOUND );
+        assertThat( listPathContent( origin, "master", "dir" ) ).hasSize( 1 );
+    }
+
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kie.commons.java.nio.fs.jgit;
+
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.kie.commons.java.nio.base.BatchWatchService;
+import org.kie.commons.java.nio.base.WatchContext;
+import org.kie.commons.java.nio.file.FileSystem;
+import org.kie.commons.java.nio.file.Path;
+import org.kie.commons.java.nio.file.StandardWatchEventKind;
+import org.kie.commons.java.nio.file.WatchEvent;
+import org.kie.commons.java.nio.file.WatchKey;
+import org.kie.commons.java.nio.file.WatchService;
+
+import static org.fest.assertions.api.Assertions.*;
+
+public class JGitWatchServiceTest extends AbstractTestInfra {
+
+    private static final JGitFileSystemProvider PROVIDER = JGitFileSystemProvider.getInstance();
+
+    @Test
+    public void testTimedPollAndCoalescing() throws Exception {
+        final FileSystem fs = PROVIDER.newFileSystem( URI.create( "git://watch-test-repo" ), new HashMap<String, Object>() {{
+            put( "init", Boolean.TRUE );
+        }} );
+
+        final WatchService ws = fs.newWatchService();
+        assertThat( ws ).isInstanceOf( BatchWatchService.class );
+
+        final long start = System.currentTimeMillis();
+        assertThat( ws.poll( 100, TimeUnit.MILLISECONDS ) ).isNull();
+        assertThat( System.currentTimeMillis() - start ).isGreaterThanOrEqualTo( 90 );
+
+        final Path path = PROVIDER.getPath( URI.create( "git://master@watch-test-repo/myfile.txt" ) );
+        write( path, "content" );
+        write( path, "new content" );
+        write( path, "newest content" );
+        write( PROVIDER.getPath( URI.create( "git://master@watch-test-repo/other.txt" ) ), "other" );
+
+        final List<WatchKey> keys = ( (BatchWatchService) ws ).take( 10 );
+        int myFileEvents = 0;
+        int totalEvents = 0;
+        for ( final WatchKey key : keys ) {
+            for ( final WatchEvent<?> event : key.pollEvents() ) {
+                totalEvents++;
+                final WatchContext context = (WatchContext) event.context();
+                if ( context.getPath() != null && context.getPath().toString().endsWith( "myfile.txt" ) ) {
+                    myFileEvents++;
+                }
+            }
+        }
+
+        assertThat( myFileEvents ).isEqualTo( 2 );
+        assertThat( totalEvents ).isEqualTo( 3 );
+        assertThat( ws.poll() ).isNull();
+
+        // events published after a take are queued again
+        write( path, "newer content" );
+        final WatchKey key = ws.poll( 1, TimeUnit.SECONDS );
+        assertThat( key ).isNotNull();
+        assertThat( key.pollEvents().get( 0 ).kind() ).isEqualTo( StandardWatchEventKind.ENTRY_MODIFY );
+
+        ws.close();
+        assertThat( ws.take() ).isNull();
+    }
+
+    private void write( final Path path,
+                        final String content ) throws Exception {
+        final OutputStream out = PROVIDER.newOutputStream( path );
+        out.write( content.getBytes() );
+        out.close();
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kie.commons.java.nio.fs.jgit;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.Test;
+import org.kie.commons.java.nio.fs.jgit.util.JGitUtil;
+import org.kie.commons.java.nio.fs.jgit.util.PathHistoryIndex;
+
+import static org.fest.assertions.api.Assertions.*;
+import static org.kie.commons.java.nio.fs.jgit.util.JGitUtil.*;
+
+public class PathHistoryIndexTest extends AbstractTestInfra {
+
+    @Test
+    public void testHistoryPerPath() throws IOException {
+        final File parentFolder = createTempDirectory();
+        final Git git = JGitUtil.newRepository( new File( parentFolder, "history.git" ), true );
+
+        commit( git, "master", "name", "name@example.com", "1", null, null, false, new HashMap<String, File>() {{
+            put( "a/file1.txt", tempFile( "content1" ) );
+            put( "b/file2.txt", tempFile( "content2" ) );
+        }} );
+        final ObjectId first = git.getRepository().resolve( "master^{commit}" );
+        commit( git, "master", "name", "name@example.com", "2", null, null, false, new HashMap<String, File>() {{
+            put( "a/file1.txt", tempFile( "content1 changed" ) );
+        }} );
+        final ObjectId second = git.getRepository().resolve( "master^{commit}" );
+
+        final PathHistoryIndex index = new PathHistoryIndex( git.getRepository() );
+        assertThat( index.history( "master", "a/file1.txt" ) ).isNull();
+
+        index.build( "master" );
+
+        assertThat( index.history( "master", "a/file1.txt" ) ).containsExactly( first, second );
+        assertThat( index.history( "master", "a" ) ).containsExactly( first, second );
+        assertThat( index.history( "master", "b/file2.txt" ) ).containsExactly( first );
+        assertThat( index.history( "master", "" ) ).containsExactly( first, second );
+        assertThat( index.history( "master", "missing.txt" ) ).isEmpty();
+
+        // catches up with new commits and with rewritten history
+        commit( git, "master", "name", "name@example.com", "3", null, null, true, new HashMap<String, File>() {{
+            put( "b/file2.txt", tempFile( "content2 changed" ) );
+        }} );
+        final ObjectId amended = git.getRepository().resolve( "master^{commit}" );
+
+        final List<ObjectId> history = index.history( "master", "b/file2.txt" );
+        assertThat( history ).containsExactly( first, amended );
+        assertThat( index.history( "master", "a/file1.txt" ) ).containsExactly( first );
+
+        // survives a reload from disk
+        final PathHistoryIndex reloaded = new PathHistoryIndex( git.getRepository() );
+        reloaded.build( "master" );
+        assertThat( reloaded.history( "master", "b/file2.txt" ) ).containsExactly( first, amended );
+    }
+
+    @Test
+    public void testHistoryInDateOrder() throws IOException {
+        final File parentFolder = createTempDirectory();
+        final Git git = JGitUtil.newRepository( new File( parentFolder, "history-dates.git" ), true );
+
+        commit( git, "master", "name", "name@example.com", "1", null, new Date( 2000000000000L ), false, new HashMap<String, File>() {{
+            put( "file.txt", tempFile( "content1" ) );
+        }} );
+        final ObjectId first = git.getRepository().resolve( "master^{commit}" );
+        // committed on a machine whose clock lags behind
+        commit( git, "master", "name", "name@example.com", "2", null, new Date( 1000000000000L ), false, new HashMap<String, File>() {{
+            put( "file.txt", tempFile( "content2" ) );
+        }} );
+        final ObjectId second = git.getRepository().resolve( "master^{commit}" );
+
+        final PathHistoryIndex index = new PathHistoryIndex( git.getRepository() );
+        index.build( "master" );
+
+        // same order the log walk sorts its records in
+        assertThat( index.history( "master", "file.txt" ) ).containsExactly( second, first );
+        assertThat( index.history( "master", "" ) ).containsExactly( second, first );
+    }
+
+}
@@ -0,0 +1,29 @@
+package org.kie.commons.java.nio.base;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.kie.commons.java.nio.file.ClosedWatchServiceException;
+import org.kie.commons.java.nio.file.InterruptedException;
+import org.kie.commons.java.nio.file.WatchKey;
+import org.kie.commons.java.nio.file.WatchService;
+
+/**
+ * {@link WatchService} that hands out pending keys in batches.
+ */
+public interface BatchWatchService extends WatchService {
+
+    /**
+     * Waits up to the given timeout for a key, then drains whatever else is pending, up to <code>maxKeys</code>.
+     * @return pending keys, oldest first; an empty list if the timeout elapsed
+     */
+    List<WatchKey> poll( long timeout,
+                         TimeUnit unit,
+                         int maxKeys ) throws ClosedWatchServiceException, InterruptedException;
+
+    /**
+     * Waits for a key, then drains whatever else is pending, up to <code>maxKeys</code>.
+     * @return pending keys, oldest first; an empty list if the service was closed while waiting
+     */
+    List<WatchKey> take( int maxKeys ) throws ClosedWatchServiceException, InterruptedException;
+}
@@ -0,0 +1,26 @@
+package org.kie.commons.java.nio.base;
+
+import java.util.List;
+
+import org.kie.commons.java.nio.file.Path;
+import org.kie.commons.java.nio.file.WatchEvent;
+
+/**
+ * File system whose roots carry revisions, so a consumer that remembers the last revision it
+ * saw can catch up with the changes since then instead of walking the whole tree again.
+ */
+public interface RevisionedFileSystem {
+
+    /**
+     * @return current revision of the root, or <code>null</code> if the root has none yet
+     */
+    String getRevision( final Path root );
+
+    /**
+     * @return changes of the root between both revisions, as create, modify, delete and rename events
+     * with a {@link WatchContext}; <code>null</code> if either revision is unknown to this file system
+     */
+    List<WatchEvent<?>> getChanges( final Path root,
+                                    final String fromRevision,
+                                    final String toRevision );
+}
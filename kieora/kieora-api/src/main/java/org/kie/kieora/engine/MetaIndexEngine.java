@@ -40,5 +40,23 @@ public interface MetaIndexEngine {
 
     void commit();
 
+    /**
+     * @return revision of the segment the index was last brought up to date with, or <code>null</code> if unknown
+     */
+    String getIndexedRevision( final String clusterId,
+                               final String segmentId );
+
+    /**
+     * Records the revision of a segment the index is up to date with; it's persisted by the next commit.
+     */
+    void setIndexedRevision( final String clusterId,
+                             final String segmentId,
+                             final String revision );
+
+    /**
+     * Commits every pending write now, regardless of the engine's commit policy.
+     */
+    void flush();
+
     void dispose();
 }
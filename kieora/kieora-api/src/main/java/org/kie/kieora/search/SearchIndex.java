@@ -20,6 +20,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.kie.kieora.model.KObject;
+import org.kie.kieora.model.KObjectSimpleKey;
 
 /**
  *
@@ -36,6 +37,56 @@ public interface SearchIndex {
                                   final int startIndex,
                                   final ClusterSegment... clusterSegments );
 
+    /**
+     * Pages through the results without re-scoring the previous pages.
+     * @param continuation token of the previous page, or <code>null</code> for the first one
+     */
+    SearchPage<KObject> searchByAttrs( final Map<String, ?> attrs,
+                                       final int pageSize,
+                                       final String continuation,
+                                       final ClusterSegment... clusterSegments );
+
+    /**
+     * Pages through the results without re-scoring the previous pages.
+     * @param continuation token of the previous page, or <code>null</code> for the first one
+     */
+    SearchPage<KObject> fullTextSearch( final String term,
+                                        final int pageSize,
+                                        final String continuation,
+                                        final ClusterSegment... clusterSegments );
+
+    /**
+     * Same as {@link #searchByAttrs(Map, int, int, ClusterSegment...)}, but only loads the keys of the hits.
+     */
+    List<KObjectSimpleKey> searchKeysByAttrs( final Map<String, ?> attrs,
+                                              final int pageSize,
+                                              final int startIndex,
+                                              final ClusterSegment... clusterSegments );
+
+    /**
+     * Same as {@link #fullTextSearch(String, int, int, ClusterSegment...)}, but only loads the keys of the hits.
+     */
+    List<KObjectSimpleKey> fullTextSearchKeys( final String term,
+                                               final int pageSize,
+                                               final int startIndex,
+                                               final ClusterSegment... clusterSegments );
+
+    /**
+     * Same as {@link #searchByAttrs(Map, int, String, ClusterSegment...)}, but only loads the keys of the hits.
+     */
+    SearchPage<KObjectSimpleKey> searchKeysByAttrs( final Map<String, ?> attrs,
+                                                    final int pageSize,
+                                                    final String continuation,
+                                                    final ClusterSegment... clusterSegments );
+
+    /**
+     * Same as {@link #fullTextSearch(String, int, String, ClusterSegment...)}, but only loads the keys of the hits.
+     */
+    SearchPage<KObjectSimpleKey> fullTextSearchKeys( final String term,
+                                                     final int pageSize,
+                                                     final String continuation,
+                                                     final ClusterSegment... clusterSegments );
+
     int searchByAttrsHits( final Map<String, ?> attrs,
                            final ClusterSegment... clusterSegments );
 
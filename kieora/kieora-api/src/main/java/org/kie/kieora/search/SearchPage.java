@@ -0,0 +1,46 @@
+/*
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kie.kieora.search;
+
+import java.util.List;
+
+/**
+ * One page of search results plus an opaque token to fetch the next one. The token is
+ * <code>null</code> on the last page.
+ */
+public final class SearchPage<T> {
+
+    private final List<T> results;
+    private final String continuation;
+
+    public SearchPage( final List<T> results,
+                       final String continuation ) {
+        this.results = results;
+        this.continuation = continuation;
+    }
+
+    public List<T> getResults() {
+        return results;
+    }
+
+    public String getContinuation() {
+        return continuation;
+    }
+
+    public boolean hasMore() {
+        return continuation != null;
+    }
+}
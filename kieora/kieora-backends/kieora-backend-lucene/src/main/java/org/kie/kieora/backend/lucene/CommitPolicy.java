@@ -0,0 +1,129 @@
+/*
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kie.kieora.backend.lucene;
+
+import static org.kie.commons.validation.Preconditions.*;
+
+/**
+ * Decides when {@link LuceneIndexEngine} commits writes made outside batch mode.
+ * <p/>
+ * A commit happens as soon as any enabled threshold is reached: pending documents, age of
+ * the oldest uncommitted write, or RAM buffered by the writer. A threshold lower or equal
+ * to zero is disabled. Uncommitted writes are still visible to searches through the
+ * near-real-time searchers; the policy only bounds what a crash could lose.
+ */
+public final class CommitPolicy {
+
+    public static final int DEFAULT_MAX_DOCS = 1000;
+    public static final long DEFAULT_MAX_DELAY = 1000;
+    public static final double DEFAULT_MAX_RAM_MB = 16;
+
+    /**
+     * Commits after every write, as the engine used to.
+     */
+    public static final CommitPolicy EVERY_WRITE = new CommitPolicy( 1, 0, 0 );
+
+    private static final String MAX_DOCS = "org.kie.kieora.index.commit.docs";
+    private static final String MAX_DELAY = "org.kie.kieora.index.commit.delay";
+    private static final String MAX_RAM_MB = "org.kie.kieora.index.commit.ram";
+
+    private final int maxDocs;
+    private final long maxDelay;
+    private final double maxRamMB;
+
+    /**
+     * @param maxDocs documents written since the last commit
+     * @param maxDelay milliseconds since the oldest uncommitted write
+     * @param maxRamMB megabytes buffered by the index writer
+     */
+    public CommitPolicy( final int maxDocs,
+                         final long maxDelay,
+                         final double maxRamMB ) {
+        checkCondition( "at least one commit threshold must be enabled", maxDocs > 0 || maxDelay > 0 || maxRamMB > 0 );
+        this.maxDocs = maxDocs;
+        this.maxDelay = maxDelay;
+        this.maxRamMB = maxRamMB;
+    }
+
+    public static CommitPolicy fromSystemProperties() {
+        return new CommitPolicy( (int) longProperty( MAX_DOCS, DEFAULT_MAX_DOCS ),
+                                 longProperty( MAX_DELAY, DEFAULT_MAX_DELAY ),
+                                 doubleProperty( MAX_RAM_MB, DEFAULT_MAX_RAM_MB ) );
+    }
+
+    public int getMaxDocs() {
+        return maxDocs;
+    }
+
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    public double getMaxRamMB() {
+        return maxRamMB;
+    }
+
+    boolean shouldCommit( final int pendingDocs,
+                          final long pendingMillis,
+                          final long ramBytes ) {
+        if ( pendingDocs <= 0 ) {
+            return false;
+        }
+        if ( maxDocs > 0 && pendingDocs >= maxDocs ) {
+            return true;
+        }
+        if ( maxDelay > 0 && pendingMillis >= maxDelay ) {
+            return true;
+        }
+        return maxRamMB > 0 && ramBytes >= maxRamMB * 1024 * 1024;
+    }
+
+    private static long longProperty( final String name,
+                                      final long defaultValue ) {
+        final String value = System.getProperty( name );
+        if ( value == null || value.trim().isEmpty() ) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong( value.trim() );
+        } catch ( final NumberFormatException e ) {
+            return defaultValue;
+        }
+    }
+
+    private static double doubleProperty( final String name,
+                                          final double defaultValue ) {
+        final String value = System.getProperty( name );
+        if ( value == null || value.trim().isEmpty() ) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble( value.trim() );
+        } catch ( final NumberFormatException e ) {
+            return defaultValue;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CommitPolicy{" +
+                "maxDocs=" + maxDocs +
+                ", maxDelay=" + maxDelay +
+                ", maxRamMB=" + maxRamMB +
+                '}';
+    }
+}
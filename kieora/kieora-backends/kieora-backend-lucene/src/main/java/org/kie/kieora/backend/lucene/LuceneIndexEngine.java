@@ -18,16 +18,23 @@ package org.kie.kieora.backend.lucene;
 
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.IndexableField;
+import org.kie.kieora.backend.lucene.fields.FilenameFields;
 import org.kie.kieora.engine.MetaIndexEngine;
 import org.kie.kieora.engine.MetaModelStore;
 import org.kie.kieora.model.KObject;
@@ -38,20 +45,49 @@ import org.kie.kieora.model.schema.MetaProperty;
 import org.kie.kieora.model.schema.MetaType;
 
 import static org.kie.commons.validation.Preconditions.*;
+import static org.kie.kieora.backend.lucene.LuceneSetup.*;
 
 public class LuceneIndexEngine implements MetaIndexEngine {
 
+    /**
+     * Version of the fields indexed for each document, stored along with the indexed revision of
+     * every segment. Segments without it, or with an older one, have no indexed revision, so they're
+     * walked again in full; bump it whenever searches start relying on a new field (2: filename fields).
+     */
+    static final int SCHEMA_VERSION = 2;
+
     private final LuceneSetup lucene;
     private final FieldFactory fieldFactory;
     private final MetaModelStore metaModelStore;
+    private final CommitPolicy commitPolicy;
+    private final ScheduledExecutorService commitTimer;
     private int batchMode = 0;
+    private int pendingDocs = 0;
+    private long pendingSince = 0;
+    private ScheduledFuture<?> scheduledCommit = null;
 
     public LuceneIndexEngine( final MetaModelStore metaModelStore,
                               final LuceneSetup lucene,
                               final FieldFactory fieldFactory ) {
+        this( metaModelStore, lucene, fieldFactory, CommitPolicy.fromSystemProperties() );
+    }
+
+    public LuceneIndexEngine( final MetaModelStore metaModelStore,
+                              final LuceneSetup lucene,
+                              final FieldFactory fieldFactory,
+                              final CommitPolicy commitPolicy ) {
         this.metaModelStore = checkNotNull( "metaModelStore", metaModelStore );
         this.lucene = checkNotNull( "lucene", lucene );
         this.fieldFactory = checkNotNull( "fieldFactory", fieldFactory );
+        this.commitPolicy = checkNotNull( "commitPolicy", commitPolicy );
+        this.commitTimer = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+            @Override
+            public Thread newThread( final Runnable r ) {
+                final Thread thread = new Thread( r, "kieora-index-commit" );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
     }
 
     @Override
@@ -74,7 +110,7 @@ public class LuceneIndexEngine implements MetaIndexEngine {
 
         lucene.indexDocument( object.getId(), newDocument( object ) );
 
-        commitIfNotBatchMode();
+        commitIfNotBatchMode( 1 );
     }
 
     private Document newDocument( final KObject object ) {
@@ -96,6 +132,11 @@ public class LuceneIndexEngine implements MetaIndexEngine {
                     allText.append( field.stringValue() ).append( '\n' );
                 }
             }
+            if ( property.getName().equalsIgnoreCase( CUSTOM_FIELD_FILENAME ) && property.getValue() instanceof String ) {
+                for ( final IndexableField field : FilenameFields.build( (String) property.getValue() ) ) {
+                    doc.add( field );
+                }
+            }
         }
 
         doc.add( new TextField( FULL_TEXT_FIELD, allText.toString().toLowerCase(), Field.Store.NO ) );
@@ -105,9 +146,15 @@ public class LuceneIndexEngine implements MetaIndexEngine {
 
     @Override
     public void index( final KObject... objects ) {
+        final Map<String, Document> docs = new LinkedHashMap<String, Document>( objects.length );
         for ( final KObject object : objects ) {
-            index( object );
+            updateMetaModel( object );
+            docs.put( object.getId(), newDocument( object ) );
         }
+
+        lucene.indexDocuments( docs );
+
+        commitIfNotBatchMode( docs.size() );
     }
 
     @Override
@@ -115,12 +162,14 @@ public class LuceneIndexEngine implements MetaIndexEngine {
                         final KObjectKey to ) {
         lucene.rename( from.getId(), to.getId() );
 
-        commitIfNotBatchMode();
+        commitIfNotBatchMode( 1 );
     }
 
     @Override
     public void delete( final KObjectKey objectKey ) {
         lucene.deleteIfExists( objectKey.getId() );
+
+        commitIfNotBatchMode( 1 );
     }
 
     @Override
@@ -130,24 +179,98 @@ public class LuceneIndexEngine implements MetaIndexEngine {
             ids[ i ] = objectsKey[ i ].getId();
         }
         lucene.deleteIfExists( ids );
+
+        commitIfNotBatchMode( ids.length );
     }
 
-    private synchronized void commitIfNotBatchMode() {
-        if ( batchMode <= 0 ) {
-            commit();
+    private synchronized void commitIfNotBatchMode( final int docs ) {
+        if ( batchMode > 0 || docs <= 0 ) {
+            return;
+        }
+        if ( pendingDocs == 0 ) {
+            pendingSince = System.currentTimeMillis();
+        }
+        pendingDocs += docs;
+        if ( commitPolicy.shouldCommit( pendingDocs, System.currentTimeMillis() - pendingSince, lucene.ramSizeInBytes() ) ) {
+            doCommit();
+        } else if ( scheduledCommit == null && commitPolicy.getMaxDelay() > 0 ) {
+            scheduledCommit = commitTimer.schedule( new Runnable() {
+                @Override
+                public void run() {
+                    commitPending();
+                }
+            }, commitPolicy.getMaxDelay(), TimeUnit.MILLISECONDS );
+        }
+    }
+
+    private synchronized void commitPending() {
+        scheduledCommit = null;
+        if ( pendingDocs > 0 ) {
+            doCommit();
         }
     }
 
+    private void doCommit() {
+        if ( scheduledCommit != null ) {
+            scheduledCommit.cancel( false );
+            scheduledCommit = null;
+        }
+        pendingDocs = 0;
+        lucene.commit();
+    }
+
     @Override
     public synchronized void commit() {
         batchMode--;
         if ( batchMode <= 0 ) {
-            lucene.commit();
+            doCommit();
+        }
+    }
+
+    @Override
+    public String getIndexedRevision( final String clusterId,
+                                      final String segmentId ) {
+        final String schema = lucene.getCommitData( schemaKey( clusterId, segmentId ) );
+        if ( schema == null || Integer.parseInt( schema ) < SCHEMA_VERSION ) {
+            // documents of this segment predate some fields, nothing is indexed as far as a walk is concerned
+            return null;
         }
+        return lucene.getCommitData( revisionKey( clusterId, segmentId ) );
+    }
+
+    @Override
+    public void setIndexedRevision( final String clusterId,
+                                    final String segmentId,
+                                    final String revision ) {
+        lucene.setCommitData( revisionKey( clusterId, segmentId ), revision );
+        lucene.setCommitData( schemaKey( clusterId, segmentId ), revision == null ? null : String.valueOf( SCHEMA_VERSION ) );
+    }
+
+    private static String revisionKey( final String clusterId,
+                                       final String segmentId ) {
+        return "revision|" + checkNotNull( "clusterId", clusterId ) + "|" + checkNotNull( "segmentId", segmentId );
+    }
+
+    private static String schemaKey( final String clusterId,
+                                     final String segmentId ) {
+        return "schema|" + checkNotNull( "clusterId", clusterId ) + "|" + checkNotNull( "segmentId", segmentId );
+    }
+
+    @Override
+    public synchronized void flush() {
+        doCommit();
     }
 
     @Override
     public void dispose() {
+        synchronized ( this ) {
+            if ( scheduledCommit != null ) {
+                scheduledCommit.cancel( false );
+                scheduledCommit = null;
+            }
+            pendingDocs = 0;
+        }
+        commitTimer.shutdownNow();
         metaModelStore.dispose();
         lucene.dispose();
     }
@@ -16,33 +16,44 @@
 
 package org.kie.kieora.backend.lucene;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import org.apache.lucene.document.Document;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
-import org.apache.lucene.sandbox.queries.regex.RegexQuery;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.FilteredQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopScoreDocCollector;
 import org.apache.lucene.search.TotalHitCountCollector;
 import org.apache.lucene.search.WildcardQuery;
 import org.apache.lucene.util.Version;
+import org.kie.kieora.backend.lucene.fields.FilenameFields;
+import org.kie.kieora.backend.lucene.util.ProjectionVisitor;
 import org.kie.kieora.model.KObject;
+import org.kie.kieora.model.KObjectSimpleKey;
 import org.kie.kieora.search.ClusterSegment;
 import org.kie.kieora.search.DateRange;
 import org.kie.kieora.search.SearchIndex;
+import org.kie.kieora.search.SearchPage;
 
 import static java.util.Collections.*;
 import static org.apache.lucene.search.BooleanClause.Occur.*;
 import static org.apache.lucene.search.NumericRangeQuery.*;
-import static org.kie.commons.regex.util.GlobToRegEx.*;
 import static org.kie.commons.validation.PortablePreconditions.*;
 import static org.kie.kieora.backend.lucene.LuceneSetup.*;
 import static org.kie.kieora.backend.lucene.util.KObjectUtil.*;
@@ -53,8 +64,30 @@ import static org.kie.kieora.engine.MetaIndexEngine.*;
  */
 public class LuceneSearchIndex implements SearchIndex {
 
+    private static final Projection<KObject> KOBJECT = new Projection<KObject>( KOBJECT_FIELDS ) {
+        @Override
+        KObject toResult( final Document document ) {
+            return toKObject( document );
+        }
+    };
+
+    private static final Projection<KObjectSimpleKey> SIMPLE_KEY = new Projection<KObjectSimpleKey>( SIMPLE_KEY_FIELDS ) {
+        @Override
+        KObjectSimpleKey toResult( final Document document ) {
+            return toKObjectSimpleKey( document );
+        }
+    };
+
+    private static final int FILTER_CACHE_SIZE = 256;
+
     private final LuceneSetup lucene;
     private final QueryParser queryParser;
+    private final Map<String, Filter> filterCache = synchronizedMap( new LinkedHashMap<String, Filter>( 16, 0.75f, true ) {
+        @Override
+        protected boolean removeEldestEntry( final Map.Entry<String, Filter> eldest ) {
+            return size() > FILTER_CACHE_SIZE;
+        }
+    } );
 
     public LuceneSearchIndex( final LuceneSetup lucene ) {
         this.lucene = checkNotNull( "lucene", lucene );
@@ -70,7 +103,7 @@ public class LuceneSearchIndex implements SearchIndex {
         if ( attrs == null || attrs.size() == 0 ) {
             return emptyList();
         }
-        return search( buildQuery( attrs, clusterSegments ), pageSize, startIndex );
+        return search( buildQuery( attrs, clusterSegments ), pageSize, startIndex, KOBJECT );
     }
 
     @Override
@@ -78,7 +111,64 @@ public class LuceneSearchIndex implements SearchIndex {
                                          final int pageSize,
                                          final int startIndex,
                                          final ClusterSegment... clusterSegments ) {
-        return search( buildQuery( term, clusterSegments ), pageSize, startIndex );
+        return search( buildQuery( term, clusterSegments ), pageSize, startIndex, KOBJECT );
+    }
+
+    @Override
+    public SearchPage<KObject> searchByAttrs( final Map<String, ?> attrs,
+                                              final int pageSize,
+                                              final String continuation,
+                                              final ClusterSegment... clusterSegments ) {
+        if ( attrs == null || attrs.size() == 0 ) {
+            return new SearchPage<KObject>( Collections.<KObject>emptyList(), null );
+        }
+        return searchAfter( buildQuery( attrs, clusterSegments ), pageSize, continuation, KOBJECT );
+    }
+
+    @Override
+    public SearchPage<KObject> fullTextSearch( final String term,
+                                               final int pageSize,
+                                               final String continuation,
+                                               final ClusterSegment... clusterSegments ) {
+        return searchAfter( buildQuery( term, clusterSegments ), pageSize, continuation, KOBJECT );
+    }
+
+    @Override
+    public List<KObjectSimpleKey> searchKeysByAttrs( final Map<String, ?> attrs,
+                                                     final int pageSize,
+                                                     final int startIndex,
+                                                     final ClusterSegment... clusterSegments ) {
+        if ( attrs == null || attrs.size() == 0 ) {
+            return emptyList();
+        }
+        return search( buildQuery( attrs, clusterSegments ), pageSize, startIndex, SIMPLE_KEY );
+    }
+
+    @Override
+    public List<KObjectSimpleKey> fullTextSearchKeys( final String term,
+                                                      final int pageSize,
+                                                      final int startIndex,
+                                                      final ClusterSegment... clusterSegments ) {
+        return search( buildQuery( term, clusterSegments ), pageSize, startIndex, SIMPLE_KEY );
+    }
+
+    @Override
+    public SearchPage<KObjectSimpleKey> searchKeysByAttrs( final Map<String, ?> attrs,
+                                                           final int pageSize,
+                                                           final String continuation,
+                                                           final ClusterSegment... clusterSegments ) {
+        if ( attrs == null || attrs.size() == 0 ) {
+            return new SearchPage<KObjectSimpleKey>( Collections.<KObjectSimpleKey>emptyList(), null );
+        }
+        return searchAfter( buildQuery( attrs, clusterSegments ), pageSize, continuation, SIMPLE_KEY );
+    }
+
+    @Override
+    public SearchPage<KObjectSimpleKey> fullTextSearchKeys( final String term,
+                                                            final int pageSize,
+                                                            final String continuation,
+                                                            final ClusterSegment... clusterSegments ) {
+        return searchAfter( buildQuery( term, clusterSegments ), pageSize, continuation, SIMPLE_KEY );
     }
 
     @Override
@@ -109,18 +199,19 @@ public class LuceneSearchIndex implements SearchIndex {
         }
     }
 
-    private List<KObject> search( final Query query,
-                                  final int pageSize,
-                                  final int startIndex ) {
-        final TopScoreDocCollector collector = TopScoreDocCollector.create( ( startIndex + 1 ) * pageSize, true );
+    private <T> List<T> search( final Query query,
+                                final int pageSize,
+                                final int startIndex,
+                                final Projection<T> projection ) {
+        final TopScoreDocCollector collector = TopScoreDocCollector.create( startIndex + pageSize, true );
         final IndexSearcher index = lucene.nrtSearcher();
-        final List<KObject> result = new ArrayList<KObject>( pageSize );
+        final List<T> result = new ArrayList<T>( pageSize );
         try {
             index.search( query, collector );
             final ScoreDoc[] hits = collector.topDocs( startIndex ).scoreDocs;
             int iterations = hits.length > pageSize ? pageSize : hits.length;
             for ( int i = 0; i < iterations; i++ ) {
-                result.add( toKObject( index.doc( hits[ i ].doc ) ) );
+                result.add( projection.load( index, hits[ i ].doc ) );
             }
         } catch ( final Exception ex ) {
             throw new RuntimeException( "Error during Query!", ex );
@@ -131,6 +222,55 @@ public class LuceneSearchIndex implements SearchIndex {
         return result;
     }
 
+    /**
+     * Collects one hit past the page, so the token is only handed out when there really is a
+     * next page. Doc ids in the token are only stable while segments aren't merged, so a page
+     * read after a refresh may repeat or skip a few hits; it never costs more than one page.
+     */
+    private <T> SearchPage<T> searchAfter( final Query query,
+                                           final int pageSize,
+                                           final String continuation,
+                                           final Projection<T> projection ) {
+        checkCondition( "pageSize must be positive", pageSize > 0 );
+        final ScoreDoc after = continuation == null ? null : decode( continuation );
+        final TopScoreDocCollector collector = TopScoreDocCollector.create( pageSize + 1, after, true );
+        final IndexSearcher index = lucene.nrtSearcher();
+        try {
+            index.search( query, collector );
+            final ScoreDoc[] hits = collector.topDocs().scoreDocs;
+            final int iterations = hits.length > pageSize ? pageSize : hits.length;
+            final List<T> result = new ArrayList<T>( iterations );
+            for ( int i = 0; i < iterations; i++ ) {
+                result.add( projection.load( index, hits[ i ].doc ) );
+            }
+            final String next = hits.length > pageSize ? encode( hits[ pageSize - 1 ] ) : null;
+            return new SearchPage<T>( result, next );
+        } catch ( final Exception ex ) {
+            throw new RuntimeException( "Error during Query!", ex );
+        } finally {
+            lucene.nrtRelease( index );
+        }
+    }
+
+    private static String encode( final ScoreDoc scoreDoc ) {
+        return Integer.toString( scoreDoc.doc, Character.MAX_RADIX ) + "." +
+                Integer.toString( Float.floatToIntBits( scoreDoc.score ), Character.MAX_RADIX );
+    }
+
+    private static ScoreDoc decode( final String continuation ) {
+        final int separator = continuation.indexOf( '.' );
+        if ( separator <= 0 ) {
+            throw new IllegalArgumentException( "invalid continuation token: " + continuation );
+        }
+        try {
+            final int doc = Integer.parseInt( continuation.substring( 0, separator ), Character.MAX_RADIX );
+            final int score = Integer.parseInt( continuation.substring( separator + 1 ), Character.MAX_RADIX );
+            return new ScoreDoc( doc, Float.intBitsToFloat( score ) );
+        } catch ( final NumberFormatException ex ) {
+            throw new IllegalArgumentException( "invalid continuation token: " + continuation, ex );
+        }
+    }
+
     private Query buildQuery( final Map<String, ?> attrs,
                               final ClusterSegment... clusterSegments ) {
         final BooleanQuery query = new BooleanQuery();
@@ -141,7 +281,7 @@ public class LuceneSearchIndex implements SearchIndex {
                 query.add( newLongRange( entry.getKey(), from, to, true, true ), MUST );
             } else if ( entry.getValue() instanceof String ) {
                 if ( entry.getKey().equalsIgnoreCase( CUSTOM_FIELD_FILENAME ) ) {
-                    query.add( new RegexQuery( new Term( entry.getKey(), globToRegex( entry.getValue().toString().toLowerCase() ) ) ), MUST );
+                    query.add( FilenameFields.globQuery( entry.getValue().toString() ), MUST );
                 } else {
                     query.add( new WildcardQuery( new Term( entry.getKey(), entry.getValue().toString() ) ), MUST );
                 }
@@ -168,52 +308,92 @@ public class LuceneSearchIndex implements SearchIndex {
     private Query composeQuery( final Query query,
                                 final ClusterSegment... clusterSegments ) {
         if ( clusterSegments != null && clusterSegments.length > 0 ) {
-            final BooleanQuery booleanQuery = new BooleanQuery();
-            booleanQuery.add( query, MUST );
+            return new FilteredQuery( query, clusterSegmentFilter( clusterSegments ) );
+        }
 
-            final BooleanQuery complement;
+        return query;
+    }
 
-            if ( clusterSegments.length == 1 ) {
-                complement = booleanQuery;
-            } else {
-                complement = new BooleanQuery();
-            }
+    /**
+     * The restriction doesn't take part in scoring, so it is applied as a filter whose bitsets
+     * are cached per index segment. Filters are kept per set of cluster and segment ids, so
+     * searches scoped to the same roots reuse the bitsets of the segments that didn't change.
+     */
+    Filter clusterSegmentFilter( final ClusterSegment... clusterSegments ) {
+        final String key = filterKey( clusterSegments );
+        Filter filter = filterCache.get( key );
+        if ( filter == null ) {
+            filter = new CachingWrapperFilter( new QueryWrapperFilter( clusterSegmentQuery( clusterSegments ) ) );
+            filterCache.put( key, filter );
+        }
+        return filter;
+    }
 
-            for ( final ClusterSegment clusterSegment : clusterSegments ) {
-                final BooleanQuery clusterBoolean = new BooleanQuery();
-                if ( clusterSegment.getClusterId() != null ) {
-                    final Query cluster = new TermQuery( new Term( "cluster.id", clusterSegment.getClusterId() ) );
-                    clusterBoolean.add( cluster, MUST );
-                }
-                if ( clusterSegment.segmentIds() != null && clusterSegment.segmentIds().length > 0 ) {
-                    if ( clusterSegment.segmentIds().length == 1 ) {
-                        final Query segment = new TermQuery( new Term( "segment.id", clusterSegment.segmentIds()[ 0 ] ) );
-                        clusterBoolean.add( segment, MUST );
-                    } else {
-                        final BooleanQuery segments = new BooleanQuery();
-                        for ( final String segmentId : clusterSegment.segmentIds() ) {
-                            final Query segment = new TermQuery( new Term( "segment.id", segmentId ) );
-                            segments.add( segment, BooleanClause.Occur.SHOULD );
-                        }
-                        clusterBoolean.add( segments, MUST );
+    private Query clusterSegmentQuery( final ClusterSegment... clusterSegments ) {
+        final BooleanQuery complement = new BooleanQuery();
+
+        for ( final ClusterSegment clusterSegment : clusterSegments ) {
+            final BooleanQuery clusterBoolean = new BooleanQuery();
+            if ( clusterSegment.getClusterId() != null ) {
+                final Query cluster = new TermQuery( new Term( "cluster.id", clusterSegment.getClusterId() ) );
+                clusterBoolean.add( cluster, MUST );
+            }
+            if ( clusterSegment.segmentIds() != null && clusterSegment.segmentIds().length > 0 ) {
+                if ( clusterSegment.segmentIds().length == 1 ) {
+                    final Query segment = new TermQuery( new Term( "segment.id", clusterSegment.segmentIds()[ 0 ] ) );
+                    clusterBoolean.add( segment, MUST );
+                } else {
+                    final BooleanQuery segments = new BooleanQuery();
+                    for ( final String segmentId : clusterSegment.segmentIds() ) {
+                        final Query segment = new TermQuery( new Term( "segment.id", segmentId ) );
+                        segments.add( segment, BooleanClause.Occur.SHOULD );
                     }
+                    clusterBoolean.add( segments, MUST );
                 }
-                complement.add( clusterBoolean, MUST );
             }
+            complement.add( clusterBoolean, MUST );
+        }
 
-            if ( clusterSegments.length == 1 ) {
-                return complement;
-            }
+        return complement;
+    }
 
-            booleanQuery.add( complement, MUST );
-            return booleanQuery;
+    private String filterKey( final ClusterSegment... clusterSegments ) {
+        final StringBuilder key = new StringBuilder();
+        for ( final ClusterSegment clusterSegment : clusterSegments ) {
+            key.append( clusterSegment.getClusterId() ).append( '|' );
+            if ( clusterSegment.segmentIds() != null ) {
+                for ( final String segmentId : clusterSegment.segmentIds() ) {
+                    key.append( segmentId ).append( ',' );
+                }
+            }
+            key.append( '\n' );
         }
-
-        return query;
+        return key.toString();
     }
 
     private String format( final String term ) {
         return term.toLowerCase();
     }
 
+    /**
+     * Builds a hit from the stored fields it needs, without decoding the rest of the document.
+     */
+    private static abstract class Projection<T> {
+
+        private final Set<String> fields;
+
+        Projection( final Set<String> fields ) {
+            this.fields = fields;
+        }
+
+        T load( final IndexSearcher index,
+                final int doc ) throws IOException {
+            final ProjectionVisitor visitor = new ProjectionVisitor( fields );
+            index.doc( doc, visitor );
+            return toResult( visitor.getDocument() );
+        }
+
+        abstract T toResult( final Document document );
+    }
+
 }
@@ -16,6 +16,8 @@
 
 package org.kie.kieora.backend.lucene;
 
+import java.util.Map;
+
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.search.IndexSearcher;
@@ -32,18 +34,52 @@ public interface LuceneSetup {
     void indexDocument( final String id,
                         final Document doc );
 
+    /**
+     * Adds or replaces, by id, every document of the map as a single write generation.
+     */
+    void indexDocuments( final Map<String, Document> docs );
+
     void deleteIfExists( final String... ids );
 
     void rename( final String source,
                  final String target );
 
+    /**
+     * @return a shared searcher that sees every write made before the call; hand it back with {@link #nrtRelease(IndexSearcher)}
+     */
     IndexSearcher nrtSearcher();
 
     void nrtRelease( final IndexSearcher searcher );
 
+    /**
+     * @return generation of the latest write; it grows by one on every index, delete or rename
+     */
+    long generation();
+
+    /**
+     * Blocks until searchers reflect every write up to the given generation.
+     */
+    void waitForGeneration( final long generation );
+
     void dispose();
 
     boolean freshIndex();
 
     void commit();
+
+    /**
+     * @return value stored with the latest commit under the key, or <code>null</code>
+     */
+    String getCommitData( final String key );
+
+    /**
+     * Stores a value with the next commit, so it survives a restart along with the documents written before it.
+     */
+    void setCommitData( final String key,
+                        final String value );
+
+    /**
+     * @return bytes buffered by the index writer and not flushed to a segment yet
+     */
+    long ramSizeInBytes();
 }
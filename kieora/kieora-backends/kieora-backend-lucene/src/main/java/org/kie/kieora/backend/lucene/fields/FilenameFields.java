@@ -0,0 +1,167 @@
+/*
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kie.kieora.backend.lucene.fields;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.analysis.ngram.NGramTokenizer;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.AutomatonQuery;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.PhraseQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.automaton.Automaton;
+import org.apache.lucene.util.automaton.RegExp;
+
+import static org.apache.lucene.search.BooleanClause.Occur.*;
+import static org.kie.commons.regex.util.GlobToRegEx.*;
+import static org.kie.kieora.backend.lucene.LuceneSetup.*;
+
+/**
+ * Extra fields indexed next to {@link org.kie.kieora.backend.lucene.LuceneSetup#CUSTOM_FIELD_FILENAME}
+ * so glob lookups don't have to walk the whole term dictionary of the filename field:
+ * <ul>
+ * <li>the reversed filename, so a glob with a literal suffix (<code>*.drl</code>) seeks straight to it;</li>
+ * <li>the filename trigrams at consecutive positions, so a literal in the middle
+ * (<code>*rule*</code>) becomes a phrase query.</li>
+ * </ul>
+ * Globs keep the semantics of {@link org.kie.commons.regex.util.GlobToRegEx} and are matched
+ * against the lower cased filename. Compiled automata are cached, as the same handful of globs
+ * come back over and over from the UI; queries are built anew for every call, so callers are
+ * free to modify them.
+ */
+public final class FilenameFields {
+
+    public static final String REVERSED_FIELD = CUSTOM_FIELD_FILENAME + ".reversed";
+    public static final String NGRAM_FIELD = CUSTOM_FIELD_FILENAME + ".ngram";
+
+    static final int NGRAM_SIZE = 3;
+    private static final int CACHE_SIZE = 1000;
+
+    private static final Map<String, Automaton> AUTOMATON_CACHE = Collections.synchronizedMap( new LinkedHashMap<String, Automaton>( 64, 0.75f, true ) {
+        @Override
+        protected boolean removeEldestEntry( final Map.Entry<String, Automaton> eldest ) {
+            return size() > CACHE_SIZE;
+        }
+    } );
+
+    private FilenameFields() {
+    }
+
+    public static IndexableField[] build( final String filename ) {
+        final String value = filename.toLowerCase();
+        return new IndexableField[]{
+                new StringField( REVERSED_FIELD, reverse( value ), Field.Store.NO ),
+                new TextField( NGRAM_FIELD, new NGramTokenizer( new StringReader( value ), NGRAM_SIZE, NGRAM_SIZE ) )
+        };
+    }
+
+    public static Query globQuery( final String glob ) {
+        return buildGlobQuery( glob.toLowerCase() );
+    }
+
+    static Query buildGlobQuery( final String glob ) {
+        if ( glob.isEmpty() || !isWildcard( glob.charAt( 0 ) ) ) {
+            // a literal prefix lets the terms enum seek to it
+            return automatonQuery( CUSTOM_FIELD_FILENAME, glob );
+        }
+
+        final boolean simple = isSimple( glob );
+        if ( simple && !isWildcard( glob.charAt( glob.length() - 1 ) ) ) {
+            return automatonQuery( REVERSED_FIELD, reverse( glob ) );
+        }
+
+        final List<String> literals = simple ? literals( glob ) : Collections.<String>emptyList();
+        if ( literals.isEmpty() ) {
+            return automatonQuery( CUSTOM_FIELD_FILENAME, glob );
+        }
+
+        if ( glob.equals( "*" + literals.get( 0 ) + "*" ) ) {
+            // the trigrams alone answer *literal*
+            return phraseQuery( literals.get( 0 ) );
+        }
+
+        // trigrams narrow down the candidates, the automaton checks the whole glob
+        final BooleanQuery query = new BooleanQuery();
+        for ( final String literal : literals ) {
+            query.add( phraseQuery( literal ), MUST );
+        }
+        query.add( automatonQuery( CUSTOM_FIELD_FILENAME, glob ), MUST );
+        return query;
+    }
+
+    private static Query automatonQuery( final String field,
+                                         final String glob ) {
+        Automaton automaton = AUTOMATON_CACHE.get( glob );
+        if ( automaton == null ) {
+            final String regex = globToRegex( glob ).replace( "\"", "\\\"" );
+            automaton = new RegExp( regex, RegExp.NONE ).toAutomaton();
+            AUTOMATON_CACHE.put( glob, automaton );
+        }
+        return new AutomatonQuery( new Term( field, glob ), automaton.clone() );
+    }
+
+    private static Query phraseQuery( final String literal ) {
+        final PhraseQuery query = new PhraseQuery();
+        for ( int i = 0; i + NGRAM_SIZE <= literal.length(); i++ ) {
+            query.add( new Term( NGRAM_FIELD, literal.substring( i, i + NGRAM_SIZE ) ), i );
+        }
+        return query;
+    }
+
+    /**
+     * Literals between wildcards long enough to produce at least one trigram.
+     */
+    private static List<String> literals( final String glob ) {
+        final List<String> result = new ArrayList<String>();
+        final StringBuilder current = new StringBuilder();
+        for ( int i = 0; i <= glob.length(); i++ ) {
+            if ( i == glob.length() || isWildcard( glob.charAt( i ) ) ) {
+                if ( current.length() >= NGRAM_SIZE ) {
+                    result.add( current.toString() );
+                }
+                current.setLength( 0 );
+            } else {
+                current.append( glob.charAt( i ) );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Only wildcards and plain characters; character sets and escapes are left to the automaton.
+     */
+    private static boolean isSimple( final String glob ) {
+        return glob.indexOf( '[' ) < 0 && glob.indexOf( ']' ) < 0 && glob.indexOf( '\\' ) < 0;
+    }
+
+    private static boolean isWildcard( final char c ) {
+        return c == '*' || c == '?' || c == '[' || c == '\\';
+    }
+
+    private static String reverse( final String value ) {
+        return new StringBuilder( value ).reverse().toString();
+    }
+}
@@ -18,6 +18,8 @@ package org.kie.kieora.backend.lucene.setups;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
@@ -26,6 +28,7 @@ import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.DocsEnum;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
@@ -34,30 +37,48 @@ import org.kie.kieora.backend.lucene.LuceneSetup;
 
 public abstract class BaseLuceneSetup implements LuceneSetup {
 
+    protected final AtomicLong writeGeneration = new AtomicLong( 0 );
+
     @Override
     public void indexDocument( final String id,
                                final Document doc ) {
         try {
-            deleteIfExists( id );
-            writer().addDocument( doc );
+            writer().updateDocument( idTerm( id ), doc );
+            writeGeneration.incrementAndGet();
         } catch ( IOException e ) {
             throw new RuntimeException( e );
         }
     }
 
     @Override
-    public void deleteIfExists( final String... docIds ) {
-        final IndexSearcher searcher = nrtSearcher();
+    public void indexDocuments( final Map<String, Document> docs ) {
+        if ( docs.isEmpty() ) {
+            return;
+        }
         try {
-            final int[] answers = lookupDocIdByPK( searcher, docIds );
-            for ( final int docId : answers ) {
-                if ( docId != -1 ) {
-                    writer().tryDeleteDocument( searcher.getIndexReader(), docId );
-                }
+            for ( final Map.Entry<String, Document> entry : docs.entrySet() ) {
+                writer().updateDocument( idTerm( entry.getKey() ), entry.getValue() );
             }
-        } catch ( Exception ex ) {
-        } finally {
-            nrtRelease( searcher );
+            writeGeneration.incrementAndGet();
+        } catch ( IOException e ) {
+            throw new RuntimeException( e );
+        }
+    }
+
+    @Override
+    public void deleteIfExists( final String... docIds ) {
+        if ( docIds.length == 0 ) {
+            return;
+        }
+        final Term[] terms = new Term[ docIds.length ];
+        for ( int i = 0; i < docIds.length; i++ ) {
+            terms[ i ] = idTerm( docIds[ i ] );
+        }
+        try {
+            writer().deleteDocuments( terms );
+            writeGeneration.incrementAndGet();
+        } catch ( IOException e ) {
+            throw new RuntimeException( e );
         }
     }
 
@@ -67,6 +88,9 @@ public abstract class BaseLuceneSetup implements LuceneSetup {
         final IndexSearcher searcher = nrtSearcher();
         try {
             int docId = lookupDocIdByPK( searcher, sourceId )[ 0 ];
+            if ( docId == -1 ) {
+                return;
+            }
             final Document source = searcher.getIndexReader().document( docId );
 
             source.removeField( "id" );
@@ -79,6 +103,20 @@ public abstract class BaseLuceneSetup implements LuceneSetup {
         }
     }
 
+    @Override
+    public long ramSizeInBytes() {
+        return writer().ramSizeInBytes();
+    }
+
+    @Override
+    public long generation() {
+        return writeGeneration.get();
+    }
+
+    protected static Term idTerm( final String id ) {
+        return new Term( "id", id );
+    }
+
     protected int[] lookupDocIdByPK( final IndexSearcher searcher,
                                      final String... ids ) throws IOException {
         final List<AtomicReaderContext> subReaders = searcher.getIndexReader().leaves();
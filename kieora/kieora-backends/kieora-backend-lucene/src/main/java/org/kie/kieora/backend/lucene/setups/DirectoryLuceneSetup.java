@@ -19,6 +19,9 @@ package org.kie.kieora.backend.lucene.setups;
 import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
@@ -27,10 +30,10 @@ import org.apache.lucene.codecs.Codec;
 import org.apache.lucene.codecs.PostingsFormat;
 import org.apache.lucene.codecs.lucene40.Lucene40Codec;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexCommit;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.SearcherFactory;
 import org.apache.lucene.store.Directory;
 import org.kie.kieora.backend.lucene.analyzer.FilenameAnalyzer;
 
@@ -43,11 +46,16 @@ import static org.kie.commons.validation.Preconditions.*;
 public class DirectoryLuceneSetup extends BaseLuceneSetup {
 
     public static final String REPOSITORIES_ROOT_DIR = ".index";
+    public static final long DEFAULT_NRT_REFRESH_INTERVAL = 250;
+
+    private static final String NRT_REFRESH_INTERVAL = "org.kie.kieora.index.nrt.refresh";
 
     private final IndexWriter writer;
     private final Analyzer analyzer;
     private final Directory directory;
     private final boolean freshIndex;
+    private final NRTSearchers searchers;
+    private final Map<String, String> commitData = new ConcurrentHashMap<String, String>();
 
     public DirectoryLuceneSetup( final Directory directory,
                                  final boolean freshIndex ) {
@@ -73,7 +81,15 @@ public class DirectoryLuceneSetup extends BaseLuceneSetup {
             };
             config.setCodec( codec );
 
+            if ( DirectoryReader.indexExists( directory ) ) {
+                final List<IndexCommit> commits = DirectoryReader.listCommits( directory );
+                if ( !commits.isEmpty() ) {
+                    this.commitData.putAll( commits.get( commits.size() - 1 ).getUserData() );
+                }
+            }
+
             this.writer = new IndexWriter( directory, config );
+            this.searchers = new NRTSearchers( writer, writeGeneration, nrtRefreshInterval() );
         } catch ( final Exception ex ) {
             throw new RuntimeException( ex );
         }
@@ -86,20 +102,17 @@ public class DirectoryLuceneSetup extends BaseLuceneSetup {
 
     @Override
     public IndexSearcher nrtSearcher() {
-        try {
-            return new SearcherFactory().newSearcher( DirectoryReader.open( writer, true ) );
-        } catch ( IOException e ) {
-            throw new RuntimeException( e );
-        }
+        return searchers.acquire( writeGeneration.get() );
     }
 
     @Override
     public void nrtRelease( final IndexSearcher searcher ) {
-        try {
-            searcher.getIndexReader().close();
-        } catch ( IOException e ) {
-            throw new RuntimeException( e );
-        }
+        searchers.release( searcher );
+    }
+
+    @Override
+    public void waitForGeneration( final long generation ) {
+        searchers.waitForGeneration( generation );
     }
 
     @Override
@@ -109,8 +122,9 @@ public class DirectoryLuceneSetup extends BaseLuceneSetup {
 
     @Override
     public void dispose() {
+        searchers.close();
         try {
-            writer.commit();
+            writer.commit( new HashMap<String, String>( commitData ) );
             writer.close();
             analyzer.close();
             directory.close();
@@ -127,16 +141,44 @@ public class DirectoryLuceneSetup extends BaseLuceneSetup {
     @Override
     public void commit() {
         try {
-            writer.commit();
+            writer.commit( new HashMap<String, String>( commitData ) );
         } catch ( IOException e ) {
             throw new RuntimeException( e );
         }
     }
 
+    @Override
+    public String getCommitData( final String key ) {
+        return commitData.get( checkNotNull( "key", key ) );
+    }
+
+    @Override
+    public void setCommitData( final String key,
+                               final String value ) {
+        checkNotNull( "key", key );
+        if ( value == null ) {
+            commitData.remove( key );
+        } else {
+            commitData.put( key, value );
+        }
+    }
+
     protected static boolean freshIndex( final File file ) {
         return !file.exists();
     }
 
+    protected static long nrtRefreshInterval() {
+        final String value = System.getProperty( NRT_REFRESH_INTERVAL );
+        if ( value == null || value.trim().isEmpty() ) {
+            return DEFAULT_NRT_REFRESH_INTERVAL;
+        }
+        try {
+            return Long.parseLong( value.trim() );
+        } catch ( final NumberFormatException e ) {
+            return DEFAULT_NRT_REFRESH_INTERVAL;
+        }
+    }
+
     protected static File defaultFile() {
         final String value = System.getProperty( "org.kie.kieora.index.dir" );
         if ( value == null || value.trim().isEmpty() ) {
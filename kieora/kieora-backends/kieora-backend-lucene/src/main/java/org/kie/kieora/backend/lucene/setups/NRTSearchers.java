@@ -0,0 +1,148 @@
+/*
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kie.kieora.backend.lucene.setups;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
+
+import static org.kie.commons.validation.Preconditions.*;
+
+/**
+ * Shared, reference counted near-real-time searchers of an {@link IndexWriter}.
+ * <p/>
+ * Every write bumps a generation counter; a searcher is reopened only when some write
+ * happened since the last reopen, either by the background refresh task or by a caller
+ * that asks for a generation the current searcher doesn't cover yet.
+ */
+class NRTSearchers {
+
+    private final SearcherManager manager;
+    private final AtomicLong writeGeneration;
+    private final Object refreshLock = new Object();
+    private final ScheduledExecutorService refresher;
+
+    private volatile long searchingGeneration;
+    private volatile boolean closed = false;
+
+    NRTSearchers( final IndexWriter writer,
+                  final AtomicLong writeGeneration,
+                  final long refreshInterval ) {
+        checkNotNull( "writer", writer );
+        this.writeGeneration = checkNotNull( "writeGeneration", writeGeneration );
+        checkCondition( "refreshInterval must be positive", refreshInterval > 0 );
+        try {
+            this.searchingGeneration = writeGeneration.get();
+            this.manager = new SearcherManager( writer, true, new SearcherFactory() );
+        } catch ( final IOException e ) {
+            throw new RuntimeException( e );
+        }
+
+        this.refresher = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+            @Override
+            public Thread newThread( final Runnable r ) {
+                final Thread thread = new Thread( r, "kieora-nrt-refresh" );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+        this.refresher.scheduleWithFixedDelay( new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    refresh( writeGeneration.get() );
+                } catch ( final Exception ignore ) {
+                }
+            }
+        }, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     * @return a searcher that covers at least the given write generation; must be handed back to {@link #release(IndexSearcher)}
+     */
+    IndexSearcher acquire( final long generation ) {
+        waitForGeneration( generation );
+        try {
+            return manager.acquire();
+        } catch ( final IOException e ) {
+            throw new RuntimeException( e );
+        }
+    }
+
+    void release( final IndexSearcher searcher ) {
+        if ( searcher == null ) {
+            return;
+        }
+        try {
+            manager.release( searcher );
+        } catch ( final IOException e ) {
+            throw new RuntimeException( e );
+        }
+    }
+
+    void waitForGeneration( final long generation ) {
+        checkCondition( "generation can't be greater than the current write generation", generation <= writeGeneration.get() );
+        if ( searchingGeneration < generation ) {
+            refresh( generation );
+        }
+    }
+
+    long getSearchingGeneration() {
+        return searchingGeneration;
+    }
+
+    void close() {
+        closed = true;
+        refresher.shutdown();
+        try {
+            refresher.awaitTermination( 10, TimeUnit.SECONDS );
+        } catch ( final InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized ( refreshLock ) {
+            try {
+                manager.close();
+            } catch ( final IOException e ) {
+                throw new RuntimeException( e );
+            }
+        }
+    }
+
+    private void refresh( final long generation ) {
+        synchronized ( refreshLock ) {
+            if ( closed || searchingGeneration >= generation ) {
+                return;
+            }
+            // read before reopening: every write numbered up to here is already in the writer
+            final long target = writeGeneration.get();
+            try {
+                manager.maybeRefreshBlocking();
+            } catch ( final IOException e ) {
+                throw new RuntimeException( e );
+            }
+            searchingGeneration = target;
+        }
+    }
+}
@@ -16,8 +16,13 @@
 
 package org.kie.kieora.backend.lucene.util;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
 import org.apache.lucene.document.Document;
 import org.kie.kieora.model.KObject;
+import org.kie.kieora.model.KObjectSimpleKey;
 import org.kie.kieora.model.KProperty;
 import org.kie.kieora.model.schema.MetaType;
 
@@ -26,6 +31,35 @@ import org.kie.kieora.model.schema.MetaType;
  */
 public final class KObjectUtil {
 
+    /**
+     * Stored fields read by {@link #toKObject(Document)}.
+     */
+    public static final Set<String> KOBJECT_FIELDS = new HashSet<String>( Arrays.asList( "id", "type", "key", "cluster.id", "segment.id" ) );
+
+    /**
+     * Stored fields read by {@link #toKObjectSimpleKey(Document)}.
+     */
+    public static final Set<String> SIMPLE_KEY_FIELDS = new HashSet<String>( Arrays.asList( "key", "cluster.id", "segment.id" ) );
+
+    public static KObjectSimpleKey toKObjectSimpleKey( final Document document ) {
+        return new KObjectSimpleKey() {
+            @Override
+            public String getClusterId() {
+                return document.get( "cluster.id" );
+            }
+
+            @Override
+            public String getSegmentId() {
+                return document.get( "segment.id" );
+            }
+
+            @Override
+            public String getKey() {
+                return document.get( "key" );
+            }
+        };
+    }
+
     public static KObject toKObject( final Document document ) {
         return new KObject() {
 
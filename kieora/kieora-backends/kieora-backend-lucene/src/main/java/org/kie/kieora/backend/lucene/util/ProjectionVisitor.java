@@ -0,0 +1,52 @@
+/*
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.kie.kieora.backend.lucene.util;
+
+import java.io.IOException;
+import java.util.Set;
+
+import org.apache.lucene.document.DocumentStoredFieldVisitor;
+import org.apache.lucene.index.FieldInfo;
+
+/**
+ * Loads only the given stored fields and stops reading the document once all of them were
+ * found. Key fields are stored first, so the properties after them are never decoded.
+ */
+public final class ProjectionVisitor extends DocumentStoredFieldVisitor {
+
+    private final Set<String> fields;
+    private int loaded = 0;
+
+    public ProjectionVisitor( final Set<String> fields ) {
+        super( fields );
+        this.fields = fields;
+    }
+
+    @Override
+    public Status needsField( final FieldInfo fieldInfo ) throws IOException {
+        if ( loaded >= fields.size() ) {
+            return Status.STOP;
+        }
+        return fields.contains( fieldInfo.name ) ? Status.YES : Status.NO;
+    }
+
+    @Override
+    public void stringField( final FieldInfo fieldInfo,
+                             final String value ) throws IOException {
+        super.stringField( fieldInfo, value );
+        loaded++;
+    }
+}
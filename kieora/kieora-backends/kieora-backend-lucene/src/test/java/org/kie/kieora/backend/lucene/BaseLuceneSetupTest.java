@@ -1,6 +1,8 @@
 package org.kie.kieora.backend.lucene;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
@@ -14,6 +16,7 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.TotalHitCountCollector;
 import org.junit.Test;
 import org.kie.kieora.backend.lucene.setups.BaseLuceneSetup;
 
@@ -73,6 +76,93 @@ public abstract class BaseLuceneSetupTest {
         assertEquals( 1, hits2.length );
     }
 
+    @Test
+    public void testSharedSearcher() throws IOException {
+        final BaseLuceneSetup config = getLuceneSetup();
+
+        final long initial = config.generation();
+
+        final Document doc = new Document();
+        doc.add( new StringField( "id", "shared.id", Field.Store.YES ) );
+        doc.add( new TextField( "content", "shared searcher", Field.Store.YES ) );
+
+        config.indexDocument( "shared.id", doc );
+
+        assertTrue( config.generation() > initial );
+
+        final IndexSearcher searcher1 = config.nrtSearcher();
+        final IndexSearcher searcher2 = config.nrtSearcher();
+        try {
+            assertSame( searcher1, searcher2 );
+            assertEquals( 1, searcher1.getIndexReader().numDocs() );
+        } finally {
+            config.nrtRelease( searcher1 );
+            config.nrtRelease( searcher2 );
+        }
+
+        config.deleteIfExists( "shared.id" );
+        config.waitForGeneration( config.generation() );
+
+        final IndexSearcher searcher3 = config.nrtSearcher();
+        try {
+            assertNotSame( searcher1, searcher3 );
+            assertEquals( 0, searcher3.getIndexReader().numDocs() );
+        } finally {
+            config.nrtRelease( searcher3 );
+        }
+    }
+
+    @Test
+    public void testBatchUpdateAndDelete() throws IOException {
+        final BaseLuceneSetup config = getLuceneSetup();
+
+        final Map<String, Document> docs = new LinkedHashMap<String, Document>();
+        for ( int i = 0; i < 5; i++ ) {
+            docs.put( "batch.id." + i, newDoc( "batch.id." + i, "first" ) );
+        }
+
+        final long initial = config.generation();
+        config.indexDocuments( docs );
+        assertEquals( initial + 1, config.generation() );
+
+        config.indexDocument( "batch.id.0", newDoc( "batch.id.0", "second" ) );
+        assertEquals( 5, numDocs( config ) );
+        assertEquals( 1, hits( config, "second" ) );
+        assertEquals( 4, hits( config, "first" ) );
+
+        config.deleteIfExists( "batch.id.1", "batch.id.2", "not.there" );
+        assertEquals( 3, numDocs( config ) );
+    }
+
+    private Document newDoc( final String id,
+                             final String content ) {
+        final Document doc = new Document();
+        doc.add( new StringField( "id", id, Field.Store.YES ) );
+        doc.add( new TextField( "content", content, Field.Store.YES ) );
+        return doc;
+    }
+
+    private int numDocs( final BaseLuceneSetup config ) {
+        final IndexSearcher searcher = config.nrtSearcher();
+        try {
+            return searcher.getIndexReader().numDocs();
+        } finally {
+            config.nrtRelease( searcher );
+        }
+    }
+
+    private int hits( final BaseLuceneSetup config,
+                      final String content ) throws IOException {
+        final IndexSearcher searcher = config.nrtSearcher();
+        try {
+            final TotalHitCountCollector collector = new TotalHitCountCollector();
+            searcher.search( new TermQuery( new Term( "content", content ) ), collector );
+            return collector.getTotalHits();
+        } finally {
+            config.nrtRelease( searcher );
+        }
+    }
+
     protected abstract BaseLuceneSetup getLuceneSetup();
 
 }
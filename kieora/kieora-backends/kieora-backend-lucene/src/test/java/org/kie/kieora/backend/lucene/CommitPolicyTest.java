@@ -0,0 +1,150 @@
+/*
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kie.kieora.backend.lucene;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.junit.Test;
+import org.kie.kieora.backend.lucene.fields.SimpleFieldFactory;
+import org.kie.kieora.backend.lucene.metamodels.InMemoryMetaModelStore;
+import org.kie.kieora.backend.lucene.setups.RAMLuceneSetup;
+import org.kie.kieora.engine.MetaIndexEngine;
+import org.kie.kieora.model.KObject;
+import org.kie.kieora.model.KProperty;
+import org.kie.kieora.model.schema.MetaType;
+
+import static org.junit.Assert.*;
+
+public class CommitPolicyTest {
+
+    @Test
+    public void testThresholds() {
+        final CommitPolicy policy = new CommitPolicy( 10, 1000, 1 );
+
+        assertFalse( policy.shouldCommit( 0, 5000, 5 * 1024 * 1024 ) );
+        assertFalse( policy.shouldCommit( 9, 999, 1024 ) );
+        assertTrue( policy.shouldCommit( 10, 0, 0 ) );
+        assertTrue( policy.shouldCommit( 1, 1000, 0 ) );
+        assertTrue( policy.shouldCommit( 1, 0, 1024 * 1024 ) );
+
+        assertTrue( CommitPolicy.EVERY_WRITE.shouldCommit( 1, 0, 0 ) );
+
+        try {
+            new CommitPolicy( 0, 0, 0 );
+            fail( "no threshold enabled" );
+        } catch ( final IllegalStateException ex ) {
+        }
+    }
+
+    @Test
+    public void testCommitEveryNDocs() {
+        final CountingSetup setup = new CountingSetup();
+        final MetaIndexEngine engine = new LuceneIndexEngine( new InMemoryMetaModelStore(), setup, new SimpleFieldFactory(), new CommitPolicy( 3, 0, 0 ) );
+
+        engine.index( newKObject( "1" ) );
+        engine.index( newKObject( "2" ) );
+        assertEquals( 0, setup.commits.get() );
+
+        final IndexSearcher searcher = setup.nrtSearcher();
+        try {
+            assertEquals( 2, searcher.getIndexReader().numDocs() );
+        } finally {
+            setup.nrtRelease( searcher );
+        }
+
+        engine.delete( newKObject( "1" ) );
+        assertEquals( 1, setup.commits.get() );
+
+        engine.index( newKObject( "3" ), newKObject( "4" ), newKObject( "5" ) );
+        assertEquals( 2, setup.commits.get() );
+
+        engine.index( newKObject( "6" ) );
+        engine.flush();
+        assertEquals( 3, setup.commits.get() );
+
+        engine.dispose();
+    }
+
+    @Test
+    public void testCommitAfterDelay() throws InterruptedException {
+        final CountingSetup setup = new CountingSetup();
+        final MetaIndexEngine engine = new LuceneIndexEngine( new InMemoryMetaModelStore(), setup, new SimpleFieldFactory(), new CommitPolicy( 0, 100, 0 ) );
+
+        engine.index( newKObject( "1" ) );
+        assertEquals( 0, setup.commits.get() );
+
+        final long timeout = System.currentTimeMillis() + 5000;
+        while ( setup.commits.get() == 0 && System.currentTimeMillis() < timeout ) {
+            Thread.sleep( 10 );
+        }
+        assertEquals( 1, setup.commits.get() );
+
+        engine.dispose();
+    }
+
+    private static class CountingSetup extends RAMLuceneSetup {
+
+        private final AtomicInteger commits = new AtomicInteger();
+
+        @Override
+        public void commit() {
+            commits.incrementAndGet();
+            super.commit();
+        }
+    }
+
+    private static KObject newKObject( final String id ) {
+        return new KObject() {
+            @Override
+            public String getId() {
+                return "unique.id." + id;
+            }
+
+            @Override
+            public MetaType getType() {
+                return new MetaType() {
+                    @Override
+                    public String getName() {
+                        return "Path";
+                    }
+                };
+            }
+
+            @Override
+            public String getClusterId() {
+                return "cluster.id";
+            }
+
+            @Override
+            public String getSegmentId() {
+                return "/";
+            }
+
+            @Override
+            public String getKey() {
+                return "some.key." + id;
+            }
+
+            @Override
+            public Iterable<KProperty<?>> getProperties() {
+                return Collections.<KProperty<?>>emptyList();
+            }
+        };
+    }
+}
@@ -16,23 +16,37 @@
 
 package org.kie.kieora.backend.lucene;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
+import org.apache.lucene.search.AutomatonQuery;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.PhraseQuery;
 import org.junit.Test;
+import org.kie.kieora.backend.lucene.fields.FilenameFields;
 import org.kie.kieora.backend.lucene.fields.SimpleFieldFactory;
 import org.kie.kieora.backend.lucene.metamodels.InMemoryMetaModelStore;
 import org.kie.kieora.backend.lucene.setups.RAMLuceneSetup;
+import org.kie.kieora.backend.lucene.util.KObjectUtil;
+import org.kie.kieora.backend.lucene.util.ProjectionVisitor;
 import org.kie.kieora.engine.MetaIndexEngine;
 import org.kie.kieora.engine.MetaModelStore;
 import org.kie.kieora.model.KObject;
+import org.kie.kieora.model.KObjectSimpleKey;
 import org.kie.kieora.model.KProperty;
 import org.kie.kieora.model.schema.MetaType;
 import org.kie.kieora.search.ClusterSegment;
+import org.kie.kieora.search.SearchPage;
 
 import static org.junit.Assert.*;
 import static org.kie.commons.regex.util.GlobToRegEx.*;
+import static org.kie.kieora.backend.lucene.LuceneSetup.*;
 
 /**
  *
@@ -192,6 +206,22 @@ public class LuceneIndexSearchTest {
             put( "filename", "File0.dtxt" );
         }} ) );
 
+        assertEquals( 11, searchEngine.searchByAttrsHits( new HashMap<String, Object>() {{
+            put( "filename", "*ILE4*" );
+        }} ) );
+
+        assertEquals( 5, searchEngine.searchByAttrsHits( new HashMap<String, Object>() {{
+            put( "filename", "*le4*.txt" );
+        }} ) );
+
+        assertEquals( 6, searchEngine.searchByAttrsHits( new HashMap<String, Object>() {{
+            put( "filename", "*le4*.d*" );
+        }} ) );
+
+        assertEquals( 2, searchEngine.searchByAttrsHits( new HashMap<String, Object>() {{
+            put( "filename", "*e4[89]*" );
+        }} ) );
+
         assertEquals( 0, searchEngine.fullTextSearchHits( "here49", new ClusterSegment() {
             @Override
             public String getClusterId() {
@@ -266,4 +296,207 @@ public class LuceneIndexSearchTest {
 
     }
 
+    @Test
+    public void testPagination() {
+        final LuceneSetup setup = new RAMLuceneSetup();
+        final MetaIndexEngine engine = new LuceneIndexEngine( new InMemoryMetaModelStore(), setup, new SimpleFieldFactory() );
+        for ( int i = 0; i < 50; i++ ) {
+            engine.index( newKObject( i ) );
+        }
+
+        final LuceneSearchIndex searchEngine = new LuceneSearchIndex( setup );
+
+        final Set<String> keys = new HashSet<String>();
+        final List<String> pages = new ArrayList<String>();
+        String continuation = null;
+        do {
+            final SearchPage<KObject> page = searchEngine.fullTextSearch( "comment", 7, continuation );
+            assertTrue( page.getResults().size() <= 7 );
+            for ( final KObject kObject : page.getResults() ) {
+                assertTrue( keys.add( kObject.getKey() ) );
+            }
+            continuation = page.getContinuation();
+            pages.add( continuation );
+        } while ( continuation != null );
+
+        assertEquals( 50, keys.size() );
+        assertEquals( 8, pages.size() );
+
+        final SearchPage<KObject> second = searchEngine.fullTextSearch( "comment", 7, pages.get( 0 ) );
+        final List<KObject> offset = searchEngine.fullTextSearch( "comment", 7, 7 );
+        assertEquals( 7, offset.size() );
+        for ( int i = 0; i < 7; i++ ) {
+            assertEquals( offset.get( i ).getKey(), second.getResults().get( i ).getKey() );
+        }
+
+        final SearchPage<KObject> exact = searchEngine.fullTextSearch( "comment", 50, null );
+        assertEquals( 50, exact.getResults().size() );
+        assertFalse( exact.hasMore() );
+
+        try {
+            searchEngine.fullTextSearch( "comment", 7, "not-a-token" );
+            fail( "invalid token" );
+        } catch ( final IllegalArgumentException ex ) {
+        }
+    }
+
+    @Test
+    public void testKeyProjection() throws IOException {
+        final LuceneSetup setup = new RAMLuceneSetup();
+        final MetaIndexEngine engine = new LuceneIndexEngine( new InMemoryMetaModelStore(), setup, new SimpleFieldFactory() );
+        for ( int i = 0; i < 10; i++ ) {
+            engine.index( newKObject( i ) );
+        }
+
+        final LuceneSearchIndex searchEngine = new LuceneSearchIndex( setup );
+
+        final List<KObject> kObjects = searchEngine.fullTextSearch( "comment", 10, 0 );
+        final List<KObjectSimpleKey> keys = searchEngine.fullTextSearchKeys( "comment", 10, 0 );
+        assertEquals( 10, keys.size() );
+        for ( int i = 0; i < keys.size(); i++ ) {
+            assertEquals( kObjects.get( i ).getKey(), keys.get( i ).getKey() );
+            assertEquals( "cluster.id.here", keys.get( i ).getClusterId() );
+            assertEquals( "/", keys.get( i ).getSegmentId() );
+        }
+
+        final SearchPage<KObjectSimpleKey> page = searchEngine.fullTextSearchKeys( "comment", 4, (String) null );
+        assertEquals( 4, page.getResults().size() );
+        assertTrue( page.hasMore() );
+        assertEquals( kObjects.get( 0 ).getKey(), page.getResults().get( 0 ).getKey() );
+
+        final IndexSearcher searcher = setup.nrtSearcher();
+        try {
+            final ProjectionVisitor visitor = new ProjectionVisitor( KObjectUtil.SIMPLE_KEY_FIELDS );
+            searcher.doc( 0, visitor );
+            assertEquals( 3, visitor.getDocument().getFields().size() );
+            assertNull( visitor.getDocument().get( "dcore.comment" ) );
+            assertNotNull( visitor.getDocument().get( "key" ) );
+        } finally {
+            setup.nrtRelease( searcher );
+        }
+    }
+
+    @Test
+    public void testGlobRewrite() {
+        assertEquals( CUSTOM_FIELD_FILENAME, ( (AutomatonQuery) FilenameFields.globQuery( "rule*.drl" ) ).getField() );
+        assertEquals( FilenameFields.REVERSED_FIELD, ( (AutomatonQuery) FilenameFields.globQuery( "*Rule*.drl" ) ).getField() );
+        assertTrue( FilenameFields.globQuery( "*rule*" ) instanceof PhraseQuery );
+        assertTrue( FilenameFields.globQuery( "*rule*.*" ) instanceof BooleanQuery );
+        assertEquals( CUSTOM_FIELD_FILENAME, ( (AutomatonQuery) FilenameFields.globQuery( "*r*" ) ).getField() );
+
+        // callers get their own query, only the automaton is shared
+        assertNotSame( FilenameFields.globQuery( "*Rule*.drl" ), FilenameFields.globQuery( "*rule*.DRL" ) );
+        assertEquals( FilenameFields.globQuery( "*Rule*.drl" ).toString(), FilenameFields.globQuery( "*rule*.DRL" ).toString() );
+    }
+
+    @Test
+    public void testIndexWithoutFilenameFieldsIsWalkedAgain() {
+        final LuceneSetup setup = new RAMLuceneSetup();
+        final MetaIndexEngine engine = new LuceneIndexEngine( new InMemoryMetaModelStore(), setup, new SimpleFieldFactory() );
+
+        // revision recorded before the schema version was
+        setup.setCommitData( "revision|repo|master", "abc" );
+        assertNull( engine.getIndexedRevision( "repo", "master" ) );
+
+        engine.setIndexedRevision( "repo", "master", "def" );
+        assertEquals( "def", engine.getIndexedRevision( "repo", "master" ) );
+
+        setup.setCommitData( "schema|repo|master", String.valueOf( LuceneIndexEngine.SCHEMA_VERSION - 1 ) );
+        assertNull( engine.getIndexedRevision( "repo", "master" ) );
+    }
+
+    @Test
+    public void testClusterSegmentFilterIsCached() {
+        final LuceneSetup setup = new RAMLuceneSetup();
+        final MetaIndexEngine engine = new LuceneIndexEngine( new InMemoryMetaModelStore(), setup, new SimpleFieldFactory() );
+        for ( int i = 0; i < 10; i++ ) {
+            engine.index( newKObject( i ) );
+        }
+
+        final LuceneSearchIndex searchEngine = new LuceneSearchIndex( setup );
+
+        assertSame( searchEngine.clusterSegmentFilter( newClusterSegment( "cluster.id.here" ) ),
+                    searchEngine.clusterSegmentFilter( newClusterSegment( "cluster.id.here" ) ) );
+        assertNotSame( searchEngine.clusterSegmentFilter( newClusterSegment( "cluster.id.here" ) ),
+                       searchEngine.clusterSegmentFilter( newClusterSegment( "other.cluster" ) ) );
+
+        assertEquals( 10, searchEngine.fullTextSearchHits( "comment", newClusterSegment( "cluster.id.here" ) ) );
+        assertEquals( 0, searchEngine.fullTextSearchHits( "comment", newClusterSegment( "other.cluster" ) ) );
+
+        engine.index( newKObject( 10 ) );
+        engine.delete( newKObject( 0 ) );
+        assertEquals( 10, searchEngine.fullTextSearchHits( "comment", newClusterSegment( "cluster.id.here" ) ) );
+        assertEquals( 1, searchEngine.fullTextSearchHits( "10", newClusterSegment( "cluster.id.here" ) ) );
+    }
+
+    private static ClusterSegment newClusterSegment( final String clusterId ) {
+        return new ClusterSegment() {
+            @Override
+            public String getClusterId() {
+                return clusterId;
+            }
+
+            @Override
+            public String[] segmentIds() {
+                return new String[]{ "/" };
+            }
+        };
+    }
+
+    private static KObject newKObject( final int index ) {
+        return new KObject() {
+            @Override
+            public String getId() {
+                return "unique.id.here." + index;
+            }
+
+            @Override
+            public MetaType getType() {
+                return new MetaType() {
+                    @Override
+                    public String getName() {
+                        return "Path";
+                    }
+                };
+            }
+
+            @Override
+            public String getClusterId() {
+                return "cluster.id.here";
+            }
+
+            @Override
+            public String getSegmentId() {
+                return "/";
+            }
+
+            @Override
+            public String getKey() {
+                return "some.key.here." + index;
+            }
+
+            @Override
+            public Iterable<KProperty<?>> getProperties() {
+                return new HashSet<KProperty<?>>() {{
+                    add( new KProperty<String>() {
+                        @Override
+                        public String getName() {
+                            return "dcore.comment";
+                        }
+
+                        @Override
+                        public String getValue() {
+                            return "My comment here " + index;
+                        }
+
+                        @Override
+                        public boolean isSearchable() {
+                            return true;
+                        }
+                    } );
+                }};
+            }
+        };
+    }
+
 }
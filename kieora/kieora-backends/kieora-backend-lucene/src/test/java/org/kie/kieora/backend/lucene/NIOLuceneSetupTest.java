@@ -16,11 +16,17 @@
 
 package org.kie.kieora.backend.lucene;
 
+import java.io.File;
 import java.io.IOException;
 
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.junit.Test;
 import org.kie.kieora.backend.lucene.setups.BaseLuceneSetup;
 import org.kie.kieora.backend.lucene.setups.NIOLuceneSetup;
 
+import static org.junit.Assert.*;
 import static org.kie.kieora.backend.lucene.FileTestUtil.*;
 
 /**
@@ -38,6 +44,25 @@ public class NIOLuceneSetupTest extends BaseLuceneSetupTest {
         }
     }
 
+    @Test
+    public void testCommitDataSurvivesRestart() throws IOException {
+        final File dir = createTempDirectory();
+        final NIOLuceneSetup setup = new NIOLuceneSetup( dir );
+
+        final Document doc = new Document();
+        doc.add( new StringField( "id", "commit.data.id", Field.Store.YES ) );
+        setup.indexDocument( "commit.data.id", doc );
+        setup.setCommitData( "revision|repo|master", "abc" );
+        assertEquals( "abc", setup.getCommitData( "revision|repo|master" ) );
+        setup.commit();
+        setup.dispose();
+
+        final NIOLuceneSetup reopened = new NIOLuceneSetup( dir );
+        assertEquals( "abc", reopened.getCommitData( "revision|repo|master" ) );
+        assertNull( reopened.getCommitData( "revision|repo|other" ) );
+        reopened.dispose();
+    }
+
     @Override
     protected BaseLuceneSetup getLuceneSetup() {
         return luceneSetup;
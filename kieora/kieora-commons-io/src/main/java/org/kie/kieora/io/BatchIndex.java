@@ -16,21 +16,37 @@
 
 package org.kie.kieora.io;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.kie.commons.io.IOService;
-import org.kie.commons.java.nio.IOException;
+import org.kie.commons.java.nio.base.FileSystemId;
+import org.kie.commons.java.nio.base.RevisionedFileSystem;
+import org.kie.commons.java.nio.base.SegmentedPath;
+import org.kie.commons.java.nio.base.WatchContext;
+import org.kie.commons.java.nio.file.DirectoryStream;
 import org.kie.commons.java.nio.file.FileSystem;
-import org.kie.commons.java.nio.file.FileVisitResult;
+import org.kie.commons.java.nio.file.NoSuchFileException;
 import org.kie.commons.java.nio.file.Path;
-import org.kie.commons.java.nio.file.SimpleFileVisitor;
-import org.kie.commons.java.nio.file.attribute.BasicFileAttributes;
+import org.kie.commons.java.nio.file.WatchEvent;
 import org.kie.commons.java.nio.file.attribute.FileAttribute;
 import org.kie.commons.java.nio.file.attribute.FileAttributeView;
 import org.kie.kieora.engine.MetaIndexEngine;
 import org.kie.kieora.model.KObject;
+import org.kie.kieora.model.KObjectKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static org.kie.commons.java.nio.file.Files.*;
+import static org.kie.commons.java.nio.file.StandardWatchEventKind.*;
 import static org.kie.commons.validation.PortablePreconditions.*;
 import static org.kie.kieora.io.KObjectUtil.*;
 
@@ -41,70 +57,340 @@ public final class BatchIndex {
 
     private static final Logger LOG = LoggerFactory.getLogger( BatchIndex.class );
 
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private static final String PARALLELISM = "org.kie.kieora.index.batch.parallelism";
+
     private final MetaIndexEngine indexEngine;
     private final IOService ioService;
     private final Class<? extends FileAttributeView>[] views;
+    private final ProgressListener listener;
+    private final int batchSize;
+    private final ExecutorService walkers;
+    private final ExecutorService runners;
 
     public BatchIndex( final MetaIndexEngine indexEngine,
                        final IOService ioService,
                        final Class<? extends FileAttributeView>... views ) {
+        this( indexEngine, ioService, defaultParallelism(), null, views );
+    }
+
+    /**
+     * @param parallelism threads walking directories and reading attributes
+     * @param listener notified after every batch handed to the index engine; progress is logged if <code>null</code>
+     */
+    public BatchIndex( final MetaIndexEngine indexEngine,
+                       final IOService ioService,
+                       final int parallelism,
+                       final ProgressListener listener,
+                       final Class<? extends FileAttributeView>... views ) {
         this.indexEngine = checkNotNull( "indexEngine", indexEngine );
         this.ioService = checkNotNull( "ioService", ioService );
+        checkCondition( "parallelism must be positive", parallelism > 0 );
         this.views = views;
+        this.listener = listener != null ? listener : new LoggingProgressListener();
+        this.batchSize = DEFAULT_BATCH_SIZE;
+        this.walkers = Executors.newFixedThreadPool( parallelism, new DaemonThreadFactory( "kieora-batch-walker-" ) );
+        this.runners = Executors.newFixedThreadPool( Math.max( 1, parallelism / 2 ), new DaemonThreadFactory( "kieora-batch-runner-" ) );
     }
 
     public void runAsync( final FileSystem fs ) {
-        new Thread() {
-            public void run() {
-                for ( final Path root : fs.getRootDirectories() ) {
-                    BatchIndex.this.run( root );
-                }
-            }
-        }.start();
+        for ( final Path root : fs.getRootDirectories() ) {
+            runAsync( root );
+        }
     }
 
     public void runAsync( final Path root ) {
-        new Thread() {
+        runners.execute( new Runnable() {
             public void run() {
                 BatchIndex.this.run( root );
             }
-        }.start();
+        } );
     }
 
     public void run( final Path root ) {
+        checkNotNull( "root", root );
+        indexEngine.startBatchMode();
         try {
-            indexEngine.startBatchMode();
-            walkFileTree( checkNotNull( "root", root ), new SimpleFileVisitor<Path>() {
-                @Override
-                public FileVisitResult visitFile( final Path file,
-                                                  final BasicFileAttributes attrs ) throws IOException {
+            final String revision = currentRevision( root );
+            if ( !runIncremental( root, revision ) ) {
+                runFull( root );
+            }
+            // only a run that went through moves the revision, a failed one is retried from the previous
+            if ( revision != null ) {
+                indexEngine.setIndexedRevision( clusterId( root ), segmentId( root ), revision );
+            }
+        } catch ( final IllegalStateException ex ) {
+            LOG.error( "Index fails - Index has an invalid state. [@" + root.getFileSystem().toString() + "]", ex );
+        } catch ( final Exception ex ) {
+            LOG.error( "Index fails. [@" + root.getFileSystem().toString() + "]", ex );
+        } finally {
+            indexEngine.commit();
+        }
+    }
 
-                    checkNotNull( "file", file );
-                    checkNotNull( "attrs", attrs );
+    private void runFull( final Path root ) throws InterruptedException {
+        new Walk( root ).run();
+    }
 
-                    if ( !file.getFileName().toString().startsWith( "." ) ) {
+    /**
+     * Applies only the changes since the revision the index was last brought up to date with.
+     * @return <code>false</code> if there's no usable revision and the whole tree has to be walked
+     */
+    private boolean runIncremental( final Path root,
+                                    final String revision ) {
+        if ( revision == null ) {
+            return false;
+        }
+        final String indexedRevision = indexEngine.getIndexedRevision( clusterId( root ), segmentId( root ) );
+        if ( indexedRevision == null ) {
+            return false;
+        }
+        if ( indexedRevision.equals( revision ) ) {
+            return true;
+        }
+        final List<WatchEvent<?>> changes = ( (RevisionedFileSystem) root.getFileSystem() ).getChanges( root, indexedRevision, revision );
+        if ( changes == null ) {
+            return false;
+        }
+        final long start = System.currentTimeMillis();
+        final List<KObject> toIndex = new ArrayList<KObject>();
+        final List<KObjectKey> toDelete = new ArrayList<KObjectKey>();
+        long count = 0;
+        for ( final WatchEvent<?> change : changes ) {
+            final WatchContext context = (WatchContext) change.context();
+            if ( change.kind() == ENTRY_CREATE || change.kind() == ENTRY_MODIFY ) {
+                if ( !context.getPath().getFileName().toString().startsWith( "." ) ) {
+                    final KObject object = newKObjectIfExists( context.getPath() );
+                    if ( object != null ) {
+                        toIndex.add( object );
+                    } else {
+                        toDelete.add( toKObjectKey( context.getPath() ) );
+                    }
+                }
+            } else if ( change.kind() == ENTRY_RENAME ) {
+                count += flush( toIndex, toDelete );
+                indexEngine.rename( toKObjectKey( context.getOldPath() ), toKObjectKey( context.getPath() ) );
+                count++;
+            } else if ( change.kind() == ENTRY_DELETE ) {
+                toDelete.add( toKObjectKey( context.getOldPath() ) );
+            }
+            if ( toIndex.size() + toDelete.size() >= batchSize ) {
+                count += flush( toIndex, toDelete );
+                listener.onProgress( root, count );
+            }
+        }
+        count += flush( toIndex, toDelete );
+        listener.onComplete( root, count, System.currentTimeMillis() - start );
+        return true;
+    }
 
-                        for ( final Class<? extends FileAttributeView> view : views ) {
-                            ioService.getFileAttributeView( file, view );
-                        }
+    private int flush( final List<KObject> toIndex,
+                       final List<KObjectKey> toDelete ) {
+        final int result = toIndex.size() + toDelete.size();
+        if ( !toIndex.isEmpty() ) {
+            indexEngine.index( toIndex.toArray( new KObject[ toIndex.size() ] ) );
+            toIndex.clear();
+        }
+        if ( !toDelete.isEmpty() ) {
+            indexEngine.delete( toDelete.toArray( new KObjectKey[ toDelete.size() ] ) );
+            toDelete.clear();
+        }
+        return result;
+    }
 
-                        final FileAttribute<?>[] allAttrs = ioService.convert( ioService.readAttributes( file ) );
-                        indexEngine.index( toKObject( file, allAttrs ) );
-                    }
+    private KObject newKObject( final Path file ) {
+        for ( final Class<? extends FileAttributeView> view : views ) {
+            ioService.getFileAttributeView( file, view );
+        }
 
-                    return FileVisitResult.CONTINUE;
-                }
-            } );
-            indexEngine.commit();
-        } catch ( final IllegalStateException ex ) {
-            LOG.error( "Index fails - Index has an invalid state. [@" + root.getFileSystem().toString() + "]", ex );
-        } catch ( final Exception ex ) {
-            LOG.error( "Index fails. [@" + root.getFileSystem().toString() + "]", ex );
+        final FileAttribute<?>[] allAttrs = ioService.convert( ioService.readAttributes( file ) );
+        return toKObject( file, allAttrs );
+    }
+
+    /**
+     * The diff is taken up to a revision the file system may have already moved past, so a file
+     * it reports as written can be gone by now.
+     * @return <code>null</code> if the file doesn't exist anymore
+     */
+    private KObject newKObjectIfExists( final Path file ) {
+        if ( !exists( file ) ) {
+            return null;
+        }
+        try {
+            return newKObject( file );
+        } catch ( final NoSuchFileException ex ) {
+            return null;
+        }
+    }
+
+    private String currentRevision( final Path root ) {
+        if ( !( root.getFileSystem() instanceof RevisionedFileSystem )
+                || !( root.getFileSystem() instanceof FileSystemId )
+                || !( root instanceof SegmentedPath )
+                || root.getParent() != null ) {
+            return null;
         }
+        return ( (RevisionedFileSystem) root.getFileSystem() ).getRevision( root );
+    }
+
+    private String clusterId( final Path root ) {
+        return ( (FileSystemId) root.getFileSystem() ).id();
+    }
+
+    private String segmentId( final Path root ) {
+        return ( (SegmentedPath) root ).getSegmentId();
     }
 
     public void dispose() {
+        runners.shutdownNow();
+        walkers.shutdownNow();
         indexEngine.dispose();
     }
 
+    private static int defaultParallelism() {
+        final String value = System.getProperty( PARALLELISM );
+        if ( value != null && !value.trim().isEmpty() ) {
+            try {
+                return Integer.parseInt( value.trim() );
+            } catch ( final NumberFormatException ignored ) {
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Progress of a batch run over one root.
+     */
+    public interface ProgressListener {
+
+        void onProgress( final Path root,
+                         final long indexed );
+
+        void onComplete( final Path root,
+                         final long indexed,
+                         final long elapsedMillis );
+    }
+
+    /**
+     * Parallel walk of one root: directories are split into tasks on the walker pool, which read
+     * attributes and build objects, while the calling thread hands them to the index engine in batches.
+     */
+    private class Walk {
+
+        private final Path root;
+        private final BlockingQueue<KObject> built = new ArrayBlockingQueue<KObject>( batchSize * 4 );
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile Throwable failure = null;
+
+        Walk( final Path root ) {
+            this.root = root;
+        }
+
+        void run() throws InterruptedException {
+            final long start = System.currentTimeMillis();
+            long count = 0;
+            fork( root );
+
+            final List<KObject> batch = new ArrayList<KObject>( batchSize );
+            while ( true ) {
+                final KObject object = built.poll( 100, TimeUnit.MILLISECONDS );
+                if ( object != null ) {
+                    batch.add( object );
+                    built.drainTo( batch, batchSize - batch.size() );
+                }
+                if ( batch.size() >= batchSize || ( object == null && !batch.isEmpty() ) ) {
+                    count += batch.size();
+                    indexEngine.index( batch.toArray( new KObject[ batch.size() ] ) );
+                    batch.clear();
+                    listener.onProgress( root, count );
+                }
+                // every put of a directory happens before its task is counted off
+                if ( object == null && pending.get() == 0 && built.isEmpty() ) {
+                    break;
+                }
+            }
+
+            if ( failure != null ) {
+                throw new RuntimeException( "Can't walk " + root, failure );
+            }
+            listener.onComplete( root, count, System.currentTimeMillis() - start );
+        }
+
+        private void fork( final Path dir ) {
+            pending.incrementAndGet();
+            try {
+                walkers.execute( new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            visit( dir );
+                        } catch ( final Throwable t ) {
+                            failure = t;
+                        } finally {
+                            pending.decrementAndGet();
+                        }
+                    }
+                } );
+            } catch ( final RejectedExecutionException ex ) {
+                pending.decrementAndGet();
+                throw ex;
+            }
+        }
+
+        private void visit( final Path dir ) throws InterruptedException {
+            final DirectoryStream<Path> stream = ioService.newDirectoryStream( dir );
+            try {
+                for ( final Path child : stream ) {
+                    if ( failure != null ) {
+                        return;
+                    }
+                    if ( child.getFileName().toString().startsWith( "." ) ) {
+                        continue;
+                    }
+                    if ( isDirectory( child ) ) {
+                        fork( child );
+                    } else {
+                        built.put( newKObject( child ) );
+                    }
+                }
+            } finally {
+                stream.close();
+            }
+        }
+    }
+
+    private static class LoggingProgressListener implements ProgressListener {
+
+        @Override
+        public void onProgress( final Path root,
+                                final long indexed ) {
+            LOG.debug( "Batch index of " + root.toUri() + ": " + indexed + " objects so far." );
+        }
+
+        @Override
+        public void onComplete( final Path root,
+                                final long indexed,
+                                final long elapsedMillis ) {
+            LOG.info( "Batch index of " + root.toUri() + " done: " + indexed + " objects in " + elapsedMillis + "ms." );
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DaemonThreadFactory( final String prefix ) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread( final Runnable r ) {
+            final Thread thread = new Thread( r, prefix + count.incrementAndGet() );
+            thread.setDaemon( true );
+            return thread;
+        }
+    }
+
 }
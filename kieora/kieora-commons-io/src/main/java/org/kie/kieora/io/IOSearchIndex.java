@@ -23,12 +23,14 @@ import java.util.Map;
 
 import org.kie.commons.io.IOSearchService;
 import org.kie.commons.io.IOService;
+import org.kie.commons.io.PathPage;
 import org.kie.commons.java.nio.base.FileSystemId;
 import org.kie.commons.java.nio.base.SegmentedPath;
 import org.kie.commons.java.nio.file.Path;
-import org.kie.kieora.model.KObject;
+import org.kie.kieora.model.KObjectSimpleKey;
 import org.kie.kieora.search.ClusterSegment;
 import org.kie.kieora.search.SearchIndex;
+import org.kie.kieora.search.SearchPage;
 
 import static org.kie.commons.validation.PortablePreconditions.*;
 
@@ -51,12 +53,8 @@ public class IOSearchIndex implements IOSearchService {
                                      final int pageSize,
                                      final int startIndex,
                                      final Path... roots ) {
-        final List<KObject> kObjects = searchIndex.searchByAttrs( attrs, pageSize, startIndex, buildClusterSegments( roots ) );
-        return new ArrayList<Path>() {{
-            for ( KObject kObject : kObjects ) {
-                add( ioService.get( URI.create( kObject.getKey() ) ) );
-            }
-        }};
+        final List<KObjectSimpleKey> keys = searchIndex.searchKeysByAttrs( attrs, pageSize, startIndex, buildClusterSegments( roots ) );
+        return toPaths( keys );
     }
 
     @Override
@@ -64,12 +62,26 @@ public class IOSearchIndex implements IOSearchService {
                                       final int pageSize,
                                       final int startIndex,
                                       final Path... roots ) {
-        final List<KObject> kObjects = searchIndex.fullTextSearch( term, pageSize, startIndex, buildClusterSegments( roots ) );
-        return new ArrayList<Path>() {{
-            for ( KObject kObject : kObjects ) {
-                add( ioService.get( URI.create( kObject.getKey() ) ) );
-            }
-        }};
+        final List<KObjectSimpleKey> keys = searchIndex.fullTextSearchKeys( term, pageSize, startIndex, buildClusterSegments( roots ) );
+        return toPaths( keys );
+    }
+
+    @Override
+    public PathPage searchByAttrs( final Map<String, ?> attrs,
+                                   final int pageSize,
+                                   final String continuation,
+                                   final Path... roots ) {
+        final SearchPage<KObjectSimpleKey> page = searchIndex.searchKeysByAttrs( attrs, pageSize, continuation, buildClusterSegments( roots ) );
+        return new PathPage( toPaths( page.getResults() ), page.getContinuation() );
+    }
+
+    @Override
+    public PathPage fullTextSearch( final String term,
+                                    final int pageSize,
+                                    final String continuation,
+                                    final Path... roots ) {
+        final SearchPage<KObjectSimpleKey> page = searchIndex.fullTextSearchKeys( term, pageSize, continuation, buildClusterSegments( roots ) );
+        return new PathPage( toPaths( page.getResults() ), page.getContinuation() );
     }
 
     @Override
@@ -84,6 +96,14 @@ public class IOSearchIndex implements IOSearchService {
         return searchIndex.fullTextSearchHits( term, buildClusterSegments( roots ) );
     }
 
+    private List<Path> toPaths( final List<KObjectSimpleKey> keys ) {
+        final List<Path> paths = new ArrayList<Path>( keys.size() );
+        for ( final KObjectSimpleKey key : keys ) {
+            paths.add( ioService.get( URI.create( key.getKey() ) ) );
+        }
+        return paths;
+    }
+
     private ClusterSegment[] buildClusterSegments( final Path[] roots ) {
         if ( roots == null || roots.length == 0 ) {
             return new ClusterSegment[ 0 ];
@@ -22,7 +22,6 @@ import java.net.URI;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -31,7 +30,6 @@ import org.kie.commons.io.IOWatchService;
 import org.kie.commons.io.impl.IOServiceDotFileImpl;
 import org.kie.commons.java.nio.IOException;
 import org.kie.commons.java.nio.base.Properties;
-import org.kie.commons.java.nio.base.WatchContext;
 import org.kie.commons.java.nio.channels.SeekableByteChannel;
 import org.kie.commons.java.nio.file.AtomicMoveNotSupportedException;
 import org.kie.commons.java.nio.file.CopyOption;
@@ -45,34 +43,33 @@ import org.kie.commons.java.nio.file.NoSuchFileException;
 import org.kie.commons.java.nio.file.OpenOption;
 import org.kie.commons.java.nio.file.Path;
 import org.kie.commons.java.nio.file.ProviderNotFoundException;
-import org.kie.commons.java.nio.file.StandardWatchEventKind;
-import org.kie.commons.java.nio.file.WatchEvent;
-import org.kie.commons.java.nio.file.WatchKey;
-import org.kie.commons.java.nio.file.WatchService;
 import org.kie.commons.java.nio.file.attribute.FileAttribute;
 import org.kie.commons.java.nio.file.attribute.FileAttributeView;
 import org.kie.commons.lock.LockService;
 import org.kie.kieora.engine.MetaIndexEngine;
 
 import static org.kie.commons.java.nio.base.dotfiles.DotFileUtils.*;
-import static org.kie.commons.java.nio.file.StandardWatchEventKind.*;
 import static org.kie.commons.validation.Preconditions.*;
 import static org.kie.kieora.io.KObjectUtil.*;
 
 public class IOServiceIndexedImpl extends IOServiceDotFileImpl {
 
+    private static final String INDEXING_WORKERS = "org.kie.kieora.index.workers";
+    private static final String INDEXING_QUEUE = "org.kie.kieora.index.queue";
+
     private final MetaIndexEngine indexEngine;
     private final BatchIndex batchIndex;
+    private final IndexingPipeline indexingPipeline;
 
     private final Class<? extends FileAttributeView>[] views;
     private final Set<FileSystem> indexedFSs = new HashSet<FileSystem>();
-    private final ThreadGroup threadGroup = new ThreadGroup( "IOServiceIndexing" );
 
     public IOServiceIndexedImpl( final MetaIndexEngine indexEngine,
                                  Class<? extends FileAttributeView>... views ) {
         super();
         this.indexEngine = checkNotNull( "indexEngine", indexEngine );
         this.batchIndex = new BatchIndex( indexEngine, this, views );
+        this.indexingPipeline = newIndexingPipeline( indexEngine, this, views );
         this.views = views;
     }
 
@@ -82,6 +79,7 @@ public class IOServiceIndexedImpl extends IOServiceDotFileImpl {
         super( watchService );
         this.indexEngine = checkNotNull( "indexEngine", indexEngine );
         this.batchIndex = new BatchIndex( indexEngine, this, views );
+        this.indexingPipeline = newIndexingPipeline( indexEngine, this, views );
         this.views = views;
     }
 
@@ -92,6 +90,7 @@ public class IOServiceIndexedImpl extends IOServiceDotFileImpl {
         super( lockService, watchService );
         this.indexEngine = checkNotNull( "indexEngine", indexEngine );
         this.batchIndex = new BatchIndex( indexEngine, this, views );
+        this.indexingPipeline = newIndexingPipeline( indexEngine, this, views );
         this.views = views;
     }
 
@@ -139,71 +138,74 @@ public class IOServiceIndexedImpl extends IOServiceDotFileImpl {
     }
 
     private void setupWatchService( final FileSystem fs ) {
-        final WatchService ws = fs.newWatchService();
-        new Thread( threadGroup, "IOServiceIndexedImpl(" + ws.toString() + ")" ) {
-            @Override
-            public void run() {
-                while ( !isDisposed ) {
-                    final WatchKey wk = ws.take();
-                    if ( wk == null ) {
-                        continue;
-                    }
-
-                    final List<WatchEvent<?>> events = wk.pollEvents();
-                    for ( WatchEvent object : events ) {
-                        final WatchContext context = ( (WatchContext) object.context() );
-                        if ( object.kind() == ENTRY_MODIFY
-                                || object.kind() == StandardWatchEventKind.ENTRY_CREATE ) {
-
-                            final Path path = context.getPath();
-
-                            if ( !path.getFileName().toString().startsWith( "." ) ) {
-
-                                for ( final Class<? extends FileAttributeView> view : views ) {
-                                    getFileAttributeView( path, view );
-                                }
-
-                                final FileAttribute<?>[] allAttrs = convert( readAttributes( path ) );
-                                indexEngine.index( toKObject( path, allAttrs ) );
-                            }
-                        }
-                        if ( object.kind() == StandardWatchEventKind.ENTRY_RENAME ) {
-                            indexEngine.rename( toKObjectKey( context.getOldPath() ), toKObjectKey( context.getPath() ) );
-                        }
-                        if ( object.kind() == StandardWatchEventKind.ENTRY_DELETE ) {
-                            indexEngine.delete( toKObjectKey( context.getOldPath() ) );
-                        }
-                    }
-                }
-                ws.close();
-            }
-        }.start();
+        indexingPipeline.watch( fs.newWatchService() );
+    }
+
+    public IndexingPipeline getIndexingPipeline() {
+        return indexingPipeline;
+    }
+
+    @Override
+    public void dispose() {
+        indexingPipeline.dispose();
+        super.dispose();
+    }
+
+    private static IndexingPipeline newIndexingPipeline( final MetaIndexEngine indexEngine,
+                                                         final IOServiceIndexedImpl ioService,
+                                                         final Class<? extends FileAttributeView>... views ) {
+        final int workers = intProperty( INDEXING_WORKERS, Math.max( 1, Runtime.getRuntime().availableProcessors() / 2 ) );
+        final int capacity = intProperty( INDEXING_QUEUE, IndexingPipeline.DEFAULT_CAPACITY );
+        return new IndexingPipeline( indexEngine, ioService, workers, capacity, views );
+    }
+
+    private static int intProperty( final String name,
+                                    final int defaultValue ) {
+        final String value = System.getProperty( name );
+        if ( value == null || value.trim().isEmpty() ) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt( value.trim() );
+        } catch ( final NumberFormatException e ) {
+            return defaultValue;
+        }
     }
 
     @Override
-    public synchronized void delete( final Path path,
-                                     final DeleteOption... options )
+    public void delete( final Path path,
+                        final DeleteOption... options )
             throws IllegalArgumentException, NoSuchFileException, DirectoryNotEmptyException,
             IOException, SecurityException {
-        super.delete( path, options );
-        indexEngine.delete( toKObjectKey( path ) );
+        pathLocks.lockWrite( path );
+        try {
+            super.delete( path, options );
+            indexEngine.delete( toKObjectKey( path ) );
+        } finally {
+            pathLocks.unlockWrite( path );
+        }
     }
 
     @Override
-    public synchronized boolean deleteIfExists( final Path path,
-                                                final DeleteOption... options )
+    public boolean deleteIfExists( final Path path,
+                                   final DeleteOption... options )
             throws IllegalArgumentException, DirectoryNotEmptyException, IOException, SecurityException {
-        final boolean result = super.deleteIfExists( path, options );
-        if ( result ) {
-            indexEngine.delete( toKObjectKey( path ) );
+        pathLocks.lockWrite( path );
+        try {
+            final boolean result = super.deleteIfExists( path, options );
+            if ( result ) {
+                indexEngine.delete( toKObjectKey( path ) );
+            }
+            return result;
+        } finally {
+            pathLocks.unlockWrite( path );
         }
-        return result;
     }
 
     @Override
-    public synchronized SeekableByteChannel newByteChannel( final Path path,
-                                                            final Set<? extends OpenOption> options,
-                                                            final FileAttribute<?>... attrs )
+    public SeekableByteChannel newByteChannel( final Path path,
+                                               final Set<? extends OpenOption> options,
+                                               final FileAttribute<?>... attrs )
             throws IllegalArgumentException, UnsupportedOperationException,
             FileAlreadyExistsException, IOException, SecurityException {
         checkNotNull( "path", path );
@@ -262,34 +264,44 @@ public class IOServiceIndexedImpl extends IOServiceDotFileImpl {
     }
 
     @Override
-    public synchronized Path copy( final Path source,
-                                   final Path target,
-                                   final CopyOption... options )
+    public Path copy( final Path source,
+                      final Path target,
+                      final CopyOption... options )
             throws UnsupportedOperationException, FileAlreadyExistsException,
             DirectoryNotEmptyException, IOException, SecurityException {
-        final Path result = super.copy( source, target, options );
+        pathLocks.lockWrite( source, target );
+        try {
+            final Path result = super.copy( source, target, options );
 
-        final Properties properties = new Properties();
-        if ( exists( dot( target ) ) ) {
-            properties.load( newInputStream( dot( target ) ) );
-        }
+            final Properties properties = new Properties();
+            if ( exists( dot( target ) ) ) {
+                properties.load( newInputStream( dot( target ) ) );
+            }
 
-        indexEngine.index( toKObject( target, convert( properties ) ) );
+            indexEngine.index( toKObject( target, convert( properties ) ) );
 
-        return result;
+            return result;
+        } finally {
+            pathLocks.unlockWrite( source, target );
+        }
     }
 
     @Override
-    public synchronized Path move( final Path source,
-                                   final Path target,
-                                   final CopyOption... options )
+    public Path move( final Path source,
+                      final Path target,
+                      final CopyOption... options )
             throws UnsupportedOperationException, FileAlreadyExistsException,
             DirectoryNotEmptyException, AtomicMoveNotSupportedException, IOException, SecurityException {
-        final Path result = super.move( source, target, options );
+        pathLocks.lockWrite( source, target );
+        try {
+            final Path result = super.move( source, target, options );
 
-        indexEngine.rename( toKObjectKey( source ), toKObjectKey( target ) );
+            indexEngine.rename( toKObjectKey( source ), toKObjectKey( target ) );
 
-        return result;
+            return result;
+        } finally {
+            pathLocks.unlockWrite( source, target );
+        }
     }
 
     private void indexIfFresh( final FileSystem fs ) {
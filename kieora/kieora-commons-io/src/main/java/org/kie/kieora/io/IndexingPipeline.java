@@ -0,0 +1,570 @@
+/*
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kie.kieora.io;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.kie.commons.io.IOService;
+import org.kie.commons.java.nio.base.BatchWatchService;
+import org.kie.commons.java.nio.base.WatchContext;
+import org.kie.commons.java.nio.file.ClosedWatchServiceException;
+import org.kie.commons.java.nio.file.Path;
+import org.kie.commons.java.nio.file.WatchEvent;
+import org.kie.commons.java.nio.file.WatchKey;
+import org.kie.commons.java.nio.file.WatchService;
+import org.kie.commons.java.nio.file.attribute.FileAttribute;
+import org.kie.commons.java.nio.file.attribute.FileAttributeView;
+import org.kie.kieora.engine.MetaIndexEngine;
+import org.kie.kieora.model.KObject;
+import org.kie.kieora.model.KObjectKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.kie.commons.java.nio.file.StandardWatchEventKind.*;
+import static org.kie.commons.validation.PortablePreconditions.*;
+import static org.kie.kieora.io.KObjectUtil.*;
+
+/**
+ * Shared indexing pipeline fed by the watch services of any number of file systems.
+ * <p/>
+ * Every registered watch service gets a thread of its own, blocked on the service until it
+ * publishes keys, which feeds their events into a bounded queue; once the queue is full those
+ * threads block, leaving events in the watch services. A fixed pool of
+ * workers takes batches from the queue, reads attributes and hands the resulting objects to
+ * the {@link MetaIndexEngine} in bulk. Pending index or delete tasks of the same path are merged,
+ * and tasks touching the same path never run concurrently or out of order.
+ */
+public final class IndexingPipeline {
+
+    private static final Logger LOG = LoggerFactory.getLogger( IndexingPipeline.class );
+
+    public static final int DEFAULT_CAPACITY = 10000;
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private final MetaIndexEngine indexEngine;
+    private final IOService ioService;
+    private final Class<? extends FileAttributeView>[] views;
+    private final int capacity;
+    private final int batchSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition changed = lock.newCondition();
+    private final LinkedList<Task> queue = new LinkedList<Task>();
+    private final Map<String, Task> mergeable = new HashMap<String, Task>();
+    private final Set<String> inFlight = new HashSet<String>();
+    private int runningBatches = 0;
+
+    private final List<WatchService> watchServices = new CopyOnWriteArrayList<WatchService>();
+    private final ExecutorService workers;
+    private final ExecutorService watchers;
+    private volatile boolean disposed = false;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong blocked = new AtomicLong();
+    private final AtomicLong blockedNanos = new AtomicLong();
+
+    public IndexingPipeline( final MetaIndexEngine indexEngine,
+                             final IOService ioService,
+                             final int workers,
+                             final int capacity,
+                             final Class<? extends FileAttributeView>... views ) {
+        this( indexEngine, ioService, workers, capacity, DEFAULT_BATCH_SIZE, views );
+    }
+
+    public IndexingPipeline( final MetaIndexEngine indexEngine,
+                             final IOService ioService,
+                             final int workers,
+                             final int capacity,
+                             final int batchSize,
+                             final Class<? extends FileAttributeView>... views ) {
+        this.indexEngine = checkNotNull( "indexEngine", indexEngine );
+        this.ioService = checkNotNull( "ioService", ioService );
+        checkCondition( "workers must be positive", workers > 0 );
+        checkCondition( "capacity must be positive", capacity > 0 );
+        checkCondition( "batchSize must be positive", batchSize > 0 );
+        this.views = views;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool( workers, new ThreadFactory() {
+            @Override
+            public Thread newThread( final Runnable r ) {
+                final Thread thread = new Thread( r, "kieora-indexing-" + threadCount.incrementAndGet() );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+        for ( int i = 0; i < workers; i++ ) {
+            this.workers.execute( new Runnable() {
+                @Override
+                public void run() {
+                    work();
+                }
+            } );
+        }
+
+        final AtomicInteger watcherCount = new AtomicInteger();
+        this.watchers = Executors.newCachedThreadPool( new ThreadFactory() {
+            @Override
+            public Thread newThread( final Runnable r ) {
+                final Thread thread = new Thread( r, "kieora-indexing-watcher-" + watcherCount.incrementAndGet() );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+    }
+
+    public void watch( final WatchService watchService ) {
+        checkNotNull( "watchService", watchService );
+        if ( !disposed ) {
+            watchServices.add( watchService );
+            try {
+                watchers.execute( new Runnable() {
+                    @Override
+                    public void run() {
+                        drain( watchService );
+                    }
+                } );
+                return;
+            } catch ( final RejectedExecutionException ex ) {
+                // disposed meanwhile
+                watchServices.remove( watchService );
+            }
+        }
+        watchService.close();
+    }
+
+    public void index( final Path path ) {
+        submit( new Task( Kind.INDEX, checkNotNull( "path", path ), null ) );
+    }
+
+    public void delete( final Path path ) {
+        submit( new Task( Kind.DELETE, checkNotNull( "path", path ), null ) );
+    }
+
+    public void rename( final Path source,
+                        final Path target ) {
+        submit( new Task( Kind.RENAME, checkNotNull( "target", target ), checkNotNull( "source", source ) ) );
+    }
+
+    /**
+     * Blocks until every submitted task has been handed to the index engine.
+     * @return <code>false</code> if the timeout elapsed first
+     */
+    public boolean awaitIdle( final long timeout,
+                              final TimeUnit unit ) throws InterruptedException {
+        long nanos = unit.toNanos( timeout );
+        lock.lock();
+        try {
+            while ( !queue.isEmpty() || runningBatches > 0 ) {
+                if ( nanos <= 0 ) {
+                    return false;
+                }
+                nanos = changed.awaitNanos( nanos );
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueueSize() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return milliseconds the oldest queued task has been waiting, zero when the queue is empty
+     */
+    public long getQueueLag() {
+        lock.lock();
+        try {
+            if ( queue.isEmpty() ) {
+                return 0;
+            }
+            return System.currentTimeMillis() - queue.getFirst().enqueuedAt;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    public long getMergedCount() {
+        return merged.get();
+    }
+
+    public long getProcessedCount() {
+        return processed.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * @return how many submissions had to wait for room in the queue
+     */
+    public long getBlockedCount() {
+        return blocked.get();
+    }
+
+    public long getBlockedTime( final TimeUnit unit ) {
+        return unit.convert( blockedNanos.get(), TimeUnit.NANOSECONDS );
+    }
+
+    public void dispose() {
+        disposed = true;
+        watchers.shutdownNow();
+        lock.lock();
+        try {
+            notFull.signalAll();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        workers.shutdownNow();
+        for ( final WatchService watchService : watchServices ) {
+            try {
+                watchService.close();
+            } catch ( final Exception ignored ) {
+            }
+        }
+        watchServices.clear();
+    }
+
+    private void submit( final Task task ) {
+        lock.lock();
+        try {
+            if ( disposed ) {
+                return;
+            }
+            submitted.incrementAndGet();
+            if ( task.kind != Kind.RENAME ) {
+                final Task pending = mergeable.get( task.key() );
+                if ( pending != null ) {
+                    pending.kind = task.kind;
+                    pending.path = task.path;
+                    merged.incrementAndGet();
+                    return;
+                }
+            }
+            if ( queue.size() >= capacity ) {
+                blocked.incrementAndGet();
+                final long start = System.nanoTime();
+                try {
+                    while ( queue.size() >= capacity && !disposed ) {
+                        notFull.await();
+                    }
+                } catch ( final InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } finally {
+                    blockedNanos.addAndGet( System.nanoTime() - start );
+                }
+                if ( disposed ) {
+                    return;
+                }
+            }
+            if ( task.kind == Kind.RENAME ) {
+                // later tasks of these paths must not be merged into tasks queued before the rename
+                mergeable.remove( task.oldKey() );
+                mergeable.remove( task.key() );
+            } else {
+                mergeable.put( task.key(), task );
+            }
+            queue.add( task );
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void drain( final WatchService watchService ) {
+        try {
+            while ( !disposed ) {
+                final List<WatchKey> keys;
+                try {
+                    keys = takeKeys( watchService );
+                } catch ( final ClosedWatchServiceException ex ) {
+                    return;
+                } catch ( final org.kie.commons.java.nio.file.InterruptedException ex ) {
+                    return;
+                }
+                if ( keys.isEmpty() ) {
+                    // closed while waiting
+                    return;
+                }
+                for ( final WatchKey key : keys ) {
+                    for ( final WatchEvent<?> event : key.pollEvents() ) {
+                        try {
+                            submit( event );
+                        } catch ( final Exception ex ) {
+                            LOG.error( "Can't read events of " + watchService, ex );
+                        }
+                    }
+                }
+            }
+        } finally {
+            watchServices.remove( watchService );
+        }
+    }
+
+    private List<WatchKey> takeKeys( final WatchService watchService ) {
+        if ( watchService instanceof BatchWatchService ) {
+            return ( (BatchWatchService) watchService ).take( batchSize );
+        }
+        final WatchKey key = watchService.take();
+        if ( key == null ) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList( key );
+    }
+
+    private void submit( final WatchEvent<?> event ) {
+        if ( !( event.context() instanceof WatchContext ) ) {
+            return;
+        }
+        final WatchContext context = (WatchContext) event.context();
+        if ( event.kind() == ENTRY_MODIFY || event.kind() == ENTRY_CREATE ) {
+            final Path path = context.getPath();
+            if ( path != null && !path.getFileName().toString().startsWith( "." ) ) {
+                index( path );
+            }
+        } else if ( event.kind() == ENTRY_RENAME ) {
+            rename( context.getOldPath(), context.getPath() );
+        } else if ( event.kind() == ENTRY_DELETE ) {
+            delete( context.getOldPath() );
+        }
+    }
+
+    private void work() {
+        while ( !disposed ) {
+            final List<Task> batch;
+            try {
+                batch = take();
+            } catch ( final InterruptedException e ) {
+                return;
+            }
+            try {
+                process( batch );
+            } finally {
+                release( batch );
+            }
+        }
+    }
+
+    private List<Task> take() throws InterruptedException {
+        lock.lock();
+        try {
+            while ( true ) {
+                if ( disposed ) {
+                    throw new InterruptedException();
+                }
+                final List<Task> batch = new ArrayList<Task>();
+                final Set<String> skipped = new HashSet<String>();
+                final Iterator<Task> iterator = queue.iterator();
+                while ( iterator.hasNext() && batch.size() < batchSize ) {
+                    final Task task = iterator.next();
+                    if ( isBusy( task, skipped ) ) {
+                        skipped.addAll( task.keys() );
+                        continue;
+                    }
+                    iterator.remove();
+                    if ( mergeable.get( task.key() ) == task ) {
+                        mergeable.remove( task.key() );
+                    }
+                    batch.add( task );
+                }
+                if ( !batch.isEmpty() ) {
+                    for ( final Task task : batch ) {
+                        inFlight.addAll( task.keys() );
+                    }
+                    runningBatches++;
+                    notFull.signalAll();
+                    return batch;
+                }
+                changed.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isBusy( final Task task,
+                            final Set<String> skipped ) {
+        for ( final String key : task.keys() ) {
+            if ( inFlight.contains( key ) || skipped.contains( key ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void release( final List<Task> batch ) {
+        lock.lock();
+        try {
+            for ( final Task task : batch ) {
+                inFlight.removeAll( task.keys() );
+            }
+            runningBatches--;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void process( final List<Task> batch ) {
+        final List<KObject> toIndex = new ArrayList<KObject>();
+        final List<KObjectKey> toDelete = new ArrayList<KObjectKey>();
+        for ( final Task task : batch ) {
+            switch ( task.kind ) {
+                case INDEX:
+                    flushDeletes( toDelete );
+                    final KObject object = newKObject( task.path );
+                    if ( object != null ) {
+                        toIndex.add( object );
+                    }
+                    break;
+                case DELETE:
+                    flushIndex( toIndex );
+                    toDelete.add( toKObjectKey( task.path ) );
+                    break;
+                case RENAME:
+                    flushIndex( toIndex );
+                    flushDeletes( toDelete );
+                    try {
+                        indexEngine.rename( toKObjectKey( task.oldPath ), toKObjectKey( task.path ) );
+                    } catch ( final Exception ex ) {
+                        failed.incrementAndGet();
+                        LOG.error( "Can't rename " + task.oldPath + " to " + task.path + " in the index.", ex );
+                    }
+                    break;
+            }
+        }
+        flushIndex( toIndex );
+        flushDeletes( toDelete );
+        processed.addAndGet( batch.size() );
+    }
+
+    private KObject newKObject( final Path path ) {
+        try {
+            for ( final Class<? extends FileAttributeView> view : views ) {
+                ioService.getFileAttributeView( path, view );
+            }
+            final FileAttribute<?>[] allAttrs = ioService.convert( ioService.readAttributes( path ) );
+            return toKObject( path, allAttrs );
+        } catch ( final Exception ex ) {
+            failed.incrementAndGet();
+            LOG.debug( "Can't read attributes of " + path + ", skipping it.", ex );
+            return null;
+        }
+    }
+
+    private void flushIndex( final List<KObject> objects ) {
+        if ( objects.isEmpty() ) {
+            return;
+        }
+        try {
+            indexEngine.index( objects.toArray( new KObject[ objects.size() ] ) );
+        } catch ( final Exception ex ) {
+            failed.addAndGet( objects.size() );
+            LOG.error( "Can't index " + objects.size() + " objects.", ex );
+        }
+        objects.clear();
+    }
+
+    private void flushDeletes( final List<KObjectKey> keys ) {
+        if ( keys.isEmpty() ) {
+            return;
+        }
+        try {
+            indexEngine.delete( keys.toArray( new KObjectKey[ keys.size() ] ) );
+        } catch ( final Exception ex ) {
+            failed.addAndGet( keys.size() );
+            LOG.error( "Can't delete " + keys.size() + " objects from the index.", ex );
+        }
+        keys.clear();
+    }
+
+    private static enum Kind {
+        INDEX, DELETE, RENAME
+    }
+
+    private static class Task {
+
+        private final Path oldPath;
+        private final long enqueuedAt = System.currentTimeMillis();
+        private Kind kind;
+        private Path path;
+
+        Task( final Kind kind,
+              final Path path,
+              final Path oldPath ) {
+            this.kind = kind;
+            this.path = path;
+            this.oldPath = oldPath;
+        }
+
+        String key() {
+            return path.toUri().toString();
+        }
+
+        String oldKey() {
+            return oldPath.toUri().toString();
+        }
+
+        List<String> keys() {
+            if ( oldPath == null ) {
+                return Collections.singletonList( key() );
+            }
+            final List<String> result = new ArrayList<String>( 2 );
+            result.add( key() );
+            result.add( oldKey() );
+            return result;
+        }
+    }
+}
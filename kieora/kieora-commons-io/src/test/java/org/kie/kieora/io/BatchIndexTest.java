@@ -22,6 +22,8 @@ import java.net.URI;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.IndexSearcher;
@@ -237,6 +239,125 @@ public class BatchIndexTest {
         luceneSetup.nrtRelease( searcher );
     }
 
+    @Test
+    public void testIncrementalIndex() throws IOException, InterruptedException {
+        ioService().newFileSystem( URI.create( "git://temp-repo-incremental" ), new HashMap<String, Object>() );
+
+        ioService().write( ioService().get( "git://temp-repo-incremental/file1.txt" ), "content" );
+        ioService().write( ioService().get( "git://temp-repo-incremental/file2.txt" ), "content" );
+
+        final BaseLuceneSetup setup = new RAMLuceneSetup();
+        final MetaIndexEngine engine = new LuceneIndexEngine( new InMemoryMetaModelStore(), setup, new SimpleFieldFactory() );
+        final BatchIndex batchIndex = new BatchIndex( engine, ioService() );
+        final Path root = ioService().get( "git://temp-repo-incremental/" );
+
+        batchIndex.run( root );
+
+        final String firstRevision = engine.getIndexedRevision( "temp-repo-incremental", "master" );
+        assertNotNull( firstRevision );
+        assertEquals( 2, numDocs( setup ) );
+
+        ioService().write( ioService().get( "git://temp-repo-incremental/file3.txt" ), "content" );
+        ioService().delete( ioService().get( "git://temp-repo-incremental/file1.txt" ) );
+
+        batchIndex.run( root );
+
+        assertFalse( firstRevision.equals( engine.getIndexedRevision( "temp-repo-incremental", "master" ) ) );
+        // a full walk would have left file1.txt in the index
+        assertEquals( 2, numDocs( setup ) );
+
+        engine.dispose();
+    }
+
+    @Test
+    public void testFailedRunKeepsIndexedRevision() throws IOException, InterruptedException {
+        ioService().newFileSystem( URI.create( "git://temp-repo-failed" ), new HashMap<String, Object>() );
+
+        ioService().write( ioService().get( "git://temp-repo-failed/file1.txt" ), "content" );
+
+        final BaseLuceneSetup setup = new RAMLuceneSetup();
+        final MetaIndexEngine engine = new LuceneIndexEngine( new InMemoryMetaModelStore(), setup, new SimpleFieldFactory() );
+        final AtomicBoolean fail = new AtomicBoolean( false );
+        final BatchIndex batchIndex = new BatchIndex( engine, ioService(), 1, new BatchIndex.ProgressListener() {
+            @Override
+            public void onProgress( final Path root,
+                                    final long indexed ) {
+            }
+
+            @Override
+            public void onComplete( final Path root,
+                                    final long indexed,
+                                    final long elapsedMillis ) {
+                if ( fail.get() ) {
+                    throw new IllegalStateException( "failed on purpose" );
+                }
+            }
+        } );
+        final Path root = ioService().get( "git://temp-repo-failed/" );
+
+        batchIndex.run( root );
+        final String firstRevision = engine.getIndexedRevision( "temp-repo-failed", "master" );
+        assertNotNull( firstRevision );
+
+        ioService().write( ioService().get( "git://temp-repo-failed/file2.txt" ), "content" );
+
+        fail.set( true );
+        batchIndex.run( root );
+        assertEquals( firstRevision, engine.getIndexedRevision( "temp-repo-failed", "master" ) );
+
+        fail.set( false );
+        batchIndex.run( root );
+        assertFalse( firstRevision.equals( engine.getIndexedRevision( "temp-repo-failed", "master" ) ) );
+        assertEquals( 2, numDocs( setup ) );
+
+        batchIndex.dispose();
+    }
+
+    @Test
+    public void testParallelIndex()throws IOException, InterruptedException {
+        ioService().newFileSystem( URI.create( "git://temp-repo-parallel" ), new HashMap<String, Object>() );
+
+        for ( int dir = 0; dir < 5; dir++ ) {
+            for ( int file = 0; file < 10; file++ ) {
+                ioService().write( ioService().get( "git://temp-repo-parallel/dir" + dir + "/sub/file" + file + ".txt" ), "content" );
+            }
+        }
+        ioService().write( ioService().get( "git://temp-repo-parallel/top.txt" ), "content" );
+
+        final BaseLuceneSetup setup = new RAMLuceneSetup();
+        final MetaIndexEngine engine = new LuceneIndexEngine( new InMemoryMetaModelStore(), setup, new SimpleFieldFactory() );
+        final AtomicLong completed = new AtomicLong( -1 );
+        final BatchIndex batchIndex = new BatchIndex( engine, ioService(), 4, new BatchIndex.ProgressListener() {
+            @Override
+            public void onProgress( final Path root,
+                                    final long indexed ) {
+            }
+
+            @Override
+            public void onComplete( final Path root,
+                                    final long indexed,
+                                    final long elapsedMillis ) {
+                completed.set( indexed );
+            }
+        } );
+
+        batchIndex.run( ioService().get( "git://temp-repo-parallel/" ) );
+
+        assertEquals( 51, completed.get() );
+        assertEquals( 51, numDocs( setup ) );
+
+        batchIndex.dispose();
+    }
+
+    private int numDocs( final BaseLuceneSetup setup ) {
+        final IndexSearcher searcher = setup.nrtSearcher();
+        try {
+            return searcher.getIndexReader().numDocs();
+        } finally {
+            setup.nrtRelease( searcher );
+        }
+    }
+
     public static File createTempDirectory()
             throws IOException {
         final File temp = File.createTempFile( "temp", Long.toString( System.nanoTime() ) );
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2013 JBoss Inc
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.kie.kieora.io;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.kie.commons.io.IOService;
+import org.kie.commons.io.impl.IOServiceDotFileImpl;
+import org.kie.commons.java.nio.file.Path;
+import org.kie.kieora.engine.MetaIndexEngine;
+import org.kie.kieora.model.KObject;
+import org.kie.kieora.model.KObjectKey;
+
+import static org.junit.Assert.*;
+
+public class IndexingPipelineTest {
+
+    private static IOService ioService;
+
+    @BeforeClass
+    public static void setup() throws IOException {
+        System.setProperty( "org.kie.nio.git.dir", BatchIndexTest.createTempDirectory().getAbsolutePath() );
+        ioService = new IOServiceDotFileImpl();
+        ioService.newFileSystem( URI.create( "git://indexing-pipeline-test" ), new HashMap<String, Object>() );
+    }
+
+    @Test
+    public void testMergeAndOrder() throws InterruptedException {
+        final Path file = ioService.get( "git://indexing-pipeline-test/file.txt" );
+        final Path other = ioService.get( "git://indexing-pipeline-test/other.txt" );
+        ioService.write( file, "content" );
+        ioService.write( other, "content" );
+
+        final RecordingEngine engine = new RecordingEngine();
+        final IndexingPipeline pipeline = new IndexingPipeline( engine, ioService, 1, 100 );
+        try {
+            pipeline.index( file );
+            assertTrue( engine.started.await( 10, TimeUnit.SECONDS ) );
+
+            // first task is in flight, these three collapse into one
+            pipeline.index( file );
+            pipeline.index( file );
+            pipeline.index( file );
+            pipeline.rename( file, other );
+            pipeline.delete( other );
+
+            assertEquals( 3, pipeline.getQueueSize() );
+            assertEquals( 2, pipeline.getMergedCount() );
+            assertTrue( pipeline.getQueueLag() >= 0 );
+
+            engine.release.countDown();
+            assertTrue( pipeline.awaitIdle( 10, TimeUnit.SECONDS ) );
+
+            assertEquals( 0, pipeline.getQueueSize() );
+            assertEquals( 4, pipeline.getProcessedCount() );
+            assertEquals( 0, pipeline.getFailedCount() );
+            assertEquals( 4, engine.calls.size() );
+            assertEquals( "index:" + file.toUri(), engine.calls.get( 0 ) );
+            assertEquals( "index:" + file.toUri(), engine.calls.get( 1 ) );
+            assertEquals( "rename:" + file.toUri() + "->" + other.toUri(), engine.calls.get( 2 ) );
+            assertEquals( "delete:" + other.toUri(), engine.calls.get( 3 ) );
+        } finally {
+            pipeline.dispose();
+        }
+    }
+
+    @Test
+    public void testBackpressure() throws InterruptedException {
+        final Path file = ioService.get( "git://indexing-pipeline-test/bp/file.txt" );
+        ioService.write( file, "content" );
+
+        final RecordingEngine engine = new RecordingEngine();
+        final IndexingPipeline pipeline = new IndexingPipeline( engine, ioService, 1, 1 );
+        try {
+            pipeline.index( file );
+            assertTrue( engine.started.await( 10, TimeUnit.SECONDS ) );
+
+            pipeline.delete( ioService.get( "git://indexing-pipeline-test/bp/one.txt" ) );
+
+            final Thread producer = new Thread() {
+                @Override
+                public void run() {
+                    pipeline.delete( ioService.get( "git://indexing-pipeline-test/bp/two.txt" ) );
+                }
+            };
+            producer.start();
+
+            final long timeout = System.currentTimeMillis() + 10000;
+            while ( pipeline.getBlockedCount() == 0 && System.currentTimeMillis() < timeout ) {
+                Thread.sleep( 10 );
+            }
+            assertEquals( 1, pipeline.getBlockedCount() );
+            assertTrue( producer.isAlive() );
+
+            engine.release.countDown();
+            producer.join( 10000 );
+            assertFalse( producer.isAlive() );
+            assertTrue( pipeline.awaitIdle( 10, TimeUnit.SECONDS ) );
+            assertEquals( 3, pipeline.getProcessedCount() );
+        } finally {
+            pipeline.dispose();
+        }
+    }
+
+    @Test
+    public void testWatchServiceFeedsPipeline() throws InterruptedException {
+        final Path file = ioService.get( "git://indexing-pipeline-test/watched/file.txt" );
+
+        final RecordingEngine engine = new RecordingEngine();
+        final IndexingPipeline pipeline = new IndexingPipeline( engine, ioService, 1, 100 );
+        try {
+            pipeline.watch( file.getFileSystem().newWatchService() );
+
+            ioService.write( file, "content" );
+
+            assertTrue( engine.started.await( 10, TimeUnit.SECONDS ) );
+            assertEquals( "index:" + file.toUri(), engine.calls.get( 0 ) );
+
+            engine.release.countDown();
+            assertTrue( pipeline.awaitIdle( 10, TimeUnit.SECONDS ) );
+        } finally {
+            pipeline.dispose();
+        }
+    }
+
+    private static class RecordingEngine implements MetaIndexEngine {
+
+        private final List<String> calls = Collections.synchronizedList( new ArrayList<String>() );
+        private final CountDownLatch started = new CountDownLatch( 1 );
+        private final CountDownLatch release = new CountDownLatch( 1 );
+
+        private void block() {
+            started.countDown();
+            try {
+                release.await( 10, TimeUnit.SECONDS );
+            } catch ( final InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public boolean freshIndex() {
+            return false;
+        }
+
+        @Override
+        public void startBatchMode() {
+        }
+
+        @Override
+        public void index( final KObject object ) {
+            index( new KObject[]{ object } );
+        }
+
+        @Override
+        public void index( final KObject... objects ) {
+            for ( final KObject object : objects ) {
+                calls.add( "index:" + object.getKey() );
+            }
+            block();
+        }
+
+        @Override
+        public void rename( final KObjectKey from,
+                            final KObjectKey to ) {
+            calls.add( "rename:" + from.getKey() + "->" + to.getKey() );
+        }
+
+        @Override
+        public void delete( final KObjectKey objectKey ) {
+            delete( new KObjectKey[]{ objectKey } );
+        }
+
+        @Override
+        public void delete( final KObjectKey... objectsKey ) {
+            for ( final KObjectKey key : objectsKey ) {
+                calls.add( "delete:" + key.getKey() );
+            }
+        }
+
+        @Override
+        public void commit() {
+        }
+
+        @Override
+        public String getIndexedRevision( final String clusterId,
+                                          final String segmentId ) {
+            return null;
+        }
+
+        @Override
+        public void setIndexedRevision( final String clusterId,
+                                        final String segmentId,
+                                        final String revision ) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void dispose() {
+        }
+    }
+}